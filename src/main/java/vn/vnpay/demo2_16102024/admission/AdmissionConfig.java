@@ -0,0 +1,29 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+import vn.vnpay.demo2_16102024.config.ConcurrencyConfig;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+@Configuration
+@EnableConfigurationProperties(AdmissionProperties.class)
+public class AdmissionConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionConfig.class);
+
+    @Bean
+    public RateLimiter rateLimiter(AdmissionProperties properties, RedisTemplate<String, String> redisTemplate,
+                                   @Qualifier(ConcurrencyConfig.REDIS_BULKHEAD) Bulkhead redisBulkhead) {
+        if (properties.isDistributed()) {
+            logger.info("Creating Redis rate limiter with lease size {}", properties.getLeaseSize());
+            return new RedisRateLimiter(redisTemplate, redisBulkhead, properties.getLeaseSize());
+        }
+        logger.info("Creating per-node rate limiter");
+        return new LocalRateLimiter();
+    }
+}
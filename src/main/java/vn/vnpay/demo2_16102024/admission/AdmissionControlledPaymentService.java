@@ -0,0 +1,167 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.BindingResult;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.server.IPaymentService;
+import vn.vnpay.demo2_16102024.server.PaymentService;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control in front of {@link PaymentService}. A request is rejected with 429 when its
+ * apiID or userName is over its rate limit, and with 503 when the node already has
+ * {@code max-in-flight} requests between admission and their response. Both rejections happen
+ * before any Redis reservation or broker publish. Rejections are counted as
+ * {@link ErrorCodeEnum#REQUEST_REJECTED} outcomes and only logged at DEBUG, so a flood of them
+ * does not turn into a flood of log lines.
+ */
+@Primary
+@Service
+public class AdmissionControlledPaymentService implements IPaymentService {
+
+    private static final Logger logger = LogManager.getLogger(AdmissionControlledPaymentService.class);
+
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final PaymentService paymentService;
+    private final RateLimiter rateLimiter;
+    private final AdmissionProperties properties;
+    private final PaymentMetrics paymentMetrics;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @Autowired
+    public AdmissionControlledPaymentService(PaymentService paymentService, RateLimiter rateLimiter,
+                                             AdmissionProperties properties, PaymentMetrics paymentMetrics) {
+        this.paymentService = paymentService;
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+        this.paymentMetrics = paymentMetrics;
+    }
+
+    @Override
+    public ResponseEntity<?> validatePayment(PaymentRequest paymentRequest, BindingResult bindingResult) {
+        if (!properties.isEnabled()) {
+            return paymentService.validatePayment(paymentRequest, bindingResult);
+        }
+        ResponseEntity<PaymentResponse> rejection = admit(paymentRequest);
+        if (null != rejection) {
+            return rejection;
+        }
+        try {
+            return paymentService.validatePayment(paymentRequest, bindingResult);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<?>> validatePaymentAsync(PaymentRequest paymentRequest, BindingResult bindingResult) {
+        if (!properties.isEnabled()) {
+            return paymentService.validatePaymentAsync(paymentRequest, bindingResult);
+        }
+        ResponseEntity<PaymentResponse> rejection = admit(paymentRequest);
+        if (null != rejection) {
+            return CompletableFuture.completedFuture(rejection);
+        }
+        try {
+            return paymentService.validatePaymentAsync(paymentRequest, bindingResult)
+                    .whenComplete((response, error) -> inFlight.decrementAndGet());
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Rate limits one record of a batch upload exactly like a single request, so a batch cannot
+     * carry more payments for an apiID or userName than their limits allow. Returns the rejection,
+     * or null when the record is admitted.
+     */
+    public PaymentResponse admitBatchRecord(PaymentRequest paymentRequest) {
+        if (properties.isEnabled() && rateLimited(paymentRequest)) {
+            logger.debug("Rate limit exceeded for batch record of apiID {} user {}", paymentRequest.getApiID(), paymentRequest.getUserName());
+            return rejection(paymentRequest, PaymentConstant.ERROR_RATE_LIMITED);
+        }
+        return null;
+    }
+
+    /**
+     * Takes one in-flight slot per record of a batch chunk, all or none.
+     *
+     * @return the slots taken, to be given back with {@link #exitBatchChunk(int)}: 0 when admission
+     * is off, or -1 when the chunk would exceed max-in-flight and nothing was taken
+     */
+    public int enterBatchChunk(int records) {
+        if (!properties.isEnabled() || 0 == records) {
+            return 0;
+        }
+        if (inFlight.addAndGet(records) > properties.getMaxInFlight()) {
+            inFlight.addAndGet(-records);
+            logger.debug("Rejecting batch chunk of {} records: {} requests in flight", records, properties.getMaxInFlight());
+            return -1;
+        }
+        return records;
+    }
+
+    public void exitBatchChunk(int slots) {
+        if (slots > 0) {
+            inFlight.addAndGet(-slots);
+        }
+    }
+
+    /**
+     * The response for a batch record rejected because the node is at max-in-flight.
+     */
+    public PaymentResponse overloaded(PaymentRequest paymentRequest) {
+        return rejection(paymentRequest, PaymentConstant.ERROR_OVERLOADED);
+    }
+
+    /**
+     * Returns the rejection, or null after taking an in-flight slot that the caller must give back.
+     */
+    private ResponseEntity<PaymentResponse> admit(PaymentRequest paymentRequest) {
+        if (rateLimited(paymentRequest)) {
+            logger.debug("Rate limit exceeded for apiID {} user {}", paymentRequest.getApiID(), paymentRequest.getUserName());
+            return reject(paymentRequest, HttpStatus.TOO_MANY_REQUESTS, PaymentConstant.ERROR_RATE_LIMITED);
+        }
+        if (inFlight.incrementAndGet() > properties.getMaxInFlight()) {
+            inFlight.decrementAndGet();
+            logger.debug("Rejecting tokenKey {}: {} requests in flight", paymentRequest.getTokenKey(), properties.getMaxInFlight());
+            return reject(paymentRequest, HttpStatus.SERVICE_UNAVAILABLE, PaymentConstant.ERROR_OVERLOADED);
+        }
+        return null;
+    }
+
+    // The narrower user bucket first, so a user over their limit does not drain the apiID bucket shared by all its users
+    private boolean rateLimited(PaymentRequest paymentRequest) {
+        return !rateLimiter.tryAcquire("user:" + paymentRequest.getUserName(), properties.getUser())
+                || !rateLimiter.tryAcquire("apiID:" + paymentRequest.getApiID(), properties.getApiId());
+    }
+
+    private ResponseEntity<PaymentResponse> reject(PaymentRequest paymentRequest, HttpStatus status, String message) {
+        return ResponseEntity.status(status).header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS).body(rejection(paymentRequest, message));
+    }
+
+    private PaymentResponse rejection(PaymentRequest paymentRequest, String message) {
+        paymentMetrics.producerOutcome(ErrorCodeEnum.REQUEST_REJECTED);
+        return new PaymentResponse(paymentRequest.getTokenKey(), ErrorCodeEnum.REQUEST_REJECTED.getCode(), message, LocalDateTime.now());
+    }
+}
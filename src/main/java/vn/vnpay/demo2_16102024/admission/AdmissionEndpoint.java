@@ -0,0 +1,41 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/admission}: GET shows the current limits. Changing them over HTTP is only
+ * possible when {@link AdmissionEndpointWebExtension} is enabled.
+ */
+@Component
+@Endpoint(id = "admission")
+public class AdmissionEndpoint {
+
+    private final AdmissionProperties properties;
+    private final AdmissionControlledPaymentService admissionControlledPaymentService;
+
+    @Autowired
+    public AdmissionEndpoint(AdmissionProperties properties, AdmissionControlledPaymentService admissionControlledPaymentService) {
+        this.properties = properties;
+        this.admissionControlledPaymentService = admissionControlledPaymentService;
+    }
+
+    @ReadOperation
+    public Map<String, Object> limits() {
+        Map<String, Object> limits = new LinkedHashMap<>();
+        limits.put("enabled", properties.isEnabled());
+        limits.put("maxInFlight", properties.getMaxInFlight());
+        limits.put("inFlight", admissionControlledPaymentService.inFlight());
+        limits.put("distributed", properties.isDistributed());
+        limits.put("apiIdRate", properties.getApiId().getRate());
+        limits.put("apiIdBurst", properties.getApiId().getBurst());
+        limits.put("userRate", properties.getUser().getRate());
+        limits.put("userBurst", properties.getUser().getBurst());
+        return limits;
+    }
+}
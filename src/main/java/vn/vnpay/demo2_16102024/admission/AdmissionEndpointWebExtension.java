@@ -0,0 +1,61 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.annotation.EndpointWebExtension;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Adds POST to {@code /actuator/admission}: any of the parameters changes that limit on this node
+ * without a restart. Off unless {@code payment.admission.endpoint-writable=true}, since anyone who
+ * can reach the management port could otherwise switch admission control off.
+ */
+@Component
+@EndpointWebExtension(endpoint = AdmissionEndpoint.class)
+@ConditionalOnProperty(prefix = "payment.admission", name = "endpoint-writable", havingValue = "true")
+public class AdmissionEndpointWebExtension {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionEndpointWebExtension.class);
+
+    private final AdmissionProperties properties;
+    private final AdmissionEndpoint admissionEndpoint;
+
+    @Autowired
+    public AdmissionEndpointWebExtension(AdmissionProperties properties, AdmissionEndpoint admissionEndpoint) {
+        this.properties = properties;
+        this.admissionEndpoint = admissionEndpoint;
+    }
+
+    @WriteOperation
+    public Map<String, Object> update(@Nullable Boolean enabled, @Nullable Integer maxInFlight,
+                                      @Nullable Double apiIdRate, @Nullable Integer apiIdBurst,
+                                      @Nullable Double userRate, @Nullable Integer userBurst) {
+        if (null != enabled) {
+            properties.setEnabled(enabled);
+        }
+        if (null != maxInFlight) {
+            properties.setMaxInFlight(maxInFlight);
+        }
+        if (null != apiIdRate) {
+            properties.getApiId().setRate(apiIdRate);
+        }
+        if (null != apiIdBurst) {
+            properties.getApiId().setBurst(apiIdBurst);
+        }
+        if (null != userRate) {
+            properties.getUser().setRate(userRate);
+        }
+        if (null != userBurst) {
+            properties.getUser().setBurst(userBurst);
+        }
+        Map<String, Object> limits = admissionEndpoint.limits();
+        logger.info("Admission limits changed: {}", limits);
+        return limits;
+    }
+}
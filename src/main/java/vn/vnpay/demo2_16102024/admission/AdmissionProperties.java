@@ -0,0 +1,73 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Admission limits. The fields are volatile because {@link AdmissionEndpointWebExtension} changes them at
+ * runtime while requests read them.
+ */
+@Data
+@ConfigurationProperties(prefix = "payment.admission")
+public class AdmissionProperties {
+
+    /**
+     * Apply admission control in front of PaymentService.
+     */
+    private volatile boolean enabled = true;
+
+    /**
+     * Requests processed at once on this node; more are rejected with 503.
+     */
+    private volatile int maxInFlight = 200;
+
+    /**
+     * Enforce the rate limits in Redis across all nodes instead of per node.
+     */
+    private boolean distributed = false;
+
+    /**
+     * Tokens a node takes from a Redis bucket per round trip when {@link #distributed}.
+     */
+    private int leaseSize = 10;
+
+    /**
+     * Limit per apiID.
+     */
+    private Limit apiId = new Limit(500, 1000);
+
+    /**
+     * Limit per userName.
+     */
+    private Limit user = new Limit(20, 40);
+
+    @Data
+    public static class Limit {
+
+        /**
+         * Sustained requests per second; 0 or less disables the limit.
+         */
+        private volatile double rate;
+
+        /**
+         * Requests allowed in a burst above the sustained rate.
+         */
+        private volatile int burst;
+
+        public Limit() {
+        }
+
+        public Limit(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        public boolean isLimited() {
+            return rate > 0;
+        }
+
+        int capacity() {
+            return Math.max(1, burst);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-node token buckets. At most {@link #MAX_KEYS} keys get a bucket of their own, so clients
+ * sending arbitrary apiID/userName values cannot grow memory without bound. At the cap, buckets
+ * that have refilled are dropped, at most once per {@link #SWEEP_INTERVAL_NANOS}: a full bucket
+ * and a new one behave the same. Buckets still refilling are never dropped, so a flood of new keys
+ * cannot reset a caller's limit; while none can be dropped, new keys share one bucket per limit.
+ */
+public class LocalRateLimiter implements RateLimiter {
+
+    static final int MAX_KEYS = 100_000;
+    static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    // Keyed by instance, because the endpoint changes a Limit's fields and with them its hashCode
+    private final Map<AdmissionProperties.Limit, TokenBucket> overflow = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final LongSupplier nanoClock;
+    private final AtomicLong nextSweepNanos;
+
+    public LocalRateLimiter() {
+        this(System::nanoTime);
+    }
+
+    LocalRateLimiter(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.nextSweepNanos = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    @Override
+    public boolean tryAcquire(String key, AdmissionProperties.Limit limit) {
+        if (!limit.isLimited()) {
+            return true;
+        }
+        long now = nanoClock.getAsLong();
+        TokenBucket bucket = buckets.get(key);
+        if (null == bucket) {
+            if (buckets.size() >= MAX_KEYS) {
+                dropFullBuckets(now);
+            }
+            bucket = buckets.size() < MAX_KEYS
+                    ? buckets.computeIfAbsent(key, k -> new TokenBucket(limit.capacity(), now))
+                    : overflow.computeIfAbsent(limit, l -> new TokenBucket(l.capacity(), now));
+        }
+        return bucket.tryAcquire(limit.getRate(), limit.capacity(), now);
+    }
+
+    private void dropFullBuckets(long nowNanos) {
+        long next = nextSweepNanos.get();
+        if (nowNanos - next < 0 || !nextSweepNanos.compareAndSet(next, nowNanos + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.isFull(nowNanos));
+    }
+
+    static final class TokenBucket {
+
+        private double tokens;
+        private long refilledAtNanos;
+        private volatile long fullAtNanos;
+
+        TokenBucket(int capacity, long nowNanos) {
+            this.tokens = capacity;
+            this.refilledAtNanos = nowNanos;
+            this.fullAtNanos = nowNanos;
+        }
+
+        // Held only for arithmetic, never across I/O
+        synchronized boolean tryAcquire(double ratePerSecond, int capacity, long nowNanos) {
+            tokens = Math.min(capacity, tokens + (nowNanos - refilledAtNanos) * ratePerSecond / 1_000_000_000d);
+            refilledAtNanos = nowNanos;
+            boolean acquired = tokens >= 1;
+            if (acquired) {
+                tokens -= 1;
+            }
+            fullAtNanos = nowNanos + (long) Math.ceil((capacity - tokens) * 1_000_000_000d / ratePerSecond);
+            return acquired;
+        }
+
+        boolean isFull(long nowNanos) {
+            return nowNanos - fullAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package vn.vnpay.demo2_16102024.admission;
+
+/**
+ * Token-bucket rate limiting per key. The limit is passed on every call, so a change made at
+ * runtime applies to existing buckets immediately.
+ */
+public interface RateLimiter {
+
+    boolean tryAcquire(String key, AdmissionProperties.Limit limit);
+}
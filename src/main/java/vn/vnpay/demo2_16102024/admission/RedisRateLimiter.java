@@ -0,0 +1,145 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets shared by all nodes, kept in Redis and updated atomically by a Lua script using the
+ * Redis clock. A node takes up to {@code leaseSize} tokens per round trip and serves requests from
+ * that lease locally, and after an empty grant it rejects locally until a token can have refilled,
+ * so Redis sees one call per lease rather than one per request. Unused leased tokens lapse after
+ * {@link #LEASE_TTL_NANOS}; at most nodes x leaseSize requests can exceed the limit.
+ * Leases are kept for at most {@link LocalRateLimiter#MAX_KEYS} keys. At the cap, lapsed leases are
+ * dropped; while none have lapsed, a new key takes a single token per request straight from Redis.
+ * If Redis is unavailable, requests are admitted.
+ */
+public class RedisRateLimiter implements RateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisRateLimiter.class);
+
+    static final String KEY_PREFIX = "ratelimit:";
+    static final long LEASE_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // KEYS[1] bucket; ARGV rate per second, capacity, tokens wanted. Returns the tokens granted.
+    static final RedisScript<Long> LEASE_SCRIPT = new DefaultRedisScript<>("""
+            local rate = tonumber(ARGV[1])
+            local capacity = tonumber(ARGV[2])
+            local wanted = tonumber(ARGV[3])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1]) or capacity
+            local ts = tonumber(state[2]) or now
+            tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000)
+            local granted = math.min(wanted, math.floor(tokens))
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens - granted), 'ts', tostring(now))
+            redis.call('PEXPIRE', KEYS[1], math.ceil(capacity / rate * 1000) + 1000)
+            return granted
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Bulkhead redisBulkhead;
+    private final int leaseSize;
+    private final LongSupplier nanoClock;
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepNanos;
+
+    public RedisRateLimiter(RedisTemplate<String, String> redisTemplate, Bulkhead redisBulkhead, int leaseSize) {
+        this(redisTemplate, redisBulkhead, leaseSize, System::nanoTime);
+    }
+
+    RedisRateLimiter(RedisTemplate<String, String> redisTemplate, Bulkhead redisBulkhead, int leaseSize, LongSupplier nanoClock) {
+        this.redisTemplate = redisTemplate;
+        this.redisBulkhead = redisBulkhead;
+        this.leaseSize = Math.max(1, leaseSize);
+        this.nanoClock = nanoClock;
+        this.nextSweepNanos = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    @Override
+    public boolean tryAcquire(String key, AdmissionProperties.Limit limit) {
+        if (!limit.isLimited()) {
+            return true;
+        }
+        Lease lease = leases.get(key);
+        if (null == lease) {
+            if (leases.size() >= LocalRateLimiter.MAX_KEYS) {
+                dropLapsedLeases(nanoClock.getAsLong());
+            }
+            if (leases.size() >= LocalRateLimiter.MAX_KEYS) {
+                return lease(key, limit, 1) > 0;
+            }
+            lease = leases.computeIfAbsent(key, k -> new Lease());
+        }
+        // A ReentrantLock rather than synchronized, so a virtual thread waiting on Redis does not pin its carrier
+        lease.lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            if (lease.remaining > 0 && now < lease.expiresAtNanos) {
+                lease.remaining--;
+                return true;
+            }
+            if (now < lease.deniedUntilNanos) {
+                return false;
+            }
+            long granted = lease(key, limit, Math.min(leaseSize, limit.capacity()));
+            if (granted <= 0) {
+                lease.remaining = 0;
+                lease.deniedUntilNanos = now + (long) (1_000_000_000d / limit.getRate());
+                return false;
+            }
+            lease.remaining = granted - 1;
+            lease.expiresAtNanos = now + LEASE_TTL_NANOS;
+            return true;
+        } finally {
+            lease.lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the leases with no tokens left to serve and no rejection window left to enforce, at most
+     * once per {@link LocalRateLimiter#SWEEP_INTERVAL_NANOS}. Their buckets stay in Redis.
+     */
+    private void dropLapsedLeases(long nowNanos) {
+        long next = nextSweepNanos.get();
+        if (nowNanos - next < 0 || !nextSweepNanos.compareAndSet(next, nowNanos + LocalRateLimiter.SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        leases.values().removeIf(lease -> lease.isLapsed(nowNanos));
+    }
+
+    private long lease(String key, AdmissionProperties.Limit limit, int wanted) {
+        try {
+            Long granted = redisBulkhead.call(() -> redisTemplate.execute(LEASE_SCRIPT, List.of(KEY_PREFIX + key),
+                    Double.toString(limit.getRate()), Integer.toString(limit.capacity()), Integer.toString(wanted)));
+            return null != granted ? granted : wanted;
+        } catch (RuntimeException e) {
+            logger.warn("Rate limiter unavailable, admitting {}: {}", key, e.getMessage());
+            return wanted;
+        }
+    }
+
+    private static final class Lease {
+        private final ReentrantLock lock = new ReentrantLock();
+        private long remaining;
+        // Volatile for dropLapsedLeases, which reads them without the lock
+        private volatile long expiresAtNanos;
+        private volatile long deniedUntilNanos;
+
+        boolean isLapsed(long nowNanos) {
+            return !lock.isLocked() && nowNanos - expiresAtNanos >= 0 && nowNanos - deniedUntilNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package vn.vnpay.demo2_16102024.checksum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+
+@Configuration
+@EnableConfigurationProperties(ChecksumProperties.class)
+public class ChecksumConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChecksumConfig.class);
+
+    @Bean
+    public ChecksumVerifier checksumVerifier(ChecksumProperties properties) throws NoSuchAlgorithmException {
+        if (!properties.isEnabled()) {
+            logger.warn("Payment checkSum verification is disabled");
+            return new ChecksumVerifier(null);
+        }
+        logger.info("Verifying payment checkSums with {} keys from {}", properties.getAlgorithm(), properties.getKeyFile());
+        return new ChecksumVerifier(new ChecksumKeyStore(Path.of(properties.getKeyFile()), properties.getAlgorithm(), properties.getRefreshMs(), properties.getPoolSize()));
+    }
+}
@@ -0,0 +1,146 @@
+package vn.vnpay.demo2_16102024.checksum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Per-apiID checksum keys read from a local properties file and cached in memory. Lookups look at
+ * the file's modification time at most once per refresh interval and reload it when it changed;
+ * a file that fails to load keeps the previous keys in place.
+ */
+public class ChecksumKeyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChecksumKeyStore.class);
+
+    private final Path keyFile;
+    private final String algorithm;
+    private final long refreshNanos;
+    private final int poolSize;
+
+    private volatile Map<String, ApiKey> keys = Map.of();
+    private volatile long nextCheck;
+    private long loadedModified = Long.MIN_VALUE;
+
+    /**
+     * @param poolSize Macs kept per key, and scratch buffers kept by the verifier; about the number of
+     *                 payments verified at once
+     */
+    public ChecksumKeyStore(Path keyFile, String algorithm, long refreshMs, int poolSize) throws NoSuchAlgorithmException {
+        Mac.getInstance(algorithm);
+        this.keyFile = keyFile;
+        this.algorithm = algorithm;
+        this.refreshNanos = refreshMs * 1_000_000L;
+        this.poolSize = Math.max(1, poolSize);
+        refresh();
+    }
+
+    /**
+     * The key of {@code apiID}, or null when it has none.
+     */
+    public ApiKey get(String apiID) {
+        if (System.nanoTime() - nextCheck >= 0) {
+            refresh();
+        }
+        return null == apiID ? null : keys.get(apiID);
+    }
+
+    public int poolSize() {
+        return poolSize;
+    }
+
+    synchronized void refresh() {
+        nextCheck = System.nanoTime() + refreshNanos;
+        try {
+            long modified = Files.getLastModifiedTime(keyFile).toMillis();
+            if (modified == loadedModified) {
+                return;
+            }
+            keys = load();
+            loadedModified = modified;
+            logger.info("Loaded checksum keys for {} apiIDs from {}", keys.size(), keyFile);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            logger.error("Failed to load checksum keys from {}, keeping {} loaded keys: {}", keyFile, keys.size(), e.getMessage());
+        }
+    }
+
+    private Map<String, ApiKey> load() throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(keyFile, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        Map<String, ApiKey> loaded = new HashMap<>();
+        for (String apiID : properties.stringPropertyNames()) {
+            byte[] secret = Base64.getDecoder().decode(properties.getProperty(apiID).trim());
+            loaded.put(apiID, new ApiKey(new SecretKeySpec(secret, algorithm), poolSize));
+        }
+        return Map.copyOf(loaded);
+    }
+
+    /**
+     * A secret key with a bounded pool of initialised Macs, so verifying neither builds nor re-keys
+     * a Mac. A pool rather than one Mac per thread, because with virtual threads every request runs
+     * on a new thread. A reloaded key is a new ApiKey, and the Macs of the old one go away with it.
+     */
+    public static final class ApiKey {
+
+        private final SecretKeySpec key;
+        private final Mac prototype;
+        private final ArrayBlockingQueue<Mac> pool;
+
+        ApiKey(SecretKeySpec key, int poolSize) {
+            this.key = key;
+            this.prototype = initialise(key);
+            this.pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        }
+
+        /**
+         * A Mac for the key, reset and ready for input; hand it back with {@link #release(Mac)}.
+         */
+        public Mac borrow() {
+            Mac mac = pool.poll();
+            return null != mac ? mac : newMac();
+        }
+
+        /**
+         * Returns a reset Mac to the pool; past the pool size it is left to the garbage collector.
+         */
+        public void release(Mac mac) {
+            pool.offer(mac);
+        }
+
+        private synchronized Mac newMac() {
+            try {
+                // A copy of the keyed prototype skips the provider lookup and key setup
+                return (Mac) prototype.clone();
+            } catch (CloneNotSupportedException e) {
+                return initialise(key);
+            }
+        }
+
+        private static Mac initialise(SecretKeySpec key) {
+            try {
+                Mac mac = Mac.getInstance(key.getAlgorithm());
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Cannot initialise " + key.getAlgorithm(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package vn.vnpay.demo2_16102024.checksum;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "payment.checksum")
+public class ChecksumProperties {
+
+    /**
+     * Reject payments whose checkSum is not the HMAC of their canonical fields.
+     */
+    private boolean enabled = false;
+
+    /**
+     * JCA Mac algorithm; the checkSum is its hex-encoded output.
+     */
+    private String algorithm = "HmacSHA256";
+
+    /**
+     * Properties file of {@code <apiID>=<Base64 secret>} lines.
+     */
+    private String keyFile = "checksum-keys.properties";
+
+    /**
+     * How often the key file's modification time is checked; a changed file is reloaded.
+     */
+    private long refreshMs = 60_000;
+
+    /**
+     * Macs kept per key and buffers kept by the verifier; more are built when more payments are
+     * verified at once and dropped afterwards.
+     */
+    private int poolSize = 256;
+}
@@ -0,0 +1,241 @@
+package vn.vnpay.demo2_16102024.checksum;
+
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Verifies {@link PaymentRequest#getCheckSum()} as the hex HMAC, under the apiID's key, of the
+ * canonical form of the payment: the fields below in this order, joined by {@code '|'}, each
+ * written as its UTF-8 byte length, {@code ':'} and its UTF-8 bytes, and null written as {@code '-'}.
+ * <pre>
+ * tokenKey|apiID|mobile|bankCode|accountNo|payDate|debitAmount|realAmount|respCode|traceTransfer|orderCode|userName|promotionCode
+ * e.g. 25:1601353776839FT19310RH6P1|11:restPayment|...|9:cntest001|-
+ * </pre>
+ * The length prefixes keep a '|' inside a value from moving text between fields, and keep null
+ * apart from the empty string, so no two payments share a canonical form.
+ * The hot path builds no Strings or Macs: the canonical form is encoded into a pooled buffer, the
+ * digest is copied into a pooled array, and the Mac is borrowed from the key's pool. Pools rather
+ * than ThreadLocals, because a virtual thread serves one request and would never reuse its own.
+ * What is left is the digest array the JDK's HMAC allocates internally on every doFinal.
+ */
+public class ChecksumVerifier {
+
+    private static final byte SEPARATOR = '|';
+    private static final byte LENGTH_SEPARATOR = ':';
+    private static final byte NULL_FIELD = '-';
+
+    private final ChecksumKeyStore keyStore;
+    private final ArrayBlockingQueue<Scratch> scratches;
+
+    /**
+     * @param keyStore the keys to verify with, or null to accept every payment
+     */
+    public ChecksumVerifier(ChecksumKeyStore keyStore) {
+        this.keyStore = keyStore;
+        this.scratches = new ArrayBlockingQueue<>(null == keyStore ? 1 : keyStore.poolSize());
+    }
+
+    public boolean isEnabled() {
+        return null != keyStore;
+    }
+
+    /**
+     * True when verification is disabled or the checkSum matches. A payment whose apiID has no key fails.
+     */
+    public boolean verify(PaymentRequest request) {
+        if (null == keyStore) {
+            return true;
+        }
+        String checkSum = request.getCheckSum();
+        ChecksumKeyStore.ApiKey key = keyStore.get(request.getApiID());
+        if (null == key || null == checkSum) {
+            return false;
+        }
+        Mac mac = key.borrow();
+        Scratch scratch = borrowScratch();
+        try {
+            int length = mac.getMacLength();
+            if (checkSum.length() != 2 * length) {
+                return false;
+            }
+            digest(mac, request, scratch);
+            // Compares every byte so the time taken does not tell how much of a forged value matched
+            int difference = 0;
+            for (int i = 0; i < length; i++) {
+                int high = Character.digit(checkSum.charAt(2 * i), 16);
+                int low = Character.digit(checkSum.charAt(2 * i + 1), 16);
+                difference |= (high | low) >>> 31;
+                difference |= ((high << 4 | low) ^ scratch.digest[i]) & 0xff;
+            }
+            return 0 == difference;
+        } finally {
+            key.release(mac);
+            scratches.offer(scratch);
+        }
+    }
+
+    /**
+     * The checkSum a client should send for {@code request}; allocates, so it is meant for tools and tests.
+     */
+    public String sign(PaymentRequest request) {
+        ChecksumKeyStore.ApiKey key = null == keyStore ? null : keyStore.get(request.getApiID());
+        if (null == key) {
+            throw new IllegalArgumentException("No checksum key for apiID " + request.getApiID());
+        }
+        Mac mac = key.borrow();
+        Scratch scratch = borrowScratch();
+        try {
+            digest(mac, request, scratch);
+            return HexFormat.of().formatHex(scratch.digest, 0, mac.getMacLength());
+        } finally {
+            key.release(mac);
+            scratches.offer(scratch);
+        }
+    }
+
+    private Scratch borrowScratch() {
+        Scratch scratch = scratches.poll();
+        return null != scratch ? scratch : new Scratch();
+    }
+
+    private static void digest(Mac mac, PaymentRequest request, Scratch scratch) {
+        scratch.length = 0;
+        scratch.field(request.getTokenKey()).separator()
+                .field(request.getApiID()).separator()
+                .field(request.getMobile()).separator()
+                .field(request.getBankCode()).separator()
+                .field(request.getAccountNo()).separator()
+                .field(request.getPayDate()).separator()
+                .field(request.getDebitAmount()).separator()
+                .field(request.getRealAmount()).separator()
+                .field(request.getRespCode()).separator()
+                .field(request.getTraceTransfer()).separator()
+                .field(request.getOrderCode()).separator()
+                .field(request.getUserName()).separator()
+                .field(request.getPromotionCode());
+        mac.update(scratch.input, 0, scratch.length);
+        try {
+            // doFinal also resets the Mac before it goes back to the pool
+            mac.doFinal(scratch.digest, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Pooled buffers. The input buffer grows for an unusually long payment and is then kept.
+     */
+    private static final class Scratch {
+
+        private byte[] input = new byte[512];
+        private final byte[] digest = new byte[64];
+        private int length;
+
+        Scratch separator() {
+            ensure(1);
+            input[length++] = SEPARATOR;
+            return this;
+        }
+
+        Scratch field(String value) {
+            if (null == value) {
+                return absent();
+            }
+            int start = length;
+            append(value);
+            return prefixLength(start);
+        }
+
+        Scratch field(Integer value) {
+            if (null == value) {
+                return absent();
+            }
+            int start = length;
+            append(value.intValue());
+            return prefixLength(start);
+        }
+
+        private Scratch absent() {
+            ensure(1);
+            input[length++] = NULL_FIELD;
+            return this;
+        }
+
+        /**
+         * Moves the value encoded since {@code start} right and writes its byte length and ':' in front of it.
+         */
+        private Scratch prefixLength(int start) {
+            int size = length - start;
+            int digits = 1;
+            for (int remaining = size; remaining >= 10; remaining /= 10) {
+                digits++;
+            }
+            ensure(digits + 1);
+            System.arraycopy(input, start, input, start + digits + 1, size);
+            for (int i = start + digits - 1, remaining = size; i >= start; i--, remaining /= 10) {
+                input[i] = (byte) ('0' + remaining % 10);
+            }
+            input[start + digits] = LENGTH_SEPARATOR;
+            length += digits + 1;
+            return this;
+        }
+
+        private void append(int value) {
+            ensure(11);
+            long remaining = value;
+            if (remaining < 0) {
+                input[length++] = '-';
+                remaining = -remaining;
+            }
+            int start = length;
+            do {
+                input[length++] = (byte) ('0' + remaining % 10);
+                remaining /= 10;
+            } while (remaining > 0);
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                byte swap = input[i];
+                input[i] = input[j];
+                input[j] = swap;
+            }
+        }
+
+        /**
+         * UTF-8 as {@link String#getBytes} writes it, including '?' for an unpaired surrogate.
+         */
+        private void append(String value) {
+            ensure(3 * value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    input[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    input[length++] = (byte) (0xc0 | c >> 6);
+                    input[length++] = (byte) (0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    input[length++] = (byte) (0xf0 | codePoint >> 18);
+                    input[length++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                    input[length++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                    input[length++] = (byte) (0x80 | codePoint & 0x3f);
+                } else if (Character.isSurrogate(c)) {
+                    input[length++] = '?';
+                } else {
+                    input[length++] = (byte) (0xe0 | c >> 12);
+                    input[length++] = (byte) (0x80 | c >> 6 & 0x3f);
+                    input[length++] = (byte) (0x80 | c & 0x3f);
+                }
+            }
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > input.length) {
+                input = Arrays.copyOf(input, Math.max(2 * input.length, length + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package vn.vnpay.demo2_16102024.codec;
+
+import org.springframework.stereotype.Component;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Compact binary encoding of {@link PaymentRequest}.
+ * <p>
+ * Layout: a version byte, then three varint bitmaps indexed by {@link Field} ordinal (present,
+ * equal to the DTO default, digit-only string), then the values of the fields that are present
+ * and not defaulted, in field order. Amounts are zigzag varints. Digit-only strings of up to 18
+ * characters (mobile, payDate, accountNo, ...) are their length followed by their numeric value,
+ * so leading zeros survive; every other string is a varint length followed by UTF-8 bytes.
+ */
+@Component
+public class BinaryPaymentMessageCodec implements PaymentMessageCodec {
+
+    public static final String CONTENT_TYPE = "application/x-payment-binary";
+
+    static final int VERSION = 1;
+
+    private static final int MAX_NUMERIC_DIGITS = 18;
+
+    /**
+     * Bit positions are part of the wire format: append new fields at the end, never reorder or
+     * remove, and bump {@link #VERSION} for any other change.
+     */
+    private enum Field {
+        TOKEN_KEY(PaymentRequest::getTokenKey, (r, v) -> r.setTokenKey((String) v)),
+        API_ID(PaymentRequest::getApiID, (r, v) -> r.setApiID((String) v)),
+        MOBILE(PaymentRequest::getMobile, (r, v) -> r.setMobile((String) v)),
+        BANK_CODE(PaymentRequest::getBankCode, (r, v) -> r.setBankCode((String) v)),
+        ACCOUNT_NO(PaymentRequest::getAccountNo, (r, v) -> r.setAccountNo((String) v)),
+        PAY_DATE(PaymentRequest::getPayDate, (r, v) -> r.setPayDate((String) v)),
+        ADDITIONAL_DATA(PaymentRequest::getAdditionalData, (r, v) -> r.setAdditionalData((String) v)),
+        DEBIT_AMOUNT(PaymentRequest::getDebitAmount, (r, v) -> r.setDebitAmount((Integer) v)),
+        RESP_CODE(PaymentRequest::getRespCode, (r, v) -> r.setRespCode((String) v)),
+        RESP_DESC(PaymentRequest::getRespDesc, (r, v) -> r.setRespDesc((String) v)),
+        TRACE_TRANSFER(PaymentRequest::getTraceTransfer, (r, v) -> r.setTraceTransfer((String) v)),
+        MESSAGE_TYPE(PaymentRequest::getMessageType, (r, v) -> r.setMessageType((String) v)),
+        ORDER_CODE(PaymentRequest::getOrderCode, (r, v) -> r.setOrderCode((String) v)),
+        REAL_AMOUNT(PaymentRequest::getRealAmount, (r, v) -> r.setRealAmount((Integer) v)),
+        PROMOTION_CODE(PaymentRequest::getPromotionCode, (r, v) -> r.setPromotionCode((String) v)),
+        ADD_VALUE(PaymentRequest::getAddValue, (r, v) -> r.setAddValue((String) v)),
+        CHECK_SUM(PaymentRequest::getCheckSum, (r, v) -> r.setCheckSum((String) v)),
+        USER_NAME(PaymentRequest::getUserName, (r, v) -> r.setUserName((String) v));
+
+        private static final Field[] VALUES = values();
+
+        private final Function<PaymentRequest, Object> getter;
+        private final BiConsumer<PaymentRequest, Object> setter;
+        private final Object defaultValue;
+
+        Field(Function<PaymentRequest, Object> getter, BiConsumer<PaymentRequest, Object> setter) {
+            this.getter = getter;
+            this.setter = setter;
+            this.defaultValue = getter.apply(new PaymentRequest());
+        }
+
+        long bit() {
+            return 1L << ordinal();
+        }
+    }
+
+    @Override
+    public String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public byte[] encode(PaymentRequest paymentRequest) {
+        Object[] values = new Object[Field.VALUES.length];
+        long present = 0;
+        long defaulted = 0;
+        long numeric = 0;
+        for (Field field : Field.VALUES) {
+            Object value = field.getter.apply(paymentRequest);
+            if (null == value) {
+                continue;
+            }
+            present |= field.bit();
+            if (value.equals(field.defaultValue)) {
+                defaulted |= field.bit();
+            } else {
+                values[field.ordinal()] = value;
+                if (value instanceof String s && isNumeric(s)) {
+                    numeric |= field.bit();
+                }
+            }
+        }
+
+        Writer out = new Writer();
+        out.writeByte(VERSION);
+        out.writeVarint(present);
+        out.writeVarint(defaulted);
+        out.writeVarint(numeric);
+        for (Field field : Field.VALUES) {
+            Object value = values[field.ordinal()];
+            if (null == value) {
+                continue;
+            }
+            if (value instanceof Integer amount) {
+                out.writeVarint(zigzag(amount));
+            } else if (0 != (numeric & field.bit())) {
+                String digits = (String) value;
+                out.writeVarint(digits.length());
+                out.writeVarint(Long.parseLong(digits));
+            } else {
+                out.writeString((String) value);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public PaymentRequest decode(byte[] body) throws IOException {
+        Reader in = new Reader(body);
+        int version = in.readByte();
+        if (VERSION != version) {
+            throw new IOException("Unsupported binary payment message version: " + version);
+        }
+        long present = in.readVarint();
+        long defaulted = in.readVarint();
+        long numeric = in.readVarint();
+
+        PaymentRequest paymentRequest = new PaymentRequest();
+        for (Field field : Field.VALUES) {
+            if (0 == (present & field.bit())) {
+                field.setter.accept(paymentRequest, null);
+            } else if (0 != (defaulted & field.bit())) {
+                field.setter.accept(paymentRequest, field.defaultValue);
+            } else if (field == Field.DEBIT_AMOUNT || field == Field.REAL_AMOUNT) {
+                field.setter.accept(paymentRequest, unzigzag(in.readVarint()));
+            } else if (0 != (numeric & field.bit())) {
+                long length = in.readVarint();
+                if (length > MAX_NUMERIC_DIGITS) {
+                    throw new IOException("Malformed digit string in binary payment message");
+                }
+                field.setter.accept(paymentRequest, padDigits(in.readVarint(), (int) length));
+            } else {
+                field.setter.accept(paymentRequest, in.readString());
+            }
+        }
+        return paymentRequest;
+    }
+
+    private static boolean isNumeric(String value) {
+        int length = value.length();
+        if (0 == length || length > MAX_NUMERIC_DIGITS) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String padDigits(long value, int length) {
+        String digits = Long.toString(value);
+        return digits.length() >= length ? digits : "0".repeat(length - digits.length()) + digits;
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    private static int unzigzag(long value) {
+        int n = (int) value;
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static final class Writer {
+
+        private byte[] buffer = new byte[256];
+        private int position;
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            ensureCapacity(10);
+            while (0 != (value & ~0x7FL)) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * Payment fields are almost always ASCII, which is copied char by char; anything else
+         * goes through the JDK encoder.
+         */
+        void writeString(String value) {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) >= 0x80) {
+                    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                    writeVarint(utf8.length);
+                    ensureCapacity(utf8.length);
+                    System.arraycopy(utf8, 0, buffer, position, utf8.length);
+                    position += utf8.length;
+                    return;
+                }
+            }
+            writeVarint(length);
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (position + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+            }
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readByte() throws EOFException {
+            if (position >= buffer.length) {
+                throw new EOFException("Truncated binary payment message");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if (0 == (b & 0x80)) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in binary payment message");
+        }
+
+        String readString() throws IOException {
+            int length = (int) readVarint();
+            if (length < 0 || length > buffer.length - position) {
+                throw new EOFException("Truncated binary payment message");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
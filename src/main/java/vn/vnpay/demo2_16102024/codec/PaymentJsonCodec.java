@@ -0,0 +1,71 @@
+package vn.vnpay.demo2_16102024.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+
+import java.io.IOException;
+
+/**
+ * JSON encoding of the payment DTOs straight to and from AMQP message bodies. The readers and
+ * writers are built once from the Spring-configured ObjectMapper and are thread-safe, so no
+ * intermediate String is created on either side of the queue.
+ */
+@Component
+public class PaymentJsonCodec implements PaymentMessageCodec {
+
+    private final ObjectReader requestReader;
+    private final ObjectWriter requestWriter;
+    private final ObjectReader responseReader;
+    private final ObjectWriter responseWriter;
+
+    @Autowired
+    public PaymentJsonCodec(ObjectMapper objectMapper) {
+        this.requestReader = objectMapper.readerFor(PaymentRequest.class);
+        this.requestWriter = objectMapper.writerFor(PaymentRequest.class);
+        this.responseReader = objectMapper.readerFor(PaymentResponse.class);
+        this.responseWriter = objectMapper.writerFor(PaymentResponse.class);
+    }
+
+    @Override
+    public String contentType() {
+        return MessageProperties.CONTENT_TYPE_JSON;
+    }
+
+    @Override
+    public byte[] encode(PaymentRequest paymentRequest) throws JsonProcessingException {
+        return writeRequest(paymentRequest);
+    }
+
+    @Override
+    public PaymentRequest decode(byte[] body) throws IOException {
+        return readRequest(body);
+    }
+
+    public byte[] writeRequest(PaymentRequest paymentRequest) throws JsonProcessingException {
+        return requestWriter.writeValueAsBytes(paymentRequest);
+    }
+
+    public PaymentRequest readRequest(byte[] body) throws IOException {
+        return requestReader.readValue(body);
+    }
+
+    public byte[] writeResponse(PaymentResponse paymentResponse) throws JsonProcessingException {
+        return responseWriter.writeValueAsBytes(paymentResponse);
+    }
+
+    public PaymentResponse readResponse(byte[] body) throws IOException {
+        return responseReader.readValue(body);
+    }
+
+    public static Message toMessage(byte[] body) {
+        return PaymentMessageCodec.toMessage(body, MessageProperties.CONTENT_TYPE_JSON);
+    }
+}
@@ -0,0 +1,30 @@
+package vn.vnpay.demo2_16102024.codec;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+
+import java.io.IOException;
+
+/**
+ * A wire encoding of {@link PaymentRequest} for paymentQueue, identified by the AMQP content type
+ * it is published with.
+ */
+public interface PaymentMessageCodec {
+
+    String contentType();
+
+    byte[] encode(PaymentRequest paymentRequest) throws IOException;
+
+    PaymentRequest decode(byte[] body) throws IOException;
+
+    /**
+     * Wraps an encoded body in a persistent AMQP message, bypassing the template's MessageConverter.
+     */
+    static Message toMessage(byte[] body, String contentType) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(contentType);
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+}
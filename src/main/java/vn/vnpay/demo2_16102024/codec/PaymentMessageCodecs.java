@@ -0,0 +1,66 @@
+package vn.vnpay.demo2_16102024.codec;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the {@link PaymentMessageCodec} by AMQP content type. Consumers decode every registered
+ * encoding, while producers publish with {@code payment.codec.producer-content-type}, so a new
+ * encoding can be rolled out to consumers before any producer switches to it.
+ */
+@Component
+public class PaymentMessageCodecs {
+
+    private final Map<String, PaymentMessageCodec> codecsByContentType = new HashMap<>();
+    private final PaymentMessageCodec producerCodec;
+    private final PaymentMessageCodec defaultCodec;
+
+    @Autowired
+    public PaymentMessageCodecs(List<PaymentMessageCodec> codecs,
+                                @Value("${payment.codec.producer-content-type:" + MessageProperties.CONTENT_TYPE_JSON + "}") String producerContentType) {
+        for (PaymentMessageCodec codec : codecs) {
+            codecsByContentType.put(codec.contentType(), codec);
+        }
+        this.defaultCodec = codecsByContentType.get(MessageProperties.CONTENT_TYPE_JSON);
+        this.producerCodec = codecsByContentType.get(producerContentType);
+        if (null == defaultCodec || null == producerCodec) {
+            throw new IllegalStateException("No payment message codec for content type " + producerContentType
+                    + ", available: " + codecsByContentType.keySet());
+        }
+    }
+
+    public Message encode(PaymentRequest paymentRequest) throws IOException {
+        return PaymentMessageCodec.toMessage(producerCodec.encode(paymentRequest), producerCodec.contentType());
+    }
+
+    public PaymentRequest decode(Message message) throws IOException {
+        return forContentType(message.getMessageProperties().getContentType()).decode(message.getBody());
+    }
+
+    /**
+     * Messages without a content type (which Spring AMQP reports as {@code application/octet-stream}),
+     * or published as {@code text/plain} by the String-based producer that predates the codecs, are JSON.
+     */
+    PaymentMessageCodec forContentType(String contentType) {
+        if (null == contentType
+                || MessageProperties.CONTENT_TYPE_BYTES.equals(contentType)
+                || MessageProperties.CONTENT_TYPE_TEXT_PLAIN.equals(contentType)) {
+            return defaultCodec;
+        }
+        PaymentMessageCodec codec = codecsByContentType.get(contentType);
+        if (null == codec) {
+            throw new MessageConversionException("Unsupported payment message content type: " + contentType);
+        }
+        return codec;
+    }
+}
@@ -0,0 +1,31 @@
+package vn.vnpay.demo2_16102024.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "payment.consumer.batch")
+public class BatchConsumerProperties {
+
+    /**
+     * Consume paymentQueue in batches instead of one message at a time.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Maximum number of messages handed to the listener in one batch.
+     */
+    private int size = 100;
+
+    /**
+     * How long the container waits for more messages before releasing a partial batch.
+     */
+    private long lingerMs = 50;
+
+    /**
+     * Re-process the batch one message at a time when the batch insert fails. When false, a batch
+     * that fails on a transient error is requeued whole; other failures, such as a duplicate key,
+     * are still re-processed one at a time, since they would fail again on every redelivery.
+     */
+    private boolean fallbackToSingle = true;
+}
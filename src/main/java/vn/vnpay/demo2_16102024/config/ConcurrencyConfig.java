@@ -0,0 +1,56 @@
+package vn.vnpay.demo2_16102024.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Concurrency limits for the blocking clients. Tomcat and the Rabbit listener containers
+ * run on virtual threads when {@code spring.threads.virtual.enabled=true}; the limits below
+ * then replace thread-pool sizes as the bound on Redis and JDBC concurrency.
+ */
+@Configuration
+@EnableConfigurationProperties(ConcurrencyProperties.class)
+public class ConcurrencyConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyConfig.class);
+
+    public static final String REDIS_BULKHEAD = "redisBulkhead";
+    public static final String JDBC_BULKHEAD = "jdbcBulkhead";
+    public static final String CALLBACK_EXECUTOR = "paymentCallbackExecutor";
+
+    @Bean(name = REDIS_BULKHEAD)
+    public Bulkhead redisBulkhead(ConcurrencyProperties properties) {
+        logger.info("Creating Redis bulkhead with {} permits", properties.getRedisPermits());
+        return new Bulkhead("redis", properties.getRedisPermits(), properties.getAcquireTimeoutMs());
+    }
+
+    @Bean(name = JDBC_BULKHEAD)
+    public Bulkhead jdbcBulkhead(ConcurrencyProperties properties) {
+        logger.info("Creating JDBC bulkhead with {} permits", properties.getJdbcPermits());
+        return new Bulkhead("jdbc", properties.getJdbcPermits(), properties.getAcquireTimeoutMs());
+    }
+
+    /**
+     * Runs the work that follows a broker confirm, which may call Redis, so it stays off the AMQP
+     * connection thread and off the common ForkJoinPool. A virtual thread per callback when
+     * virtual threads are enabled, otherwise a fixed pool.
+     */
+    @Bean(name = CALLBACK_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService paymentCallbackExecutor(ConcurrencyProperties properties,
+                                                   @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            logger.info("Creating payment callback executor on virtual threads");
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("payment-callback-", 0).factory());
+        }
+        logger.info("Creating payment callback executor with {} threads", properties.getCallbackThreads());
+        return Executors.newFixedThreadPool(properties.getCallbackThreads(), Thread.ofPlatform().name("payment-callback-", 0).factory());
+    }
+}
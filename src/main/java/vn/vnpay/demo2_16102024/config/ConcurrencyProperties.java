@@ -0,0 +1,29 @@
+package vn.vnpay.demo2_16102024.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "payment.concurrency")
+public class ConcurrencyProperties {
+
+    /**
+     * Concurrent Redis calls allowed; matches the Jedis pool size by default.
+     */
+    private int redisPermits = 10;
+
+    /**
+     * Concurrent JDBC calls allowed; matches the Hikari pool size by default.
+     */
+    private int jdbcPermits = 10;
+
+    /**
+     * How long a caller waits for a permit before failing.
+     */
+    private long acquireTimeoutMs = 1000;
+
+    /**
+     * Threads completing async payments after the broker confirm, when not on virtual threads.
+     */
+    private int callbackThreads = 10;
+}
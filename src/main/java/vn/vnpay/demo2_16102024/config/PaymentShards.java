@@ -0,0 +1,62 @@
+package vn.vnpay.demo2_16102024.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps a payment to its shard queue, {@code paymentQueue.<shard>}, on the default exchange.
+ * String.hashCode is specified by the JLS, so every producer node picks the same shard for a key.
+ */
+@Component
+public class PaymentShards {
+
+    private final ShardingProperties properties;
+    private final List<String> queueNames;
+
+    @Autowired
+    public PaymentShards(ShardingProperties properties) {
+        if (properties.getShards() < 1 || properties.getNodeCount() < 1) {
+            throw new IllegalArgumentException("payment.sharding.shards and node-count must be at least 1");
+        }
+        this.properties = properties;
+        List<String> names = new ArrayList<>(properties.getShards());
+        for (int shard = 0; shard < properties.getShards(); shard++) {
+            names.add(PaymentConstant.QUEUE_NAME + "." + shard);
+        }
+        this.queueNames = List.copyOf(names);
+    }
+
+    public int count() {
+        return queueNames.size();
+    }
+
+    public List<String> queueNames() {
+        return queueNames;
+    }
+
+    public String queueName(int shard) {
+        return queueNames.get(shard);
+    }
+
+    public String queueFor(PaymentRequest paymentRequest) {
+        return queueName(shardOf(ShardingProperties.ShardKey.ACCOUNT_NO == properties.getKey()
+                ? paymentRequest.getAccountNo()
+                : paymentRequest.getTokenKey()));
+    }
+
+    int shardOf(String key) {
+        return null == key ? 0 : Math.floorMod(key.hashCode(), queueNames.size());
+    }
+
+    /**
+     * Whether this node subscribes to the shard at startup rather than as a delayed standby.
+     */
+    public boolean isPreferred(int shard) {
+        return properties.getNodeIndex() == shard % properties.getNodeCount();
+    }
+}
@@ -1,23 +1,140 @@
 package vn.vnpay.demo2_16102024.config;
 
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import vn.vnpay.demo2_16102024.status.PaymentStatusProperties;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Configuration
+@EnableConfigurationProperties({BatchConsumerProperties.class, ShardingProperties.class})
 public class RabbitConfig {
     public static final String QUEUE_NAME = "paymentQueue";
     public static final String EXCHANGE_NAME = "paymentExchange";
     public static final String ROUTING_KEY = "paymentRoutingKey";
+    public static final String RESULT_QUEUE_NAME = "paymentResultQueue";
+    public static final String RESULT_RETRY_QUEUE_NAME = "paymentResultQueue.retry";
+    public static final String RESULT_PARKING_QUEUE_NAME = "paymentResultQueue.parking";
+    public static final String BATCH_CONTAINER_FACTORY = "batchContainerFactory";
+    public static final String SHARD_CONTAINER_FACTORY = "shardContainerFactory";
 
+    /**
+     * The queue used before sharding; still consumed so messages published by older producers drain.
+     */
     @Bean
     public Queue paymentQueue() {
         return new Queue(QUEUE_NAME, true);
     }
 
+    @Bean
+    public Declarables paymentShardQueues(PaymentShards paymentShards, ShardingProperties properties) {
+        List<Declarable> queues = new ArrayList<>(paymentShards.count());
+        for (String queueName : paymentShards.queueNames()) {
+            QueueBuilder builder = QueueBuilder.durable(queueName);
+            if (properties.isSingleActiveConsumer()) {
+                builder.singleActiveConsumer();
+            }
+            queues.add(builder.build());
+        }
+        return new Declarables(queues);
+    }
+
     @Bean
     public DirectExchange paymentExchange() {
         return new DirectExchange(EXCHANGE_NAME);
     }
+
+    /**
+     * Durable copy of every payment response, consumed by one node to record the final status.
+     * A response whose status cannot be stored is rejected and dead-lettered to the retry queue.
+     */
+    @Bean
+    public Queue paymentResultQueue() {
+        return QueueBuilder.durable(RESULT_QUEUE_NAME)
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(RESULT_RETRY_QUEUE_NAME)
+                .build();
+    }
+
+    /**
+     * Holds a rejected response for the retry delay, then dead-letters it back to the result queue.
+     */
+    @Bean
+    public Queue paymentResultRetryQueue(PaymentStatusProperties properties) {
+        return QueueBuilder.durable(RESULT_RETRY_QUEUE_NAME)
+                .ttl((int) properties.getResultRetryDelayMs())
+                .deadLetterExchange("")
+                .deadLetterRoutingKey(RESULT_QUEUE_NAME)
+                .build();
+    }
+
+    /**
+     * Responses whose status still could not be stored after the last attempt, kept for an operator
+     * to shovel back to the result queue.
+     */
+    @Bean
+    public Queue paymentResultParkingQueue() {
+        return QueueBuilder.durable(RESULT_PARKING_QUEUE_NAME).build();
+    }
+
+    @Bean
+    public Binding paymentResultBinding(Queue paymentResultQueue, DirectExchange paymentExchange) {
+        return BindingBuilder.bind(paymentResultQueue).to(paymentExchange).with(ROUTING_KEY);
+    }
+
+    /**
+     * Per-node copy of every payment response, used to wake the status requests waiting on this node.
+     * Deleted by the broker when the node disconnects.
+     */
+    @Bean
+    public Queue paymentResultBroadcastQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding paymentResultBroadcastBinding(Queue paymentResultBroadcastQueue, DirectExchange paymentExchange) {
+        return BindingBuilder.bind(paymentResultBroadcastQueue).to(paymentExchange).with(ROUTING_KEY);
+    }
+
+    @Bean(name = BATCH_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory batchContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                      ConnectionFactory connectionFactory,
+                                                                      BatchConsumerProperties properties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(properties.getSize());
+        factory.setReceiveTimeout(properties.getLingerMs());
+        // The broker must be allowed to push at least one full batch before the first ack
+        factory.setPrefetchCount(properties.getSize() * 2);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
+
+    @Bean(name = SHARD_CONTAINER_FACTORY)
+    public SimpleRabbitListenerContainerFactory shardContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                      ConnectionFactory connectionFactory,
+                                                                      ShardingProperties properties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setConcurrentConsumers(properties.getConcurrency());
+        factory.setMaxConcurrentConsumers(properties.getConcurrency());
+        factory.setPrefetchCount(properties.getPrefetch());
+        return factory;
+    }
 }
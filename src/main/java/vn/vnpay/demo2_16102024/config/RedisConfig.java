@@ -2,29 +2,57 @@ package vn.vnpay.demo2_16102024.config;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.time.Duration;
+
 @Configuration
 public class RedisConfig {
 
     private static final Logger logger = LoggerFactory.getLogger(RedisConfig.class);
 
+    @Value("${spring.data.redis.host:localhost}")
+    private String host;
+
+    @Value("${spring.data.redis.port:6379}")
+    private int port;
+
+    @Value("${payment.redis.pool.max-total:10}")
+    private int maxTotal;
+
+    @Value("${payment.redis.pool.max-idle:5}")
+    private int maxIdle;
+
+    @Value("${payment.redis.pool.min-idle:2}")
+    private int minIdle;
+
+    @Value("${payment.redis.pool.max-wait-ms:1000}")
+    private long maxWaitMs;
+
     @Bean
     public RedisConnectionFactory redisConnectionFactory() {
-        logger.info("Creating JedisPoolConfig with maxTotal=10, maxIdle=5, minIdle=2");
+        logger.info("Creating JedisPoolConfig with maxTotal={}, maxIdle={}, minIdle={}, maxWait={}ms", maxTotal, maxIdle, minIdle, maxWaitMs);
         JedisPoolConfig poolConfig = new JedisPoolConfig();
-        poolConfig.setMaxTotal(10);
-        poolConfig.setMaxIdle(5);
-        poolConfig.setMinIdle(2);
+        poolConfig.setMaxTotal(maxTotal);
+        poolConfig.setMaxIdle(maxIdle);
+        poolConfig.setMinIdle(minIdle);
+        // Bounded wait instead of blocking forever when the pool is exhausted
+        poolConfig.setMaxWait(Duration.ofMillis(maxWaitMs));
+        // Registered in JMX under this name so the pool gauges can find it
+        poolConfig.setJmxNamePrefix("jedis-pool");
         logger.info("JedisPoolConfig created successfully");
 
-        logger.info("Creating JedisConnectionFactory with the configured pool");
-        JedisConnectionFactory jedisConnectionFactory = new JedisConnectionFactory(poolConfig);
+        logger.info("Creating JedisConnectionFactory for {}:{} with the configured pool", host, port);
+        JedisConnectionFactory jedisConnectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration(host, port),
+                JedisClientConfiguration.builder().usePooling().poolConfig(poolConfig).build());
         logger.info("JedisConnectionFactory created successfully");
 
         return jedisConnectionFactory;
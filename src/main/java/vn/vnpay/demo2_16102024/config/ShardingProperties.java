@@ -0,0 +1,57 @@
+package vn.vnpay.demo2_16102024.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "payment.sharding")
+public class ShardingProperties {
+
+    /**
+     * Number of paymentQueue.N shard queues. Changing it moves keys to other shards, so drain
+     * the shard queues before changing it on a running system.
+     */
+    private int shards = 4;
+
+    /**
+     * The request field hashed to choose a shard. Payments with the same key are consumed in
+     * publish order.
+     */
+    private ShardKey key = ShardKey.TOKEN_KEY;
+
+    /**
+     * Consumers per shard queue on this node. With more than one, and no single active consumer,
+     * messages of one shard are no longer processed in order.
+     */
+    private int concurrency = 1;
+
+    /**
+     * Unacknowledged messages the broker pushes to each shard consumer.
+     */
+    private int prefetch = 50;
+
+    /**
+     * Declare shard queues with x-single-active-consumer, so one consumer across all nodes reads a
+     * shard while the others stand by and take over if it goes away. Queue arguments cannot change
+     * after declaration; the shard queues must be deleted to toggle this.
+     */
+    private boolean singleActiveConsumer = true;
+
+    /**
+     * This node's position among {@link #nodeCount} consumer nodes. Shards with
+     * {@code shard % nodeCount == nodeIndex} are subscribed at startup, so they become active here.
+     */
+    private int nodeIndex = 0;
+
+    private int nodeCount = 1;
+
+    /**
+     * Delay before subscribing to the shards preferred by other nodes, as a standby.
+     */
+    private long standbyDelayMs = 10000;
+
+    public enum ShardKey {
+        TOKEN_KEY,
+        ACCOUNT_NO
+    }
+}
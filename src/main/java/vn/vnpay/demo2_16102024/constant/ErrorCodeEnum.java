@@ -4,6 +4,8 @@ public enum ErrorCodeEnum {
     SUCCESS("00", "Success"),
     VALIDATION_ERROR("01", "Validation Error"),
     TOKEN_EXISTS_ERROR("02", "TokenKey already exists"),
+    REQUEST_REJECTED("03", "Request rejected, retry later"),
+    CHECKSUM_ERROR("04", "Invalid checkSum"),
     SYSTEM_ERROR("99", "System Error");
 
     private final String code;
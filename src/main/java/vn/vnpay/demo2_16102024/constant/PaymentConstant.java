@@ -5,9 +5,19 @@ import vn.vnpay.demo2_16102024.config.RabbitConfig;
 public class PaymentConstant {
     public static final String TIMESTAMP_FORMATTER = "yyyyMMddHHmmss";
     public static final String ERROR_REAL_AMOUNT_GREATER_THAN_DEBIT = "The real amount must be less than or equal to the debit amount.";
+    public static final String ERROR_PAY_DATE = "payDate is not a valid date and time.";
     public static final String ERROR_PROMOTION_CODE = "Invalid promotion code.";
     public static final String ERROR_VALIDATION = "Validation error occurred.";
+    public static final String ERROR_CHECKSUM = "checkSum does not match the payment.";
     public static final String ERROR_TOKEN_EXISTS = "TokenKey already exists.";
     public static final String ERROR_SYSTEM = "System error occurred while processing JSON.";
+    public static final String ERROR_PUBLISH = "System error occurred while publishing the payment.";
+    public static final String ERROR_MALFORMED_BATCH = "Malformed JSON in batch, remaining records were not read.";
+    public static final String ERROR_RATE_LIMITED = "Too many requests for this client, retry later.";
+    public static final String ERROR_OVERLOADED = "Payment service is overloaded, retry later.";
+    public static final String STATUS_PENDING = "Payment is still being processed.";
+    public static final String TOKEN_RESERVED_VALUE = "exists";
+    public static final String HEADER_ENQUEUED_AT = "x-enqueued-at";
     public static final String QUEUE_NAME = "paymentQueue";
+    public static final String MDC_TOKEN_KEY = "tokenKey";
 }
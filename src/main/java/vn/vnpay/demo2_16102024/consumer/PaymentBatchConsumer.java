@@ -0,0 +1,233 @@
+package vn.vnpay.demo2_16102024.consumer;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.config.BatchConsumerProperties;
+import vn.vnpay.demo2_16102024.config.ConcurrencyConfig;
+import vn.vnpay.demo2_16102024.config.RabbitConfig;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.metrics.PaymentStage;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Batch variant of {@link PaymentConsumer}, started instead of it when
+ * {@code payment.consumer.batch.enabled=true}. A batch costs one duplicate-check query
+ * and one batched insert in a single transaction, and is acknowledged with one
+ * multiple-ack on the channel. A row inserted concurrently by another consumer makes the
+ * batch fail on the unique key, and the per-message fallback then reports it as a duplicate.
+ */
+@Component
+public class PaymentBatchConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentBatchConsumer.class);
+
+    private final PaymentConsumer paymentConsumer;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentMessageCodecs paymentMessageCodecs;
+    private final BatchConsumerProperties properties;
+    private final Bulkhead jdbcBulkhead;
+    private final PaymentMetrics paymentMetrics;
+
+    @Autowired
+    public PaymentBatchConsumer(PaymentConsumer paymentConsumer,
+                                JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                PaymentMessageCodecs paymentMessageCodecs,
+                                BatchConsumerProperties properties,
+                                @Qualifier(ConcurrencyConfig.JDBC_BULKHEAD) Bulkhead jdbcBulkhead,
+                                PaymentMetrics paymentMetrics) {
+        this.jdbcBulkhead = jdbcBulkhead;
+        this.paymentMetrics = paymentMetrics;
+        this.paymentConsumer = paymentConsumer;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentMessageCodecs = paymentMessageCodecs;
+        this.properties = properties;
+    }
+
+    @RabbitListener(queues = RabbitConfig.QUEUE_NAME, containerFactory = RabbitConfig.BATCH_CONTAINER_FACTORY,
+            autoStartup = "${payment.consumer.batch.enabled:false}")
+    public void receiveBatch(List<Message> messages, Channel channel) throws IOException {
+        if (messages.isEmpty()) {
+            return;
+        }
+        long lastDeliveryTag = messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag();
+        logger.info("Received batch of {} messages", messages.size());
+
+        List<PaymentResponse> responses = new ArrayList<>(messages.size());
+        List<PaymentRequest> candidates = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            PaymentRequest paymentRequest;
+            try {
+                long start = System.nanoTime();
+                paymentRequest = paymentMessageCodecs.decode(message);
+                paymentMetrics.recordStage(PaymentStage.DECODE, start);
+            } catch (Exception e) {
+                logger.error("Error parsing payment message in batch: {}", e.getMessage(), e);
+                responses.add(paymentConsumer.receivePaymentResponse(null, ErrorCodeEnum.SYSTEM_ERROR));
+                continue;
+            }
+            // The batch groups by pay day, so a payDate that is not a real date is answered here, not thrown mid-batch
+            try {
+                PaymentConsumer.payDateTime(paymentRequest);
+            } catch (DateTimeException e) {
+                logger.error("Invalid payDate {} for tokenKey {}", paymentRequest.getPayDate(), paymentRequest.getTokenKey());
+                responses.add(paymentConsumer.receivePaymentResponse(paymentRequest, ErrorCodeEnum.VALIDATION_ERROR));
+                continue;
+            }
+            candidates.add(paymentRequest);
+        }
+
+        try {
+            try {
+                responses.addAll(processBatch(candidates));
+            } catch (DataAccessException e) {
+                // Only a transient failure can succeed on redelivery; a duplicate key would be redelivered forever
+                if (!properties.isFallbackToSingle() && e instanceof TransientDataAccessException) {
+                    logger.error("Batch insert failed, requeueing {} messages: {}", messages.size(), e.getMessage(), e);
+                    channel.basicNack(lastDeliveryTag, true, true);
+                    return;
+                }
+                logger.warn("Batch insert failed, falling back to per-message handling: {}", e.getMessage());
+                for (PaymentRequest paymentRequest : candidates) {
+                    responses.add(processSingle(paymentRequest));
+                }
+            }
+        } catch (RuntimeException e) {
+            // Manual ack mode: a listener exception would leave every delivery tag of the batch unacked
+            logger.error("Batch of {} messages failed, rejecting it without requeue: {}", messages.size(), e.getMessage(), e);
+            channel.basicNack(lastDeliveryTag, true, false);
+            for (PaymentRequest paymentRequest : candidates) {
+                responses.add(paymentConsumer.receivePaymentResponse(paymentRequest, ErrorCodeEnum.SYSTEM_ERROR));
+            }
+            responses.forEach(paymentConsumer::sendResponse);
+            return;
+        }
+
+        for (Message message : messages) {
+            paymentMetrics.recordConsumerLag(message.getMessageProperties().getHeader(PaymentConstant.HEADER_ENQUEUED_AT));
+        }
+        for (PaymentResponse response : responses) {
+            paymentConsumer.sendResponse(response);
+        }
+        channel.basicAck(lastDeliveryTag, true);
+        logger.info("Acknowledged batch of {} messages", messages.size());
+    }
+
+    private PaymentResponse processSingle(PaymentRequest paymentRequest) {
+        try {
+            return paymentConsumer.processPayment(paymentRequest);
+        } catch (RuntimeException e) {
+            logger.error("Error processing tokenKey {} after batch fallback: {}", paymentRequest.getTokenKey(), e.getMessage(), e);
+            return paymentConsumer.receivePaymentResponse(paymentRequest, ErrorCodeEnum.SYSTEM_ERROR);
+        }
+    }
+
+    private List<PaymentResponse> processBatch(List<PaymentRequest> candidates) {
+        List<PaymentResponse> responses = new ArrayList<>(candidates.size());
+        List<PaymentRequest> toInsert = filterDuplicates(candidates, responses);
+        insertBatch(toInsert);
+        for (PaymentRequest paymentRequest : toInsert) {
+            responses.add(paymentConsumer.receivePaymentResponse(paymentRequest, ErrorCodeEnum.SUCCESS));
+        }
+        return responses;
+    }
+
+    /**
+     * Drops requests whose (tokenKey, payDay) is already stored, or repeated earlier in the
+     * same batch, adding a TOKEN_EXISTS_ERROR response for each of them.
+     */
+    private List<PaymentRequest> filterDuplicates(List<PaymentRequest> candidates, List<PaymentResponse> responses) {
+        if (candidates.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Set<String> existing = findExistingTokenDays(candidates);
+        Set<String> seen = new HashSet<>();
+        List<PaymentRequest> accepted = new ArrayList<>(candidates.size());
+        for (PaymentRequest paymentRequest : candidates) {
+            String tokenDay = tokenDay(paymentRequest.getTokenKey(), PaymentConsumer.payDateTime(paymentRequest).toLocalDate());
+            if (existing.contains(tokenDay) || !seen.add(tokenDay)) {
+                logger.warn("TokenKey already exists for today: {}", paymentRequest.getTokenKey());
+                responses.add(paymentConsumer.receivePaymentResponse(paymentRequest, ErrorCodeEnum.TOKEN_EXISTS_ERROR));
+            } else {
+                accepted.add(paymentRequest);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * One lookup on uk_payments_token_day for the whole batch; the returned pairs are
+     * matched in memory because a batch may span more than one pay day. The condition is on
+     * the payDay column itself, not an expression of it, so MySQL prunes to those days' partitions.
+     */
+    private Set<String> findExistingTokenDays(List<PaymentRequest> candidates) {
+        Set<LocalDate> payDays = new LinkedHashSet<>();
+        Set<String> tokenKeys = new LinkedHashSet<>();
+        for (PaymentRequest paymentRequest : candidates) {
+            payDays.add(PaymentConsumer.payDateTime(paymentRequest).toLocalDate());
+            tokenKeys.add(paymentRequest.getTokenKey());
+        }
+        List<Object> args = new ArrayList<>(payDays.size() + tokenKeys.size());
+        args.addAll(payDays);
+        args.addAll(tokenKeys);
+        String sql = "SELECT tokenKey, payDay FROM payments WHERE payDay IN (" + placeholders(payDays.size())
+                + ") AND tokenKey IN (" + placeholders(tokenKeys.size()) + ")";
+        Set<String> existing = new HashSet<>();
+        long start = System.nanoTime();
+        jdbcBulkhead.run(() -> jdbcTemplate.query(sql, rs -> {
+            existing.add(tokenDay(rs.getString(1), rs.getObject(2, LocalDate.class)));
+        }, args.toArray()));
+        paymentMetrics.recordStage(PaymentStage.DUPLICATE_CHECK, start);
+        return existing;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static String tokenDay(String tokenKey, LocalDate payDay) {
+        return tokenKey + '|' + payDay;
+    }
+
+    private void insertBatch(List<PaymentRequest> toInsert) {
+        if (toInsert.isEmpty()) {
+            return;
+        }
+        List<Object[]> batchArgs = new ArrayList<>(toInsert.size());
+        for (PaymentRequest paymentRequest : toInsert) {
+            batchArgs.add(PaymentConsumer.insertArguments(paymentRequest));
+        }
+        long start = System.nanoTime();
+        jdbcBulkhead.run(() -> transactionTemplate.executeWithoutResult(
+                status -> jdbcTemplate.batchUpdate(PaymentConsumer.SQL_INSERT, batchArgs)));
+        paymentMetrics.recordStage(PaymentStage.INSERT, start);
+        logger.info("Inserted batch of {} payment requests", toInsert.size());
+    }
+}
@@ -1,34 +1,53 @@
 package vn.vnpay.demo2_16102024.consumer;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.config.ConcurrencyConfig;
 import vn.vnpay.demo2_16102024.config.RabbitConfig;
 import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
 import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
 import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.metrics.PaymentStage;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+import vn.vnpay.demo2_16102024.utils.LogSampler;
+import vn.vnpay.demo2_16102024.utils.MaskedPaymentRequest;
+import vn.vnpay.demo2_16102024.utils.PaymentUtils;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 
 @Component
 public class PaymentConsumer {
 
     private static final Logger logger = LoggerFactory.getLogger(PaymentConsumer.class);
 
+    // uk_payments_token_day (tokenKey, payDay) rejects a second payment for the same tokenKey and day
+    static final String SQL_INSERT = "INSERT INTO payments (tokenKey, apiID, mobile, bankCode, accountNo, payDate, payDay, additionalData, debitAmount, respCode, respDesc, traceTransfer, messageType, checkSum, orderCode, userName, realAmount, promotionCode, addValue) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private PaymentJsonCodec paymentJsonCodec;
+
+    @Autowired
+    private PaymentMessageCodecs paymentMessageCodecs;
 
     @Autowired
     private RedisTemplate<String, String> redisTemplate;
@@ -36,92 +55,126 @@ public class PaymentConsumer {
     @Autowired
     private RabbitTemplate rabbitTemplate;
 
+    private Bulkhead jdbcBulkhead;
+
+    private PaymentMetrics paymentMetrics;
+
+    private LogSampler logSampler;
+
     @Autowired
     public PaymentConsumer(JdbcTemplate jdbcTemplate,
                            RedisTemplate<String, String> redisTemplate,
-                           RabbitTemplate rabbitTemplate) {
+                           RabbitTemplate rabbitTemplate,
+                           @Qualifier(ConcurrencyConfig.JDBC_BULKHEAD) Bulkhead jdbcBulkhead,
+                           PaymentMetrics paymentMetrics,
+                           PaymentJsonCodec paymentJsonCodec,
+                           PaymentMessageCodecs paymentMessageCodecs,
+                           LogSampler logSampler) {
         this.jdbcTemplate = jdbcTemplate;
-        this.objectMapper = new ObjectMapper();
+        this.jdbcBulkhead = jdbcBulkhead;
+        this.paymentMetrics = paymentMetrics;
+        this.paymentJsonCodec = paymentJsonCodec;
+        this.paymentMessageCodecs = paymentMessageCodecs;
+        this.logSampler = logSampler;
         this.redisTemplate = redisTemplate;
         this.rabbitTemplate = rabbitTemplate;
     }
 
-    @RabbitListener(queues = RabbitConfig.QUEUE_NAME)
-    public void receiveMessage(String message) {
+    // Listens on the pre-sharding queue; the shard queues are bound to this method by PaymentShardListeners
+    @RabbitListener(queues = RabbitConfig.QUEUE_NAME, autoStartup = "#{!${payment.consumer.batch.enabled:false}}")
+    public void receiveMessage(Message message) {
         try {
-            logger.info("Received message at {}: {}", LocalDateTime.now(), message);
-            PaymentRequest paymentRequest = objectMapper.readValue(message, PaymentRequest.class);
-            String tokenKey = paymentRequest.getTokenKey();
+            long start = System.nanoTime();
+            PaymentRequest paymentRequest = paymentMessageCodecs.decode(message);
+            paymentMetrics.recordStage(PaymentStage.DECODE, start);
+            try (MDC.MDCCloseable ignored = MDC.putCloseable(PaymentConstant.MDC_TOKEN_KEY, paymentRequest.getTokenKey())) {
+                logger.debug("Received message for tokenKey: {}", paymentRequest.getTokenKey());
+                PaymentResponse paymentResponse = processPayment(paymentRequest);
+                paymentMetrics.recordConsumerLag(message.getMessageProperties().getHeader(PaymentConstant.HEADER_ENQUEUED_AT));
+                sendResponse(paymentResponse);
+            }
+        } catch (Exception e) {
+            logger.error("Error processing payment message: {}", e.getMessage(), e);
+            PaymentResponse errorResponse = receivePaymentResponse(null, ErrorCodeEnum.SYSTEM_ERROR);
+            sendResponse(errorResponse);
+        }
+    }
 
-            String today = LocalDate.now().format(DateTimeFormatter.ISO_DATE);
-            logger.info("Checking for existing tokenKey: {} on date: {}", tokenKey, today);
+    PaymentResponse processPayment(PaymentRequest paymentRequest) {
+        String tokenKey = paymentRequest.getTokenKey();
+        try {
+            logger.debug("Inserting payment request for tokenKey: {} on date: {}", tokenKey, paymentRequest.getPayDate());
 
-            String sqlCheck = "SELECT COUNT(*) FROM payments WHERE tokenKey = ? AND DATE(payDate) = ?";
-            Integer count = jdbcTemplate.queryForObject(sqlCheck, new Object[]{tokenKey, today}, Integer.class);
+            // The insert is also the duplicate check, so it is timed as one stage
+            long start = System.nanoTime();
+            jdbcBulkhead.call(() -> jdbcTemplate.update(SQL_INSERT, insertArguments(paymentRequest)));
+            paymentMetrics.recordStage(PaymentStage.INSERT, start);
 
-            if (null != count && 0 < count) {
-                logger.warn("TokenKey already exists for today: {}", tokenKey);
-                PaymentResponse response = receivePaymentResponse(paymentRequest, ErrorCodeEnum.TOKEN_EXISTS_ERROR);
-                sendResponse(response);
-                return;
+            if (logSampler.sample()) {
+                logger.info("Inserted payment request for tokenKey {}: {}", tokenKey, MaskedPaymentRequest.of(paymentRequest));
             }
-
-            String sqlInsert = "INSERT INTO payments (tokenKey, apiID, mobile, bankCode, accountNo, payDate, additionalData, debitAmount, respCode, respDesc, traceTransfer, messageType, checkSum, orderCode, userName, realAmount, promotionCode, addValue) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-            logger.info("Inserting payment request for tokenKey: {} on date: {}", paymentRequest.getTokenKey(), paymentRequest.getPayDate());
-
-            jdbcTemplate.update(sqlInsert,
-                    paymentRequest.getTokenKey(),
-                    paymentRequest.getApiID(),
-                    paymentRequest.getMobile(),
-                    paymentRequest.getBankCode(),
-                    paymentRequest.getAccountNo(),
-                    paymentRequest.getPayDate(),
-                    paymentRequest.getAdditionalData(),
-                    paymentRequest.getDebitAmount(),
-                    paymentRequest.getRespCode(),
-                    paymentRequest.getRespDesc(),
-                    paymentRequest.getTraceTransfer(),
-                    paymentRequest.getMessageType(),
-                    paymentRequest.getCheckSum(),
-                    paymentRequest.getOrderCode(),
-                    paymentRequest.getUserName(),
-                    paymentRequest.getRealAmount(),
-                    paymentRequest.getPromotionCode(),
-                    paymentRequest.getAddValue()
-            );
-
-            logger.info("Inserted payment request: {}", paymentRequest);
-            PaymentResponse paymentResponse = receivePaymentResponse(paymentRequest, ErrorCodeEnum.SUCCESS);
-            sendResponse(paymentResponse);
+            return receivePaymentResponse(paymentRequest, ErrorCodeEnum.SUCCESS);
+        } catch (DuplicateKeyException e) {
+            logger.warn("TokenKey already exists for today: {}", tokenKey);
+            return receivePaymentResponse(paymentRequest, ErrorCodeEnum.TOKEN_EXISTS_ERROR);
         } catch (DataAccessException e) {
-            logger.error("Database error while processing tokenKey: {}. Error: {}", e.getMessage(), e);
-            PaymentResponse errorResponse = receivePaymentResponse(null, ErrorCodeEnum.SYSTEM_ERROR);
-            sendResponse(errorResponse);
-        } catch (Exception e) {
-            logger.error("Error processing payment request for tokenKey: {}. Error: {}", e.getMessage(), e);
-            PaymentResponse errorResponse = receivePaymentResponse(null, ErrorCodeEnum.SYSTEM_ERROR);
-            sendResponse(errorResponse);
+            logger.error("Database error while processing tokenKey: {}. Error: {}", tokenKey, e.getMessage(), e);
+            return receivePaymentResponse(paymentRequest, ErrorCodeEnum.SYSTEM_ERROR);
         }
     }
 
-    private PaymentResponse receivePaymentResponse(PaymentRequest paymentRequest, ErrorCodeEnum errorCode) {
+    /**
+     * The request's payDate, or now when the request has none. Its day is the day the tokenKey is unique for.
+     */
+    static LocalDateTime payDateTime(PaymentRequest paymentRequest) {
+        LocalDateTime payDate = PaymentUtils.parsePayDate(paymentRequest.getPayDate());
+        return null != payDate ? payDate : LocalDateTime.now();
+    }
+
+    static Object[] insertArguments(PaymentRequest paymentRequest) {
+        LocalDateTime payDate = payDateTime(paymentRequest);
+        return new Object[]{
+                paymentRequest.getTokenKey(),
+                paymentRequest.getApiID(),
+                paymentRequest.getMobile(),
+                paymentRequest.getBankCode(),
+                paymentRequest.getAccountNo(),
+                payDate,
+                payDate.toLocalDate(),
+                paymentRequest.getAdditionalData(),
+                paymentRequest.getDebitAmount(),
+                paymentRequest.getRespCode(),
+                paymentRequest.getRespDesc(),
+                paymentRequest.getTraceTransfer(),
+                paymentRequest.getMessageType(),
+                paymentRequest.getCheckSum(),
+                paymentRequest.getOrderCode(),
+                paymentRequest.getUserName(),
+                paymentRequest.getRealAmount(),
+                paymentRequest.getPromotionCode(),
+                paymentRequest.getAddValue()
+        };
+    }
+
+    PaymentResponse receivePaymentResponse(PaymentRequest paymentRequest, ErrorCodeEnum errorCode) {
+        paymentMetrics.consumerOutcome(errorCode);
         PaymentResponse response = new PaymentResponse();
         response.setTokenKey(null != paymentRequest ? paymentRequest.getTokenKey() : null);
         response.setRespCode(errorCode.getCode());
         response.setStatus(errorCode.getMessage());
         //response.setPayDate(String.valueOf(LocalDateTime.now()));
         response.setPayDate(LocalDateTime.now().toString());
-        logger.info("Created payment response: {}", response);
+        logger.debug("Created payment response: {}", response);
         return response;
     }
 
-    private void sendResponse(PaymentResponse response) {
+    void sendResponse(PaymentResponse response) {
+        long start = System.nanoTime();
         try {
-            String responseJson = objectMapper.writeValueAsString(response);
-            rabbitTemplate.convertAndSend(RabbitConfig.EXCHANGE_NAME, RabbitConfig.ROUTING_KEY, responseJson);
-            logger.info("Sent payment response to queue: {}", responseJson);
+            byte[] body = paymentJsonCodec.writeResponse(response);
+            rabbitTemplate.send(RabbitConfig.EXCHANGE_NAME, RabbitConfig.ROUTING_KEY, PaymentJsonCodec.toMessage(body));
+            paymentMetrics.recordStage(PaymentStage.RESPONSE, start);
+            logger.debug("Sent payment response to queue: {}", response);
         } catch (Exception ex) {
             logger.error("Error sending response: {}", ex.getMessage(), ex);
         }
@@ -0,0 +1,115 @@
+package vn.vnpay.demo2_16102024.consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareBatchMessageListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import vn.vnpay.demo2_16102024.config.BatchConsumerProperties;
+import vn.vnpay.demo2_16102024.config.PaymentShards;
+import vn.vnpay.demo2_16102024.config.RabbitConfig;
+import vn.vnpay.demo2_16102024.config.ShardingProperties;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registers one listener container per shard queue. Each node subscribes to its preferred shards
+ * at startup and to the remaining shards after {@code payment.sharding.standby-delay-ms}. With
+ * single-active-consumer queues the first subscriber of a shard consumes it, so shards spread
+ * across nodes, and a standby takes over a shard when its active node leaves.
+ */
+@Component
+public class PaymentShardListeners implements RabbitListenerConfigurer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentShardListeners.class);
+
+    static final String ENDPOINT_ID_PREFIX = "payment-shard-";
+
+    private final PaymentConsumer paymentConsumer;
+    private final PaymentBatchConsumer paymentBatchConsumer;
+    private final PaymentShards paymentShards;
+    private final ShardingProperties shardingProperties;
+    private final BatchConsumerProperties batchProperties;
+    private final SimpleRabbitListenerContainerFactory shardContainerFactory;
+    private final SimpleRabbitListenerContainerFactory batchContainerFactory;
+    private final RabbitListenerEndpointRegistry endpointRegistry;
+
+    @Autowired
+    public PaymentShardListeners(PaymentConsumer paymentConsumer,
+                                 PaymentBatchConsumer paymentBatchConsumer,
+                                 PaymentShards paymentShards,
+                                 ShardingProperties shardingProperties,
+                                 BatchConsumerProperties batchProperties,
+                                 @Qualifier(RabbitConfig.SHARD_CONTAINER_FACTORY) SimpleRabbitListenerContainerFactory shardContainerFactory,
+                                 @Qualifier(RabbitConfig.BATCH_CONTAINER_FACTORY) SimpleRabbitListenerContainerFactory batchContainerFactory,
+                                 RabbitListenerEndpointRegistry endpointRegistry) {
+        this.paymentConsumer = paymentConsumer;
+        this.paymentBatchConsumer = paymentBatchConsumer;
+        this.paymentShards = paymentShards;
+        this.shardingProperties = shardingProperties;
+        this.batchProperties = batchProperties;
+        this.shardContainerFactory = shardContainerFactory;
+        this.batchContainerFactory = batchContainerFactory;
+        this.endpointRegistry = endpointRegistry;
+    }
+
+    @Override
+    public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+        for (int shard = 0; shard < paymentShards.count(); shard++) {
+            SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+            endpoint.setId(ENDPOINT_ID_PREFIX + shard);
+            endpoint.setQueueNames(paymentShards.queueName(shard));
+            endpoint.setAutoStartup(paymentShards.isPreferred(shard));
+            if (batchProperties.isEnabled()) {
+                endpoint.setBatchListener(true);
+                endpoint.setMessageListener((ChannelAwareBatchMessageListener) (messages, channel) -> {
+                    try {
+                        paymentBatchConsumer.receiveBatch(messages, channel);
+                    } catch (IOException e) {
+                        throw new AmqpIOException(e);
+                    }
+                });
+                registrar.registerEndpoint(endpoint, batchContainerFactory);
+            } else {
+                endpoint.setMessageListener(paymentConsumer::receiveMessage);
+                registrar.registerEndpoint(endpoint, shardContainerFactory);
+            }
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startStandbyShards() {
+        List<String> standbyIds = new ArrayList<>();
+        for (int shard = 0; shard < paymentShards.count(); shard++) {
+            if (!paymentShards.isPreferred(shard)) {
+                standbyIds.add(ENDPOINT_ID_PREFIX + shard);
+            }
+        }
+        if (standbyIds.isEmpty()) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            for (String id : standbyIds) {
+                MessageListenerContainer container = endpointRegistry.getListenerContainer(id);
+                if (null != container && !container.isRunning()) {
+                    container.start();
+                }
+            }
+            logger.info("Subscribed to {} standby payment shards", standbyIds.size());
+        }, CompletableFuture.delayedExecutor(shardingProperties.getStandbyDelayMs(), TimeUnit.MILLISECONDS));
+    }
+}
@@ -1,15 +1,25 @@
 package vn.vnpay.demo2_16102024.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
 import vn.vnpay.demo2_16102024.server.IPaymentService;
+import vn.vnpay.demo2_16102024.server.PaymentBatchService;
+import vn.vnpay.demo2_16102024.validation.PaymentRequestValidator;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 
 @RestController
@@ -19,12 +29,38 @@ public class PaymentController {
     @Autowired
     private IPaymentService iPaymentService;
 
-    public PaymentController(IPaymentService iPaymentService) {
+    @Autowired
+    private PaymentBatchService paymentBatchService;
+
+    @Autowired
+    private PaymentRequestValidator paymentRequestValidator;
+
+    public PaymentController(IPaymentService iPaymentService, PaymentBatchService paymentBatchService,
+                             PaymentRequestValidator paymentRequestValidator) {
         this.iPaymentService = iPaymentService;
+        this.paymentBatchService = paymentBatchService;
+        this.paymentRequestValidator = paymentRequestValidator;
+    }
+
+    // @Valid on the request body runs the compiled validator instead of Hibernate Validator
+    @InitBinder("paymentRequest")
+    public void initBinder(WebDataBinder binder) {
+        binder.setValidator(paymentRequestValidator);
     }
 
     @PostMapping("/process")
-    public ResponseEntity<?> processPayment(@Valid @RequestBody PaymentRequest paymentRequest, BindingResult bindingResult) {
-        return iPaymentService.validatePayment(paymentRequest, bindingResult);
+    public CompletableFuture<ResponseEntity<?>> processPayment(@Valid @RequestBody PaymentRequest paymentRequest, BindingResult bindingResult) {
+        return iPaymentService.validatePaymentAsync(paymentRequest, bindingResult);
+    }
+
+    /**
+     * Accepts payments as NDJSON or a JSON array and answers with one NDJSON result line per record,
+     * in input order, written while the upload is still being read.
+     */
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void processBatch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        paymentBatchService.process(request.getInputStream(), response.getOutputStream());
     }
 }
@@ -0,0 +1,71 @@
+package vn.vnpay.demo2_16102024.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import vn.vnpay.demo2_16102024.dto.response.PaymentPage;
+import vn.vnpay.demo2_16102024.query.PaymentCursor;
+import vn.vnpay.demo2_16102024.query.PaymentQueryService;
+import vn.vnpay.demo2_16102024.query.PaymentSearch;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Read endpoints over stored payments, filtered by orderCode, userName, accountNo and an inclusive
+ * payDay range. {@code /search} answers one keyset page at a time; {@code /export} streams every
+ * match as NDJSON.
+ */
+@RestController
+@RequestMapping("/api/payment")
+public class PaymentQueryController {
+
+    private final PaymentQueryService paymentQueryService;
+
+    @Autowired
+    public PaymentQueryController(PaymentQueryService paymentQueryService) {
+        this.paymentQueryService = paymentQueryService;
+    }
+
+    @GetMapping("/search")
+    public PaymentPage search(@RequestParam(required = false) String orderCode,
+                              @RequestParam(required = false) String userName,
+                              @RequestParam(required = false) String accountNo,
+                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                              @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                              @RequestParam(required = false) String after,
+                              @RequestParam(defaultValue = "0") int limit) {
+        return paymentQueryService.search(new PaymentSearch(orderCode, userName, accountNo, from, to), PaymentCursor.parse(after), limit);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void export(@RequestParam(required = false) String orderCode,
+                       @RequestParam(required = false) String userName,
+                       @RequestParam(required = false) String accountNo,
+                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                       HttpServletResponse response) throws IOException {
+        PaymentSearch search = new PaymentSearch(orderCode, userName, accountNo, from, to);
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        paymentQueryService.export(search, response.getOutputStream());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+
+    @ExceptionHandler(TransientDataAccessResourceException.class)
+    public ResponseEntity<String> busy(TransientDataAccessResourceException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+}
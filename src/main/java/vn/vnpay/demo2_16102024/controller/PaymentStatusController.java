@@ -0,0 +1,34 @@
+package vn.vnpay.demo2_16102024.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.status.PaymentStatusStore;
+
+/**
+ * Final status of a payment. Answers 200 with the consumer's response once it is known, otherwise
+ * 202; with {@code waitMs} the request is held until the result arrives or the wait runs out.
+ */
+@RestController
+@RequestMapping("/api/payment")
+public class PaymentStatusController {
+
+    private final PaymentStatusStore paymentStatusStore;
+
+    @Autowired
+    public PaymentStatusController(PaymentStatusStore paymentStatusStore) {
+        this.paymentStatusStore = paymentStatusStore;
+    }
+
+    @GetMapping("/status/{tokenKey}")
+    public DeferredResult<ResponseEntity<PaymentResponse>> getStatus(@PathVariable String tokenKey,
+                                                                     @RequestParam(defaultValue = "0") long waitMs) {
+        return paymentStatusStore.await(tokenKey, waitMs);
+    }
+}
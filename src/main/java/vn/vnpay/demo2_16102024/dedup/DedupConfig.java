@@ -0,0 +1,29 @@
+package vn.vnpay.demo2_16102024.dedup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.RedisTemplate;
+import vn.vnpay.demo2_16102024.config.ConcurrencyConfig;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+@Configuration
+@EnableConfigurationProperties(DedupProperties.class)
+public class DedupConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(DedupConfig.class);
+
+    @Bean
+    public TokenDedupStore tokenDedupStore(DedupProperties properties, RedisTemplate<String, String> redisTemplate,
+                                           @Qualifier(ConcurrencyConfig.REDIS_BULKHEAD) Bulkhead redisBulkhead) {
+        if (DedupProperties.Layout.HASH_BUCKETS == properties.getLayout()) {
+            logger.info("Creating hash-bucket token dedup store with {} buckets per day", properties.getBuckets());
+            return new HashBucketDedupStore(redisTemplate, redisBulkhead, properties.getBuckets());
+        }
+        logger.info("Creating key-per-token dedup store");
+        return new KeyPerTokenDedupStore(redisTemplate, redisBulkhead);
+    }
+}
@@ -0,0 +1,31 @@
+package vn.vnpay.demo2_16102024.dedup;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "payment.dedup")
+public class DedupProperties {
+
+    /**
+     * How reserved tokenKeys are laid out in Redis.
+     */
+    private Layout layout = Layout.KEY_PER_TOKEN;
+
+    /**
+     * Hashes per day for {@link Layout#HASH_BUCKETS}. Keep the tokens per bucket under Redis'
+     * {@code hash-max-listpack-entries} (128 by default) so every bucket stays listpack-encoded.
+     */
+    private int buckets = 65_536;
+
+    public enum Layout {
+        /**
+         * One string key with a TTL per tokenKey and day.
+         */
+        KEY_PER_TOKEN,
+        /**
+         * The day's tokenKeys spread over a fixed number of hashes that expire together.
+         */
+        HASH_BUCKETS
+    }
+}
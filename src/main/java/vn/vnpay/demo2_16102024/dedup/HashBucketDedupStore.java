@@ -0,0 +1,83 @@
+package vn.vnpay.demo2_16102024.dedup;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stores each day's tokenKeys as fields of a fixed number of hashes, {@code dedup:<yyyy-MM-dd>:<bucket>},
+ * picked by the tokenKey's hash. Small hashes are listpack-encoded, so by Redis's encoding sizes a
+ * token should cost about its own length plus a few bytes instead of a key, a value object and an
+ * expiry entry; this is an estimate, not a measurement. The buckets expire together at the end of
+ * the following day.
+ * Reservations are exact: a field is set with HSETNX.
+ */
+public class HashBucketDedupStore implements TokenDedupStore {
+
+    static final String KEY_PREFIX = "dedup:";
+    private static final byte[] RESERVED_VALUE = "1".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Bulkhead redisBulkhead;
+    private final int buckets;
+    private final ZoneId zone;
+
+    public HashBucketDedupStore(RedisTemplate<String, String> redisTemplate, Bulkhead redisBulkhead, int buckets) {
+        this(redisTemplate, redisBulkhead, buckets, ZoneId.systemDefault());
+    }
+
+    HashBucketDedupStore(RedisTemplate<String, String> redisTemplate, Bulkhead redisBulkhead, int buckets, ZoneId zone) {
+        this.redisTemplate = redisTemplate;
+        this.redisBulkhead = redisBulkhead;
+        this.buckets = Math.max(1, buckets);
+        this.zone = zone;
+    }
+
+    @Override
+    public boolean reserve(String tokenKey, LocalDate day) {
+        return reserveAll(List.of(tokenKey), day).get(0);
+    }
+
+    /**
+     * Pipelines one HSETNX per token followed by one EXPIREAT per bucket touched. EXPIREAT to a fixed
+     * instant is idempotent, so repeating it on every reservation never extends a bucket's life.
+     */
+    @Override
+    public List<Boolean> reserveAll(List<String> tokenKeys, LocalDate day) {
+        long expireAt = day.plusDays(2).atStartOfDay(zone).toEpochSecond();
+        List<Object> replies = redisBulkhead.call(() -> redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            Set<String> touched = new LinkedHashSet<>();
+            for (String tokenKey : tokenKeys) {
+                String bucket = bucketKey(tokenKey, day);
+                touched.add(bucket);
+                connection.hashCommands().hSetNX(bytes(bucket), bytes(tokenKey), RESERVED_VALUE);
+            }
+            for (String bucket : touched) {
+                connection.keyCommands().expireAt(bytes(bucket), expireAt);
+            }
+            return null;
+        }));
+        return replies.subList(0, tokenKeys.size()).stream().map(Boolean.TRUE::equals).toList();
+    }
+
+    @Override
+    public void release(String tokenKey, LocalDate day) {
+        redisBulkhead.call(() -> redisTemplate.opsForHash().delete(bucketKey(tokenKey, day), tokenKey));
+    }
+
+    String bucketKey(String tokenKey, LocalDate day) {
+        // String.hashCode is specified by the JLS, so every node picks the same bucket
+        return KEY_PREFIX + day + ":" + Math.floorMod(tokenKey.hashCode(), buckets);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,59 @@
+package vn.vnpay.demo2_16102024.dedup;
+
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The original layout: a string key {@code token:<tokenKey>:<yyyy-MM-dd>} per reservation, set with
+ * SET NX EX for one day. Every token pays for its own key, value and expiry entry.
+ */
+public class KeyPerTokenDedupStore implements TokenDedupStore {
+
+    private static final byte[] RESERVED_VALUE = PaymentConstant.TOKEN_RESERVED_VALUE.getBytes(StandardCharsets.UTF_8);
+    private static final Expiration RESERVATION_TTL = Expiration.from(1, TimeUnit.DAYS);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Bulkhead redisBulkhead;
+
+    public KeyPerTokenDedupStore(RedisTemplate<String, String> redisTemplate, Bulkhead redisBulkhead) {
+        this.redisTemplate = redisTemplate;
+        this.redisBulkhead = redisBulkhead;
+    }
+
+    @Override
+    public boolean reserve(String tokenKey, LocalDate day) {
+        Boolean reserved = redisBulkhead.call(() -> redisTemplate.opsForValue()
+                .setIfAbsent(key(tokenKey, day), PaymentConstant.TOKEN_RESERVED_VALUE, 1, TimeUnit.DAYS));
+        return Boolean.TRUE.equals(reserved);
+    }
+
+    @Override
+    public List<Boolean> reserveAll(List<String> tokenKeys, LocalDate day) {
+        List<Object> replies = redisBulkhead.call(() -> redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String tokenKey : tokenKeys) {
+                connection.stringCommands().set(key(tokenKey, day).getBytes(StandardCharsets.UTF_8), RESERVED_VALUE,
+                        RESERVATION_TTL, RedisStringCommands.SetOption.SET_IF_ABSENT);
+            }
+            return null;
+        }));
+        return replies.stream().map(Boolean.TRUE::equals).toList();
+    }
+
+    @Override
+    public void release(String tokenKey, LocalDate day) {
+        redisBulkhead.call(() -> redisTemplate.delete(key(tokenKey, day)));
+    }
+
+    static String key(String tokenKey, LocalDate day) {
+        return "token:" + tokenKey + ":" + day;
+    }
+}
@@ -0,0 +1,24 @@
+package vn.vnpay.demo2_16102024.dedup;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Per-day reservation of tokenKeys: a tokenKey can be accepted once per day. Reservations expire on
+ * their own in Redis, so no job has to clear a past day.
+ */
+public interface TokenDedupStore {
+
+    /**
+     * Returns true if {@code tokenKey} was not yet reserved for {@code day} and now is.
+     */
+    boolean reserve(String tokenKey, LocalDate day);
+
+    /**
+     * Reserves several tokenKeys in one round trip; the result has one entry per key, in order. A key
+     * repeated in the list is reserved by its first occurrence only.
+     */
+    List<Boolean> reserveAll(List<String> tokenKeys, LocalDate day);
+
+    void release(String tokenKey, LocalDate day);
+}
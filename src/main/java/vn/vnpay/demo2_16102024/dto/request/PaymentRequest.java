@@ -4,6 +4,7 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import lombok.Data;
+import lombok.ToString;
 
 import java.io.Serializable;
 
@@ -16,11 +17,13 @@ public class PaymentRequest implements Serializable {
     @NotBlank(message = "apiID must not be empty")
     private String apiID;
 
+    @ToString.Exclude
     @Pattern(regexp = "^[0-9]{10}$", message = "mobile must be a 10-digit number")
     private String mobile;
 
     private String bankCode = "970445";
 
+    @ToString.Exclude
     @NotBlank(message = "accountNo must not be empty")
     private String accountNo;
 
@@ -53,6 +56,7 @@ public class PaymentRequest implements Serializable {
 
     private String addValue = "{\"payMethod\":\"01\",\"payMethodMMS\":1}";
 
+    @ToString.Exclude
     @NotBlank(message = "checkSum must not be empty")
     private String checkSum;
 
@@ -0,0 +1,23 @@
+package vn.vnpay.demo2_16102024.dto.response;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of search results. {@code next} is passed back as {@code after} to get the following
+ * page and is null on the last one.
+ */
+@Data
+public class PaymentPage {
+    private List<PaymentRecord> items;
+    private String next;
+
+    public PaymentPage() {
+    }
+
+    public PaymentPage(List<PaymentRecord> items, String next) {
+        this.items = items;
+        this.next = next;
+    }
+}
@@ -0,0 +1,28 @@
+package vn.vnpay.demo2_16102024.dto.response;
+
+import lombok.Data;
+
+/**
+ * A stored payment as returned by the read API; mobile and accountNo are partly masked and
+ * checkSum is left out.
+ */
+@Data
+public class PaymentRecord {
+    private long id;
+    private String tokenKey;
+    private String apiID;
+    private String mobile;
+    private String bankCode;
+    private String accountNo;
+    private String payDate;
+    private String payDay;
+    private long debitAmount;
+    private long realAmount;
+    private String respCode;
+    private String respDesc;
+    private String traceTransfer;
+    private String messageType;
+    private String orderCode;
+    private String userName;
+    private String promotionCode;
+}
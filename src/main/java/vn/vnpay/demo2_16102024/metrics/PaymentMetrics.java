@@ -0,0 +1,81 @@
+package vn.vnpay.demo2_16102024.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the payment flow. All timers and counters are registered up front, so the hot
+ * path only does an enum-map lookup and a lock-free record; callers take
+ * {@link System#nanoTime()} themselves instead of allocating a {@link Timer.Sample}.
+ */
+@Component
+public class PaymentMetrics {
+
+    public static final String STAGE_TIMER = "payment.stage";
+    public static final String OUTCOME_COUNTER = "payment.outcome";
+    public static final String LAG_TIMER = "payment.consumer.lag";
+
+    private final Map<PaymentStage, Timer> stageTimers = new EnumMap<>(PaymentStage.class);
+    private final Map<ErrorCodeEnum, Counter> producerOutcomes = new EnumMap<>(ErrorCodeEnum.class);
+    private final Map<ErrorCodeEnum, Counter> consumerOutcomes = new EnumMap<>(ErrorCodeEnum.class);
+    private final Timer consumerLag;
+
+    @Autowired
+    public PaymentMetrics(MeterRegistry meterRegistry) {
+        for (PaymentStage stage : PaymentStage.values()) {
+            stageTimers.put(stage, Timer.builder(STAGE_TIMER)
+                    .description("Latency of one stage of the payment flow")
+                    .tag("side", stage.getSide())
+                    .tag("stage", stage.getStage())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        for (ErrorCodeEnum errorCode : ErrorCodeEnum.values()) {
+            producerOutcomes.put(errorCode, outcomeCounter(meterRegistry, "producer", errorCode));
+            consumerOutcomes.put(errorCode, outcomeCounter(meterRegistry, "consumer", errorCode));
+        }
+        consumerLag = Timer.builder(LAG_TIMER)
+                .description("Time from publishing a payment to the consumer having stored or rejected it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public void recordStage(PaymentStage stage, long startNanos) {
+        stageTimers.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void producerOutcome(ErrorCodeEnum errorCode) {
+        producerOutcomes.get(errorCode).increment();
+    }
+
+    public void consumerOutcome(ErrorCodeEnum errorCode) {
+        consumerOutcomes.get(errorCode).increment();
+    }
+
+    /**
+     * Records the lag since the producer stamped the message; nodes are assumed to share a synchronized clock.
+     */
+    public void recordConsumerLag(Long enqueuedAtMillis) {
+        if (null == enqueuedAtMillis) {
+            return;
+        }
+        consumerLag.record(Math.max(0, System.currentTimeMillis() - enqueuedAtMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String side, ErrorCodeEnum errorCode) {
+        return Counter.builder(OUTCOME_COUNTER)
+                .description("Payments by result code")
+                .tag("side", side)
+                .tag("code", errorCode.getCode())
+                .tag("outcome", errorCode.name())
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,31 @@
+package vn.vnpay.demo2_16102024.metrics;
+
+/**
+ * Timed stages of the payment flow; {@code side} is the producer (HTTP) or consumer (queue) half.
+ */
+public enum PaymentStage {
+    VALIDATION("producer", "validation"),
+    REDIS_RESERVE("producer", "redis_reserve"),
+    ENCODE("producer", "encode"),
+    PUBLISH("producer", "publish"),
+    DECODE("consumer", "decode"),
+    DUPLICATE_CHECK("consumer", "duplicate_check"),
+    INSERT("consumer", "insert"),
+    RESPONSE("consumer", "response");
+
+    private final String side;
+    private final String stage;
+
+    PaymentStage(String side, String stage) {
+        this.side = side;
+        this.stage = stage;
+    }
+
+    public String getSide() {
+        return side;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+}
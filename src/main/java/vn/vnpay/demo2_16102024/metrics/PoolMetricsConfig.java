@@ -0,0 +1,41 @@
+package vn.vnpay.demo2_16102024.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import vn.vnpay.demo2_16102024.config.ConcurrencyConfig;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+/**
+ * Pool gauges. Hikari pool metrics ({@code hikaricp.connections.*}) come from Spring Boot's
+ * auto-configuration; the Jedis pool is read through the JMX bean commons-pool2 registers
+ * for it, and the bulkheads expose their free permits.
+ */
+@Configuration
+public class PoolMetricsConfig {
+
+    @Bean
+    public CommonsObjectPool2Metrics jedisPoolMetrics() {
+        return new CommonsObjectPool2Metrics();
+    }
+
+    @Bean
+    public MeterBinder bulkheadMetrics(@Qualifier(ConcurrencyConfig.REDIS_BULKHEAD) Bulkhead redisBulkhead,
+                                       @Qualifier(ConcurrencyConfig.JDBC_BULKHEAD) Bulkhead jdbcBulkhead) {
+        return registry -> {
+            bulkheadGauge(registry, "redis", redisBulkhead);
+            bulkheadGauge(registry, "jdbc", jdbcBulkhead);
+        };
+    }
+
+    private static void bulkheadGauge(MeterRegistry registry, String name, Bulkhead bulkhead) {
+        Gauge.builder("payment.bulkhead.available", bulkhead, Bulkhead::availablePermits)
+                .description("Free permits of a client bulkhead")
+                .tag("name", name)
+                .register(registry);
+    }
+}
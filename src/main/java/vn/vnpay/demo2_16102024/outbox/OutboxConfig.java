@@ -0,0 +1,41 @@
+package vn.vnpay.demo2_16102024.outbox;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import vn.vnpay.demo2_16102024.producer.PaymentPublisher;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+@ConditionalOnProperty(prefix = "payment.outbox", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(OutboxProperties.class)
+public class OutboxConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxConfig.class);
+
+    @Bean(destroyMethod = "close")
+    public PaymentOutbox paymentOutbox(OutboxProperties properties) throws IOException {
+        logger.info("Creating payment outbox in {} with {} MB segments", properties.getDirectory(), properties.getSegmentSizeMb());
+        return new PaymentOutbox(Path.of(properties.getDirectory()), properties.getSegmentSizeMb() << 20);
+    }
+
+    @Bean
+    public MeterBinder outboxMetrics(PaymentOutbox paymentOutbox) {
+        return registry -> Gauge.builder("payment.outbox.backlog", paymentOutbox, PaymentOutbox::backlogBytes)
+                .description("Journaled payment bytes not yet confirmed by RabbitMQ")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Bean
+    public OutboxDrainer outboxDrainer(PaymentOutbox paymentOutbox, PaymentPublisher paymentPublisher, OutboxProperties properties) {
+        return new OutboxDrainer(paymentOutbox, paymentPublisher, properties);
+    }
+}
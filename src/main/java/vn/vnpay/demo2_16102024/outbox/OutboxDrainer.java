@@ -0,0 +1,110 @@
+package vn.vnpay.demo2_16102024.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import vn.vnpay.demo2_16102024.producer.PaymentPublisher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes the records of the {@link PaymentOutbox} to RabbitMQ in journal order. Each round sends
+ * a batch with publisher confirms, waits for them, and commits the checkpoint past the longest run
+ * of confirmed records; the rest are retried after a pause. Delivery is at least once: a record
+ * confirmed after an unconfirmed one is sent again, and the consumer drops the duplicate on the
+ * unique tokenKey.
+ */
+public class OutboxDrainer implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxDrainer.class);
+
+    private final PaymentOutbox paymentOutbox;
+    private final PaymentPublisher paymentPublisher;
+    private final OutboxProperties properties;
+    private volatile boolean running;
+    private Thread thread;
+
+    public OutboxDrainer(PaymentOutbox paymentOutbox, PaymentPublisher paymentPublisher, OutboxProperties properties) {
+        this.paymentOutbox = paymentOutbox;
+        this.paymentPublisher = paymentPublisher;
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = Thread.ofPlatform().name("outbox-drainer").daemon().start(this::drain);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void drain() {
+        PaymentOutbox.Position position = paymentOutbox.checkpoint();
+        while (running) {
+            try {
+                List<PaymentOutbox.OutboxRecord> records = paymentOutbox.read(position, properties.getDrainBatchSize());
+                if (records.isEmpty()) {
+                    pause(properties.getIdleWaitMs());
+                    continue;
+                }
+                PaymentOutbox.Position confirmed = publish(records);
+                if (null != confirmed) {
+                    paymentOutbox.commit(confirmed);
+                    position = confirmed;
+                }
+                if (!records.get(records.size() - 1).next().equals(confirmed)) {
+                    pause(properties.getRetryBackoffMs());
+                }
+            } catch (Exception e) {
+                logger.error("Outbox drain failed at {}: {}", position, e.getMessage(), e);
+                pause(properties.getRetryBackoffMs());
+            }
+        }
+    }
+
+    /**
+     * Sends the whole batch before waiting on any confirm, and returns the position after the last
+     * record of the confirmed prefix, or null if the first record was not confirmed.
+     */
+    private PaymentOutbox.Position publish(List<PaymentOutbox.OutboxRecord> records) {
+        List<CompletableFuture<Void>> confirms = new ArrayList<>(records.size());
+        for (PaymentOutbox.OutboxRecord record : records) {
+            confirms.add(paymentPublisher.sendConfirmed(record.queueName(), record.message()));
+        }
+        PaymentOutbox.Position confirmed = null;
+        for (int i = 0; i < records.size(); i++) {
+            try {
+                confirms.get(i).join();
+            } catch (CompletionException e) {
+                Throwable cause = null != e.getCause() ? e.getCause() : e;
+                logger.warn("Outbox record {} was not confirmed, retrying from there: {}", i, cause.toString());
+                break;
+            }
+            confirmed = records.get(i).next();
+        }
+        return confirmed;
+    }
+
+    private static void pause(long millis) {
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
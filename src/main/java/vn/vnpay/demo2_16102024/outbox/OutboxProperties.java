@@ -0,0 +1,39 @@
+package vn.vnpay.demo2_16102024.outbox;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "payment.outbox")
+public class OutboxProperties {
+
+    /**
+     * Acknowledge payments once they are journaled on local disk and publish them to RabbitMQ in the background.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory holding the journal segments and the drain checkpoint. Must be on local disk and used by one node only.
+     */
+    private String directory = "outbox";
+
+    /**
+     * Size of each memory-mapped journal segment; a new segment is started when the current one is full.
+     */
+    private int segmentSizeMb = 64;
+
+    /**
+     * Records published per drain round before their confirms are awaited.
+     */
+    private int drainBatchSize = 200;
+
+    /**
+     * Pause between drain rounds when the journal is empty.
+     */
+    private long idleWaitMs = 10;
+
+    /**
+     * Pause before retrying after RabbitMQ failed to confirm a record.
+     */
+    private long retryBackoffMs = 1000;
+}
@@ -0,0 +1,317 @@
+package vn.vnpay.demo2_16102024.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of outgoing payment messages in memory-mapped segment files. Each record is
+ * {@code [length][crc32][queue][content type][body]}; unwritten space is zero, so a zero length
+ * marks the end of a segment and a bad checksum marks a write torn by a crash. {@link #append}
+ * returns once the record is forced to disk, and concurrent appenders share one force.
+ * <p>
+ * {@link #read} and {@link #commit} are called by the single {@link OutboxDrainer} thread. The
+ * checkpoint names the first record not yet confirmed by RabbitMQ; on startup, reading resumes
+ * there and new records go to a fresh segment, so undrained segments are replayed after a crash.
+ */
+public class PaymentOutbox implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentOutbox.class);
+
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    // ReentrantLocks rather than synchronized, so virtual threads waiting on a force do not pin their carriers
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private volatile Segment active;
+    private volatile Position checkpoint;
+    private ReadSegment reading;
+
+    public PaymentOutbox(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.checkpoint = readCheckpoint();
+        deleteSegmentsBefore(checkpoint.segment());
+        long next = Math.max(checkpoint.segment(), lastSegmentId()) + 1;
+        this.active = new Segment(next, map(next, FileChannel.MapMode.READ_WRITE));
+        logger.info("Opened payment outbox in {} at {}, appending to segment {}", directory, checkpoint, active.id);
+    }
+
+    /**
+     * Journals a message for {@code queueName} and returns once it is durable.
+     */
+    public void append(String queueName, Message message) throws IOException {
+        byte[] queue = queueName.getBytes(StandardCharsets.UTF_8);
+        String contentType = message.getMessageProperties().getContentType();
+        byte[] type = (null == contentType ? "" : contentType).getBytes(StandardCharsets.UTF_8);
+        byte[] body = message.getBody();
+        int length = 4 + queue.length + type.length + body.length;
+        if (HEADER_BYTES + length > segmentSize) {
+            throw new IOException("Message of " + length + " bytes does not fit in an outbox segment");
+        }
+
+        Segment segment;
+        int end;
+        writeLock.lock();
+        try {
+            segment = active;
+            if (segment.writeOffset + HEADER_BYTES + length > segmentSize) {
+                segment = rotate(segment);
+            }
+            int offset = segment.writeOffset;
+            MappedByteBuffer buffer = segment.buffer;
+            int position = offset + HEADER_BYTES;
+            buffer.putShort(position, (short) queue.length);
+            buffer.put(position + 2, queue);
+            position += 2 + queue.length;
+            buffer.putShort(position, (short) type.length);
+            buffer.put(position + 2, type);
+            position += 2 + type.length;
+            buffer.put(position, body);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(offset + HEADER_BYTES, length));
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            buffer.putInt(offset, length);
+            end = offset + HEADER_BYTES + length;
+            segment.writeOffset = end;
+        } finally {
+            writeLock.unlock();
+        }
+        sync(segment, end);
+    }
+
+    /**
+     * Reads up to {@code max} durable records starting at {@code from}, crossing into later segments.
+     */
+    public List<OutboxRecord> read(Position from, int max) throws IOException {
+        List<OutboxRecord> records = new ArrayList<>(Math.min(max, 1024));
+        Position position = from;
+        while (records.size() < max) {
+            Segment current = active;
+            boolean sealed = position.segment() < current.id;
+            ByteBuffer buffer;
+            int limit;
+            if (sealed) {
+                buffer = readSegment(position.segment());
+                if (null == buffer) {
+                    position = new Position(position.segment() + 1, 0);
+                    continue;
+                }
+                limit = buffer.capacity();
+            } else {
+                buffer = current.buffer;
+                limit = current.durableOffset;
+            }
+            OutboxRecord record = readRecord(buffer, position, limit);
+            if (null != record) {
+                records.add(record);
+                position = record.next();
+            } else if (sealed) {
+                position = new Position(position.segment() + 1, 0);
+            } else {
+                break;
+            }
+        }
+        return records;
+    }
+
+    public Position checkpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Marks every record before {@code upTo} as published and deletes the segments left behind.
+     */
+    public void commit(Position upTo) throws IOException {
+        Path temp = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        ByteBuffer content = ByteBuffer.allocate(12).putLong(upTo.segment()).putInt(upTo.offset()).flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(content);
+            channel.force(false);
+        }
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        boolean segmentDone = upTo.segment() > checkpoint.segment();
+        checkpoint = upTo;
+        if (segmentDone) {
+            deleteSegmentsBefore(upTo.segment());
+        }
+    }
+
+    /**
+     * Bytes appended but not yet committed, for the backlog gauge. Counts whole segments for sealed ones.
+     */
+    public long backlogBytes() {
+        Segment current = active;
+        Position from = checkpoint;
+        if (from.segment() == current.id) {
+            return current.writeOffset - from.offset();
+        }
+        return (current.id - from.segment()) * (long) segmentSize - from.offset() + current.writeOffset;
+    }
+
+    @Override
+    public void close() {
+        syncLock.lock();
+        try {
+            active.buffer.force();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void sync(Segment segment, int end) {
+        syncLock.lock();
+        try {
+            // Whoever gets here first forces everything written so far; later appenders find their record durable
+            if (segment.durableOffset < end) {
+                int from = segment.durableOffset;
+                int to = segment.writeOffset;
+                segment.buffer.force(from, to - from);
+                segment.durableOffset = to;
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private Segment rotate(Segment full) throws IOException {
+        syncLock.lock();
+        try {
+            full.buffer.force();
+            full.durableOffset = full.writeOffset;
+        } finally {
+            syncLock.unlock();
+        }
+        Segment next = new Segment(full.id + 1, map(full.id + 1, FileChannel.MapMode.READ_WRITE));
+        active = next;
+        logger.info("Payment outbox rotated to segment {}", next.id);
+        return next;
+    }
+
+    private static OutboxRecord readRecord(ByteBuffer buffer, Position position, int limit) {
+        int offset = position.offset();
+        if (offset + HEADER_BYTES > limit) {
+            return null;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_BYTES + length > limit) {
+            return null;
+        }
+        ByteBuffer payload = buffer.slice(offset + HEADER_BYTES, length);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            logger.warn("Ignoring torn outbox record at {}", position);
+            return null;
+        }
+        String queueName = readString(payload);
+        String contentType = readString(payload);
+        byte[] body = new byte[payload.remaining()];
+        payload.get(body);
+        Message message = PaymentMessageCodec.toMessage(body, contentType.isEmpty() ? null : contentType);
+        return new OutboxRecord(queueName, message, new Position(position.segment(), offset + HEADER_BYTES + length));
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.getShort()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer readSegment(long id) throws IOException {
+        if (null == reading || reading.id != id) {
+            reading = Files.exists(segmentPath(id)) ? new ReadSegment(id, map(id, FileChannel.MapMode.READ_ONLY)) : null;
+        }
+        return null == reading ? null : reading.buffer;
+    }
+
+    private MappedByteBuffer map(long id, FileChannel.MapMode mode) throws IOException {
+        StandardOpenOption[] options = FileChannel.MapMode.READ_ONLY == mode
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(segmentPath(id), options)) {
+            long size = FileChannel.MapMode.READ_ONLY == mode ? Math.min(channel.size(), segmentSize) : segmentSize;
+            return channel.map(mode, 0, size);
+        }
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return new Position(0, 0);
+        }
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(path));
+        return new Position(content.getLong(), content.getInt());
+    }
+
+    private long lastSegmentId() throws IOException {
+        return LongStream.of(segmentIds()).max().orElse(-1);
+    }
+
+    private void deleteSegmentsBefore(long segment) throws IOException {
+        // A mapping outlives its deleted file, so a segment can go even if a buffer still refers to it
+        for (long id : segmentIds()) {
+            if (id < segment) {
+                Files.deleteIfExists(segmentPath(id));
+            }
+        }
+    }
+
+    private long[] segmentIds() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .mapToLong(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .toArray();
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%020d%s", id, SEGMENT_SUFFIX));
+    }
+
+    public record Position(long segment, int offset) {
+    }
+
+    public record OutboxRecord(String queueName, Message message, Position next) {
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final MappedByteBuffer buffer;
+        private volatile int writeOffset;
+        private volatile int durableOffset;
+
+        private Segment(long id, MappedByteBuffer buffer) {
+            this.id = id;
+            this.buffer = buffer;
+        }
+    }
+
+    private record ReadSegment(long id, ByteBuffer buffer) {
+    }
+}
@@ -0,0 +1,20 @@
+package vn.vnpay.demo2_16102024.partition;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "payment.partitions", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(PartitionProperties.class)
+public class PartitionConfig {
+
+    @Bean
+    public PaymentPartitionMaintainer paymentPartitionMaintainer(JdbcTemplate jdbcTemplate, PartitionProperties properties) {
+        return new PaymentPartitionMaintainer(jdbcTemplate, properties);
+    }
+}
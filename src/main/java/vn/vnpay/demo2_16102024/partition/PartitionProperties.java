@@ -0,0 +1,40 @@
+package vn.vnpay.demo2_16102024.partition;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "payment.partitions")
+public class PartitionProperties {
+
+    /**
+     * Maintain the daily partitions of the payments table.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Daily partitions kept ready ahead of today.
+     */
+    private int precreateDays = 7;
+
+    /**
+     * Days of payments kept; partitions holding only older days are removed.
+     */
+    private int retentionDays = 90;
+
+    /**
+     * Move expired partitions into payments_archive_&lt;partition&gt; tables before removing them from payments.
+     */
+    private boolean archive = true;
+
+    /**
+     * With archive=false, delete the rows of expired partitions. Off by default: expired partitions are then
+     * kept and reported, since dropping them destroys payments.
+     */
+    private boolean dropExpired = false;
+
+    /**
+     * Pause between maintenance runs; a run that finds nothing to do costs one metadata query.
+     */
+    private long intervalMs = 3_600_000;
+}
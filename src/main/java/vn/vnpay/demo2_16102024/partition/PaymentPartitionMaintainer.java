@@ -0,0 +1,247 @@
+package vn.vnpay.demo2_16102024.partition;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the daily RANGE COLUMNS (payDay) partitions of {@code payments} in shape: splits partitions
+ * for the coming days off the MAXVALUE partition before rows arrive for them, and moves partitions
+ * whose days are all past the retention period into archive tables. Expired partitions are only
+ * dropped with their rows when archiving is off and dropping is explicitly enabled.
+ * Runs hold a MySQL named lock, so only one node changes the table at a time.
+ */
+public class PaymentPartitionMaintainer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentPartitionMaintainer.class);
+
+    static final String TABLE = "payments";
+    static final String FUTURE_PARTITION = "p_future";
+    private static final String LOCK_NAME = "payments_partition_maintenance";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+    static final String ARCHIVE_PREFIX = TABLE + "_archive_";
+    private static final String SQL_PARTITIONS = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS "
+            + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL ORDER BY PARTITION_ORDINAL_POSITION";
+    // Archive tables with their partition count; a table created LIKE payments is partitioned until REMOVE PARTITIONING
+    private static final String SQL_ARCHIVES = "SELECT t.TABLE_NAME, COUNT(p.PARTITION_NAME) FROM information_schema.TABLES t "
+            + "LEFT JOIN information_schema.PARTITIONS p ON p.TABLE_SCHEMA = t.TABLE_SCHEMA AND p.TABLE_NAME = t.TABLE_NAME "
+            + "AND p.PARTITION_NAME IS NOT NULL WHERE t.TABLE_SCHEMA = DATABASE() AND t.TABLE_NAME LIKE ? GROUP BY t.TABLE_NAME";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionProperties properties;
+
+    public PaymentPartitionMaintainer(JdbcTemplate jdbcTemplate, PartitionProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.partitions.interval-ms:3600000}")
+    public void maintain() {
+        try {
+            // One connection for the whole run, since the named lock belongs to the session
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                if (!tryLock(connection)) {
+                    logger.debug("Partition maintenance is running on another node");
+                    return null;
+                }
+                try {
+                    List<Partition> partitions = partitions(connection);
+                    Map<String, ArchiveState> archives = properties.isArchive() ? archives(connection, partitions) : Map.of();
+                    List<String> statements = plan(partitions, archives, LocalDate.now());
+                    try (Statement statement = connection.createStatement()) {
+                        for (String ddl : statements) {
+                            logger.info("Partition maintenance: {}", ddl);
+                            statement.execute(ddl);
+                        }
+                    }
+                } finally {
+                    unlock(connection);
+                }
+                return null;
+            });
+        } catch (DataAccessException e) {
+            logger.error("Partition maintenance failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The DDL that brings {@code partitions} up to date for {@code today}: expired partitions are
+     * archived (or dropped, if allowed) first, then the missing days up to today + precreateDays are
+     * split off p_future. {@code archives} holds the state of the archive tables that already exist,
+     * so a run cut short part way through archiving resumes where it stopped.
+     */
+    List<String> plan(List<Partition> partitions, Map<String, ArchiveState> archives, LocalDate today) {
+        List<String> statements = new ArrayList<>();
+        if (partitions.stream().noneMatch(partition -> FUTURE_PARTITION.equals(partition.name()))) {
+            logger.warn("Table {} has no {} partition; is it partitioned?", TABLE, FUTURE_PARTITION);
+            return statements;
+        }
+        LocalDate cutoff = today.minusDays(properties.getRetentionDays());
+        LocalDate covered = null;
+        for (Partition partition : partitions) {
+            if (null == partition.lessThan()) {
+                continue;
+            }
+            if (!partition.lessThan().isAfter(cutoff)) {
+                statements.addAll(expire(partition.name(), archives.getOrDefault(partition.name(), ArchiveState.ABSENT)));
+            }
+            covered = partition.lessThan();
+        }
+
+        LocalDate last = today.plusDays(properties.getPrecreateDays());
+        LocalDate day = null == covered ? today : covered;
+        if (!day.isAfter(last)) {
+            StringBuilder reorganize = new StringBuilder("ALTER TABLE ").append(TABLE)
+                    .append(" REORGANIZE PARTITION ").append(FUTURE_PARTITION).append(" INTO (");
+            for (; !day.isAfter(last); day = day.plusDays(1)) {
+                reorganize.append("PARTITION p").append(day.format(PARTITION_SUFFIX))
+                        .append(" VALUES LESS THAN ('").append(day.plusDays(1)).append("'), ");
+            }
+            reorganize.append("PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN (MAXVALUE))");
+            statements.add(reorganize.toString());
+        }
+        return statements;
+    }
+
+    private List<String> expire(String partition, ArchiveState archiveState) {
+        String drop = "ALTER TABLE " + TABLE + " DROP PARTITION " + partition;
+        if (!properties.isArchive()) {
+            if (properties.isDropExpired()) {
+                return List.of(drop);
+            }
+            logger.warn("Partition {} is past retention but kept: archive and drop-expired are both off", partition);
+            return List.of();
+        }
+        // EXCHANGE PARTITION swaps the rows into an empty table of the same shape in a metadata-only operation;
+        // each state skips the steps an earlier, interrupted run already completed
+        String archive = ARCHIVE_PREFIX + partition;
+        String exchange = "ALTER TABLE " + TABLE + " EXCHANGE PARTITION " + partition + " WITH TABLE " + archive;
+        return switch (archiveState) {
+            case ABSENT -> List.of("CREATE TABLE " + archive + " LIKE " + TABLE,
+                    "ALTER TABLE " + archive + " REMOVE PARTITIONING", exchange, drop);
+            case PARTITIONED -> List.of("ALTER TABLE " + archive + " REMOVE PARTITIONING", exchange, drop);
+            case EMPTY -> List.of(exchange, drop);
+            // Rows already exchanged out; exchanging again would bring them back
+            case ARCHIVED -> List.of(drop);
+            case CONFLICT -> {
+                logger.error("Partition {} and archive table {} both hold rows; leaving them for manual review", partition, archive);
+                yield List.of();
+            }
+        };
+    }
+
+    private static List<Partition> partitions(Connection connection) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(SQL_PARTITIONS)) {
+            statement.setString(1, TABLE);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    partitions.add(new Partition(rs.getString(1), lessThan(rs.getString(2))));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * The state of each existing archive table whose partition is still in {@code partitions}.
+     */
+    private static Map<String, ArchiveState> archives(Connection connection, List<Partition> partitions) throws SQLException {
+        Set<String> names = new HashSet<>();
+        for (Partition partition : partitions) {
+            names.add(partition.name());
+        }
+        Map<String, Integer> archiveTables = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(SQL_ARCHIVES)) {
+            statement.setString(1, ARCHIVE_PREFIX.replace("_", "\\_") + "%");
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    archiveTables.put(rs.getString(1), rs.getInt(2));
+                }
+            }
+        }
+        Map<String, ArchiveState> archives = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : archiveTables.entrySet()) {
+            String partition = entry.getKey().substring(ARCHIVE_PREFIX.length());
+            if (!names.contains(partition)) {
+                continue;
+            }
+            if (entry.getValue() > 0) {
+                archives.put(partition, ArchiveState.PARTITIONED);
+            } else if (!hasRows(connection, "SELECT 1 FROM " + entry.getKey() + " LIMIT 1")) {
+                archives.put(partition, ArchiveState.EMPTY);
+            } else if (!hasRows(connection, "SELECT 1 FROM " + TABLE + " PARTITION (" + partition + ") LIMIT 1")) {
+                archives.put(partition, ArchiveState.ARCHIVED);
+            } else {
+                archives.put(partition, ArchiveState.CONFLICT);
+            }
+        }
+        return archives;
+    }
+
+    private static boolean hasRows(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Parses a RANGE COLUMNS bound as information_schema reports it, e.g. {@code '2024-10-17'} or {@code MAXVALUE}.
+     */
+    static LocalDate lessThan(String description) {
+        if (null == description || "MAXVALUE".equalsIgnoreCase(description)) {
+            return null;
+        }
+        return LocalDate.parse(description.replace("'", ""));
+    }
+
+    private static boolean tryLock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, LOCK_NAME);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && 1 == rs.getInt(1);
+            }
+        }
+    }
+
+    private static void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.execute();
+        }
+    }
+
+    /**
+     * A partition and its exclusive upper bound; null for MAXVALUE.
+     */
+    record Partition(String name, LocalDate lessThan) {
+    }
+
+    /**
+     * How far archiving a partition into payments_archive_&lt;partition&gt; got.
+     */
+    enum ArchiveState {
+        ABSENT,
+        PARTITIONED,
+        EMPTY,
+        ARCHIVED,
+        CONFLICT
+    }
+}
@@ -0,0 +1,114 @@
+package vn.vnpay.demo2_16102024.producer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.AmqpIOException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import vn.vnpay.demo2_16102024.config.PaymentShards;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.outbox.PaymentOutbox;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes payment messages to the payment's shard queue (see {@link PaymentShards}), either fire-and-forget or completed by the
+ * broker's publisher confirm ({@code spring.rabbitmq.publisher-confirm-type=correlated}). With
+ * {@code payment.outbox.enabled} both go to the local {@link PaymentOutbox} instead and complete
+ * once the message is on disk; {@code OutboxDrainer} then publishes it with {@link #sendConfirmed}.
+ */
+@Component
+public class PaymentPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentPublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final PaymentShards paymentShards;
+    private final long confirmTimeoutMs;
+    private final PaymentOutbox paymentOutbox;
+
+    public PaymentPublisher(RabbitTemplate rabbitTemplate, PaymentShards paymentShards, long confirmTimeoutMs) {
+        this(rabbitTemplate, paymentShards, confirmTimeoutMs, null);
+    }
+
+    @Autowired
+    public PaymentPublisher(RabbitTemplate rabbitTemplate, PaymentShards paymentShards,
+                            @Value("${payment.publisher.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+                            @Nullable PaymentOutbox paymentOutbox) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.paymentShards = paymentShards;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.paymentOutbox = paymentOutbox;
+    }
+
+    public void publish(PaymentRequest paymentRequest, Message message) {
+        if (null != paymentOutbox) {
+            try {
+                paymentOutbox.append(paymentShards.queueFor(paymentRequest), message);
+            } catch (IOException e) {
+                throw new AmqpIOException(e);
+            }
+            return;
+        }
+        rabbitTemplate.send(paymentShards.queueFor(paymentRequest), stampEnqueuedAt(message));
+    }
+
+    /**
+     * The returned future completes when the broker acks the message. It fails with an
+     * {@link AmqpException} on a nack or an unroutable return, and with a
+     * {@link java.util.concurrent.TimeoutException} when no confirm arrives in time.
+     */
+    public CompletableFuture<Void> publishConfirmed(PaymentRequest paymentRequest, Message message) {
+        if (null != paymentOutbox) {
+            try {
+                paymentOutbox.append(paymentShards.queueFor(paymentRequest), message);
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(new AmqpIOException(e));
+            }
+        }
+        return sendConfirmed(paymentShards.queueFor(paymentRequest), message);
+    }
+
+    /**
+     * Publishes straight to the broker, bypassing the outbox, and completes as {@link #publishConfirmed} does.
+     */
+    public CompletableFuture<Void> sendConfirmed(String queueName, Message message) {
+        CorrelationData correlationData = new CorrelationData();
+        try {
+            rabbitTemplate.send("", queueName, stampEnqueuedAt(message), correlationData);
+        } catch (AmqpException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return correlationData.getFuture()
+                .orTimeout(confirmTimeoutMs, TimeUnit.MILLISECONDS)
+                .thenAccept(confirm -> {
+                    if (!confirm.isAck()) {
+                        logger.warn("Broker nacked message {}: {}", correlationData.getId(), confirm.getReason());
+                        throw new AmqpException("Message nacked by broker: " + confirm.getReason());
+                    }
+                    if (null != correlationData.getReturned()) {
+                        logger.warn("Message {} returned as unroutable: {}", correlationData.getId(), correlationData.getReturned().getReplyText());
+                        throw new AmqpException("Message returned by broker: " + correlationData.getReturned().getReplyText());
+                    }
+                });
+    }
+
+    /**
+     * Carries the publish time so the consumer can measure enqueue-to-insert lag; the AMQP
+     * timestamp property only has second resolution.
+     */
+    private static Message stampEnqueuedAt(Message message) {
+        message.getMessageProperties().setHeader(PaymentConstant.HEADER_ENQUEUED_AT, System.currentTimeMillis());
+        return message;
+    }
+}
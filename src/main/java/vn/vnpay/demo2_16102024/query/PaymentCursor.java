@@ -0,0 +1,31 @@
+package vn.vnpay.demo2_16102024.query;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Keyset position of a search page: the (payDay, id) of the last row returned, written as
+ * {@code 2024-10-16_12345}.
+ */
+public record PaymentCursor(LocalDate payDay, long id) {
+
+    private static final char SEPARATOR = '_';
+
+    public static PaymentCursor parse(String value) {
+        if (null == value || value.isBlank()) {
+            return null;
+        }
+        int separator = value.indexOf(SEPARATOR);
+        try {
+            return new PaymentCursor(LocalDate.parse(value.substring(0, Math.max(0, separator))),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return payDay.toString() + SEPARATOR + id;
+    }
+}
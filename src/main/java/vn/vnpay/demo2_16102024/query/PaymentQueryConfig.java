@@ -0,0 +1,49 @@
+package vn.vnpay.demo2_16102024.query;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StringUtils;
+import vn.vnpay.demo2_16102024.config.ConcurrencyConfig;
+import vn.vnpay.demo2_16102024.config.ConcurrencyProperties;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+/**
+ * Wires the read API to the replica when {@code payment.query.replica.url} is set. The replica pool
+ * is owned by {@link PaymentQueryService} rather than exposed as a DataSource bean, which would make
+ * Spring Boot back off from configuring the primary one.
+ */
+@Configuration
+@EnableConfigurationProperties(PaymentQueryProperties.class)
+public class PaymentQueryConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentQueryConfig.class);
+
+    @Bean
+    public PaymentQueryService paymentQueryService(JdbcTemplate jdbcTemplate, @Qualifier(ConcurrencyConfig.JDBC_BULKHEAD) Bulkhead jdbcBulkhead,
+                                                   ObjectMapper objectMapper, PaymentQueryProperties properties,
+                                                   ConcurrencyProperties concurrencyProperties) {
+        PaymentQueryProperties.Replica replica = properties.getReplica();
+        if (!StringUtils.hasText(replica.getUrl())) {
+            logger.info("No read replica configured, payment queries use the primary data source");
+            return new PaymentQueryService(jdbcTemplate, null, jdbcBulkhead, objectMapper, properties);
+        }
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("payment-replica");
+        dataSource.setJdbcUrl(replica.getUrl());
+        dataSource.setUsername(replica.getUsername());
+        dataSource.setPassword(replica.getPassword());
+        dataSource.setMaximumPoolSize(replica.getMaximumPoolSize());
+        dataSource.setConnectionTimeout(replica.getConnectionTimeoutMs());
+        dataSource.setReadOnly(true);
+        logger.info("Payment queries use the read replica at {}", replica.getUrl());
+        Bulkhead replicaBulkhead = new Bulkhead("replica", replica.getMaximumPoolSize(), concurrencyProperties.getAcquireTimeoutMs());
+        return new PaymentQueryService(new JdbcTemplate(dataSource), dataSource, replicaBulkhead, objectMapper, properties);
+    }
+}
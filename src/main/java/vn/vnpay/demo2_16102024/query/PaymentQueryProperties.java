@@ -0,0 +1,44 @@
+package vn.vnpay.demo2_16102024.query;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "payment.query")
+public class PaymentQueryProperties {
+
+    /**
+     * Page size when a search names none.
+     */
+    private int defaultLimit = 100;
+
+    /**
+     * Largest page a search may ask for.
+     */
+    private int maxLimit = 1000;
+
+    /**
+     * Rows fetched per round trip by exports. MySQL Connector/J only honours it with
+     * useCursorFetch=true in the URL; without that, exports stream row by row instead.
+     */
+    private int fetchSize = 500;
+
+    /**
+     * Exports allowed to run at once; each one holds a connection until it is done.
+     */
+    private int maxConcurrentExports = 2;
+
+    /**
+     * Read replica for searches and exports. Reads go to the primary data source while no URL is set.
+     */
+    private Replica replica = new Replica();
+
+    @Data
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 5;
+        private long connectionTimeoutMs = 30_000;
+    }
+}
@@ -0,0 +1,200 @@
+package vn.vnpay.demo2_16102024.query;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.lang.Nullable;
+import vn.vnpay.demo2_16102024.dto.response.PaymentPage;
+import vn.vnpay.demo2_16102024.dto.response.PaymentRecord;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+import vn.vnpay.demo2_16102024.utils.MaskedPaymentRequest;
+import vn.vnpay.demo2_16102024.utils.PaymentUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read API over {@code payments} for operations and reconciliation. Searches page with a keyset on
+ * (payDay, id), so page N costs the same as page 1 instead of reading and skipping N pages as
+ * OFFSET does. Exports run the same query without a limit over a forward-only cursor and write
+ * NDJSON as rows arrive. Both read from the replica when one is configured.
+ */
+public class PaymentQueryService implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentQueryService.class);
+
+    static final String SQL_SELECT = "SELECT id, tokenKey, apiID, mobile, bankCode, accountNo, payDate, payDay, debitAmount, realAmount, "
+            + "respCode, respDesc, traceTransfer, messageType, orderCode, userName, promotionCode FROM payments";
+
+    private static final RowMapper<PaymentRecord> ROW_MAPPER = (rs, rowNum) -> toRecord(rs);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HikariDataSource replica;
+    private final Bulkhead readBulkhead;
+    private final Bulkhead exportBulkhead;
+    private final ObjectWriter recordWriter;
+    private final PaymentQueryProperties properties;
+
+    /**
+     * @param jdbcTemplate  template over the replica when {@code replica} is given, otherwise over the primary
+     * @param replica       the replica pool, closed with this service
+     * @param readBulkhead  bounds the reads on {@code jdbcTemplate}'s pool
+     */
+    public PaymentQueryService(JdbcTemplate jdbcTemplate, @Nullable HikariDataSource replica, Bulkhead readBulkhead,
+                               ObjectMapper objectMapper, PaymentQueryProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.replica = replica;
+        this.readBulkhead = readBulkhead;
+        this.exportBulkhead = new Bulkhead("export", Math.max(1, properties.getMaxConcurrentExports()), 0);
+        this.recordWriter = objectMapper.writerFor(PaymentRecord.class);
+        this.properties = properties;
+    }
+
+    public PaymentPage search(PaymentSearch search, @Nullable PaymentCursor after, int limit) {
+        int pageSize = limit <= 0 ? properties.getDefaultLimit() : Math.min(limit, properties.getMaxLimit());
+        // One row more than the page tells whether there is a next page without a COUNT
+        Query query = query(search, after, pageSize + 1);
+        List<PaymentRecord> rows = readBulkhead.call(() -> jdbcTemplate.query(query.sql(), ROW_MAPPER, query.args().toArray()));
+        if (rows.size() <= pageSize) {
+            return new PaymentPage(rows, null);
+        }
+        List<PaymentRecord> page = rows.subList(0, pageSize);
+        PaymentRecord last = page.get(pageSize - 1);
+        return new PaymentPage(page, new PaymentCursor(LocalDate.parse(last.getPayDay()), last.getId()).toString());
+    }
+
+    /**
+     * Writes every matching payment to {@code out} as one NDJSON line, in (payDay, id) order.
+     *
+     * @return the number of payments written
+     */
+    public long export(PaymentSearch search, OutputStream out) throws IOException {
+        Query query = query(search, null, 0);
+        OutputStream buffered = new BufferedOutputStream(out);
+        long[] rows = {0};
+        PreparedStatementCreator statementCreator = connection -> {
+            PreparedStatement statement = connection.prepareStatement(query.sql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize(connection.getMetaData().getURL(), properties.getFetchSize()));
+            for (int i = 0; i < query.args().size(); i++) {
+                StatementCreatorUtils.setParameterValue(statement, i + 1, SqlTypeValue.TYPE_UNKNOWN, query.args().get(i));
+            }
+            return statement;
+        };
+        try {
+            exportBulkhead.run(() -> readBulkhead.run(() -> jdbcTemplate.query(statementCreator, rs -> {
+                try {
+                    buffered.write(recordWriter.writeValueAsBytes(toRecord(rs)));
+                    buffered.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            })));
+        } catch (UncheckedIOException e) {
+            // Mostly the client going away; closing the result set ends the cursor on the server
+            logger.warn("Payment export stopped after {} rows: {}", rows[0], e.getCause().getMessage());
+            throw e.getCause();
+        }
+        buffered.flush();
+        logger.info("Exported {} payments", rows[0]);
+        return rows[0];
+    }
+
+    @Override
+    public void close() {
+        if (null != replica) {
+            replica.close();
+        }
+    }
+
+    /**
+     * The search as SQL. Every filter is an equality or range on the leading columns of a V4 index,
+     * and the keyset condition is spelled out rather than written as a row comparison so that MySQL
+     * uses it as a range on the index. {@code limit} 0 means no limit.
+     */
+    static Query query(PaymentSearch search, @Nullable PaymentCursor after, int limit) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        condition(conditions, args, "orderCode = ?", search.orderCode());
+        condition(conditions, args, "userName = ?", search.userName());
+        condition(conditions, args, "accountNo = ?", search.accountNo());
+        condition(conditions, args, "payDay >= ?", search.from());
+        condition(conditions, args, "payDay <= ?", search.to());
+        if (null != after) {
+            conditions.add("(payDay > ? OR (payDay = ? AND id > ?))");
+            args.add(after.payDay());
+            args.add(after.payDay());
+            args.add(after.id());
+        }
+        StringBuilder sql = new StringBuilder(SQL_SELECT);
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY payDay, id");
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+            args.add(limit);
+        }
+        return new Query(sql.toString(), args);
+    }
+
+    /**
+     * Connector/J reads the whole result into memory unless it either fetches through a server
+     * cursor (useCursorFetch=true and a positive fetch size) or streams with a fetch size of
+     * {@link Integer#MIN_VALUE}; the latter is used when the URL does not enable cursors.
+     */
+    static int fetchSize(String url, int configured) {
+        if (null != url && url.startsWith("jdbc:mysql:") && !url.contains("useCursorFetch=true")) {
+            return Integer.MIN_VALUE;
+        }
+        return configured;
+    }
+
+    private static void condition(List<String> conditions, List<Object> args, String condition, Object value) {
+        if (null != value) {
+            conditions.add(condition);
+            args.add(value);
+        }
+    }
+
+    private static PaymentRecord toRecord(ResultSet rs) throws SQLException {
+        PaymentRecord record = new PaymentRecord();
+        record.setId(rs.getLong("id"));
+        record.setTokenKey(rs.getString("tokenKey"));
+        record.setApiID(rs.getString("apiID"));
+        record.setMobile(MaskedPaymentRequest.mask(rs.getString("mobile"), 3, 3));
+        record.setBankCode(rs.getString("bankCode"));
+        record.setAccountNo(MaskedPaymentRequest.mask(rs.getString("accountNo"), 0, 4));
+        record.setPayDate(PaymentUtils.formatPayDate(rs.getObject("payDate", LocalDateTime.class)));
+        record.setPayDay(rs.getObject("payDay", LocalDate.class).toString());
+        record.setDebitAmount(rs.getLong("debitAmount"));
+        record.setRealAmount(rs.getLong("realAmount"));
+        record.setRespCode(rs.getString("respCode"));
+        record.setRespDesc(rs.getString("respDesc"));
+        record.setTraceTransfer(rs.getString("traceTransfer"));
+        record.setMessageType(rs.getString("messageType"));
+        record.setOrderCode(rs.getString("orderCode"));
+        record.setUserName(rs.getString("userName"));
+        record.setPromotionCode(rs.getString("promotionCode"));
+        return record;
+    }
+
+    record Query(String sql, List<Object> args) {
+    }
+}
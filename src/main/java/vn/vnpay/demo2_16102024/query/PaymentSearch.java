@@ -0,0 +1,26 @@
+package vn.vnpay.demo2_16102024.query;
+
+import java.time.LocalDate;
+
+/**
+ * Filters of a payment search; blank values are ignored and the pay day range is inclusive.
+ * At least one filter is required, so that every query can use one of the V4 indexes.
+ */
+public record PaymentSearch(String orderCode, String userName, String accountNo, LocalDate from, LocalDate to) {
+
+    public PaymentSearch {
+        orderCode = blankToNull(orderCode);
+        userName = blankToNull(userName);
+        accountNo = blankToNull(accountNo);
+        if (null == orderCode && null == userName && null == accountNo && null == from && null == to) {
+            throw new IllegalArgumentException("One of orderCode, userName, accountNo, from or to is required");
+        }
+        if (null != from && null != to && from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+    }
+
+    private static String blankToNull(String value) {
+        return null == value || value.isBlank() ? null : value.trim();
+    }
+}
@@ -4,7 +4,13 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface IPaymentService {
     ResponseEntity<?> validatePayment(PaymentRequest paymentRequest, BindingResult bindingResult);
-}
 
+    /**
+     * Same checks as {@link #validatePayment}, but completes only once the broker has confirmed the message.
+     */
+    CompletableFuture<ResponseEntity<?>> validatePaymentAsync(PaymentRequest paymentRequest, BindingResult bindingResult);
+}
@@ -0,0 +1,266 @@
+package vn.vnpay.demo2_16102024.server;
+
+import com.fasterxml.jackson.core.exc.StreamReadException;
+import com.fasterxml.jackson.databind.DatabindException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import vn.vnpay.demo2_16102024.admission.AdmissionControlledPaymentService;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dedup.TokenDedupStore;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.metrics.PaymentStage;
+import vn.vnpay.demo2_16102024.producer.PaymentPublisher;
+import vn.vnpay.demo2_16102024.validation.PaymentRequestValidator;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bulk ingest for {@code POST /api/payment/batch}. Records are read one at a time from an NDJSON
+ * stream or a JSON array and handled in chunks: each record gets the same rate limits as
+ * {@link AdmissionControlledPaymentService} and the same checks as {@link PaymentService}, the
+ * chunk holds one in-flight slot per record while it is reserved and published, its tokenKeys are
+ * reserved in one Redis pipeline, and the accepted records are published together before their
+ * confirms are awaited. One NDJSON result line is written per record, in input order, and flushed
+ * after every chunk, so memory use depends on the chunk size and not on the size of the upload.
+ */
+@Service
+public class PaymentBatchService {
+
+    private static final Logger logger = LogManager.getLogger(PaymentBatchService.class);
+
+    private final PaymentService paymentService;
+    private final AdmissionControlledPaymentService admission;
+    private final PaymentPublisher paymentPublisher;
+    private final TokenDedupStore tokenDedupStore;
+    private final PaymentMessageCodecs paymentMessageCodecs;
+    private final PaymentMetrics paymentMetrics;
+    private final PaymentRequestValidator validator;
+    private final ObjectReader requestReader;
+    private final ObjectWriter responseWriter;
+    private final int chunkSize;
+
+    @Autowired
+    public PaymentBatchService(PaymentService paymentService, AdmissionControlledPaymentService admission,
+                               PaymentPublisher paymentPublisher, TokenDedupStore tokenDedupStore, PaymentMessageCodecs paymentMessageCodecs, PaymentMetrics paymentMetrics, PaymentRequestValidator validator, ObjectMapper objectMapper,
+                               @Value("${payment.batch.chunk-size:100}") int chunkSize) {
+        this.paymentService = paymentService;
+        this.admission = admission;
+        this.paymentPublisher = paymentPublisher;
+        this.tokenDedupStore = tokenDedupStore;
+        this.paymentMessageCodecs = paymentMessageCodecs;
+        this.paymentMetrics = paymentMetrics;
+        this.validator = validator;
+        this.requestReader = objectMapper.readerFor(PaymentRequest.class);
+        this.responseWriter = objectMapper.writerFor(PaymentResponse.class);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Processes every record in {@code in} and writes one result line per record to {@code out}.
+     * Reading stops at the first malformed JSON, which is answered with a final validation error line.
+     *
+     * @return the number of records read
+     */
+    public int process(InputStream in, OutputStream out) throws IOException {
+        OutputStream buffered = new BufferedOutputStream(out);
+        List<Entry> chunk = new ArrayList<>(chunkSize);
+        int records = 0;
+        boolean malformed = false;
+        MappingIterator<PaymentRequest> iterator = null;
+        try {
+            iterator = requestReader.readValues(in);
+            while (iterator.hasNextValue()) {
+                Entry entry = new Entry();
+                try {
+                    entry.request = iterator.nextValue();
+                } catch (DatabindException e) {
+                    // The iterator skips the rest of the record and carries on with the next one
+                    logger.warn("Unreadable batch record {}: {}", records, e.getOriginalMessage());
+                    entry.result = errorResponse(null, ErrorCodeEnum.VALIDATION_ERROR, PaymentConstant.ERROR_VALIDATION);
+                }
+                chunk.add(entry);
+                records++;
+                if (chunk.size() == chunkSize) {
+                    processChunk(chunk, buffered);
+                }
+            }
+        } catch (StreamReadException e) {
+            logger.warn("Malformed batch body after {} records: {}", records, e.getOriginalMessage());
+            malformed = true;
+        } finally {
+            if (null != iterator) {
+                iterator.close();
+            }
+        }
+        processChunk(chunk, buffered);
+        if (malformed) {
+            write(errorResponse(null, ErrorCodeEnum.VALIDATION_ERROR, PaymentConstant.ERROR_MALFORMED_BATCH), buffered);
+        }
+        buffered.flush();
+        logger.info("Processed payment batch of {} records", records);
+        return records;
+    }
+
+    private void processChunk(List<Entry> chunk, OutputStream out) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        LocalDate day = LocalDate.now();
+        List<Entry> accepted = new ArrayList<>(chunk.size());
+        for (Entry entry : chunk) {
+            if (null == entry.result && null != entry.request) {
+                entry.result = admission.admitBatchRecord(entry.request);
+            }
+            if (null == entry.result) {
+                entry.result = check(entry.request);
+            }
+            if (null == entry.result) {
+                accepted.add(entry);
+            }
+        }
+        paymentMetrics.recordStage(PaymentStage.VALIDATION, start);
+
+        int slots = admission.enterBatchChunk(accepted.size());
+        if (slots < 0) {
+            for (Entry entry : accepted) {
+                entry.result = admission.overloaded(entry.request);
+            }
+            accepted.clear();
+        }
+        try {
+            reserve(accepted, day);
+            publish(accepted, day);
+        } finally {
+            admission.exitBatchChunk(slots);
+        }
+        for (Entry entry : chunk) {
+            write(entry.result, out);
+        }
+        out.flush();
+        chunk.clear();
+    }
+
+    private PaymentResponse check(PaymentRequest paymentRequest) {
+        if (null == paymentRequest) {
+            return errorResponse(null, ErrorCodeEnum.VALIDATION_ERROR, PaymentConstant.ERROR_VALIDATION);
+        }
+        BindingResult bindingResult = new BeanPropertyBindingResult(paymentRequest, "paymentRequest");
+        validator.validate(paymentRequest, bindingResult);
+        ResponseEntity<?> rejection = paymentService.checkPayment(paymentRequest, bindingResult);
+        return null == rejection ? null : (PaymentResponse) rejection.getBody();
+    }
+
+    /**
+     * Reserves the tokenKeys of the accepted entries in one pipelined round trip. Entries
+     * whose key is taken, including a repeat of a key earlier in the same chunk, get TOKEN_EXISTS
+     * and are removed from {@code accepted}.
+     */
+    private void reserve(List<Entry> accepted, LocalDate day) {
+        if (accepted.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<Boolean> reserved;
+        try {
+            reserved = tokenDedupStore.reserveAll(accepted.stream().map(entry -> entry.request.getTokenKey()).toList(), day);
+        } catch (RuntimeException e) {
+            logger.error("Failed to reserve {} batch tokenKeys: {}", accepted.size(), e.getMessage(), e);
+            for (Entry entry : accepted) {
+                entry.result = errorResponse(entry.request.getTokenKey(), ErrorCodeEnum.SYSTEM_ERROR, PaymentConstant.ERROR_SYSTEM);
+            }
+            accepted.clear();
+            return;
+        }
+        paymentMetrics.recordStage(PaymentStage.REDIS_RESERVE, start);
+        for (int i = 0; i < accepted.size(); i++) {
+            Entry entry = accepted.get(i);
+            if (!reserved.get(i)) {
+                logger.warn("TokenKey {} already exists for today", entry.request.getTokenKey());
+                entry.result = errorResponse(entry.request.getTokenKey(), ErrorCodeEnum.TOKEN_EXISTS_ERROR, PaymentConstant.ERROR_TOKEN_EXISTS);
+            }
+        }
+        accepted.removeIf(entry -> null != entry.result);
+    }
+
+    /**
+     * Publishes all reserved entries before waiting for any confirm, so a chunk costs about one
+     * broker round trip. Reservations are released as in {@link PaymentService}: on a nack or a
+     * send failure, but not on a confirm timeout.
+     */
+    private void publish(List<Entry> reserved, LocalDate day) {
+        long start = System.nanoTime();
+        for (Entry entry : reserved) {
+            try {
+                entry.confirm = paymentPublisher.publishConfirmed(entry.request, paymentMessageCodecs.encode(entry.request));
+            } catch (IOException e) {
+                logger.error("Failed to serialize payment request: {}", e.getMessage(), e);
+                paymentService.releaseTokenKey(entry.request.getTokenKey(), day);
+                entry.result = errorResponse(null, ErrorCodeEnum.SYSTEM_ERROR, PaymentConstant.ERROR_SYSTEM);
+            }
+        }
+        for (Entry entry : reserved) {
+            if (null == entry.confirm) {
+                continue;
+            }
+            try {
+                entry.confirm.join();
+                entry.result = new PaymentResponse(entry.request.getTokenKey(), ErrorCodeEnum.SUCCESS.getCode(),
+                        ErrorCodeEnum.SUCCESS.getMessage(), LocalDateTime.now());
+                paymentMetrics.producerOutcome(ErrorCodeEnum.SUCCESS);
+            } catch (CompletionException e) {
+                Throwable cause = null != e.getCause() ? e.getCause() : e;
+                if (cause instanceof TimeoutException) {
+                    logger.error("Timed out waiting for RabbitMQ confirm for tokenKey {}", entry.request.getTokenKey());
+                } else {
+                    logger.error("RabbitMQ rejected message, releasing tokenKey {}: {}", entry.request.getTokenKey(), cause.getMessage());
+                    paymentService.releaseTokenKey(entry.request.getTokenKey(), day);
+                }
+                entry.result = errorResponse(entry.request.getTokenKey(), ErrorCodeEnum.SYSTEM_ERROR, PaymentConstant.ERROR_PUBLISH);
+            }
+        }
+        if (!reserved.isEmpty()) {
+            paymentMetrics.recordStage(PaymentStage.PUBLISH, start);
+        }
+    }
+
+    private PaymentResponse errorResponse(String tokenKey, ErrorCodeEnum errorCode, String customMessage) {
+        paymentMetrics.producerOutcome(errorCode);
+        return new PaymentResponse(tokenKey, errorCode.getCode(), customMessage, LocalDateTime.now());
+    }
+
+    private void write(PaymentResponse response, OutputStream out) throws IOException {
+        out.write(responseWriter.writeValueAsBytes(response));
+        out.write('\n');
+    }
+
+    private static final class Entry {
+        private PaymentRequest request;
+        private PaymentResponse result;
+        private CompletableFuture<Void> confirm;
+    }
+}
@@ -1,56 +1,121 @@
 package vn.vnpay.demo2_16102024.server;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.CloseableThreadContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.core.Message;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import vn.vnpay.demo2_16102024.checksum.ChecksumVerifier;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.config.ConcurrencyConfig;
 import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
 import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dedup.TokenDedupStore;
 import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
 import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.metrics.PaymentStage;
+import vn.vnpay.demo2_16102024.producer.PaymentPublisher;
+import vn.vnpay.demo2_16102024.utils.LogSampler;
+import vn.vnpay.demo2_16102024.utils.MaskedPaymentRequest;
+import vn.vnpay.demo2_16102024.utils.PaymentUtils;
 
 import jakarta.validation.Valid;
 import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class PaymentService implements IPaymentService {
 
     private static final Logger logger = LogManager.getLogger(PaymentService.class);
 
-    private final ObjectMapper objectMapper;
-    private final RedisTemplate<String, String> redisTemplate;
-    private final RabbitTemplate rabbitTemplate;
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final PaymentMessageCodecs paymentMessageCodecs;
+    private final TokenDedupStore tokenDedupStore;
+    private final PaymentPublisher paymentPublisher;
+    private final PaymentMetrics paymentMetrics;
+    private final LogSampler logSampler;
+    private final ChecksumVerifier checksumVerifier;
+    private final Executor callbackExecutor;
 
     @Autowired
-    public PaymentService(RabbitTemplate rabbitTemplate, RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper) {
-        this.rabbitTemplate = rabbitTemplate;
-        this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
+    public PaymentService(PaymentPublisher paymentPublisher, TokenDedupStore tokenDedupStore, PaymentMessageCodecs paymentMessageCodecs,
+                          PaymentMetrics paymentMetrics, LogSampler logSampler, ChecksumVerifier checksumVerifier,
+                          @Qualifier(ConcurrencyConfig.CALLBACK_EXECUTOR) Executor callbackExecutor) {
+        this.paymentPublisher = paymentPublisher;
+        this.callbackExecutor = callbackExecutor;
+        this.checksumVerifier = checksumVerifier;
+        this.logSampler = logSampler;
+        this.paymentMetrics = paymentMetrics;
+        this.tokenDedupStore = tokenDedupStore;
+        this.paymentMessageCodecs = paymentMessageCodecs;
     }
 
     @Override
     public ResponseEntity<?> validatePayment(@Valid PaymentRequest paymentRequest, BindingResult bindingResult) {
+        try (CloseableThreadContext.Instance ignored = CloseableThreadContext.put(PaymentConstant.MDC_TOKEN_KEY, paymentRequest.getTokenKey())) {
+            long start = System.nanoTime();
+            ResponseEntity<?> rejection = checkPayment(paymentRequest, bindingResult);
+            paymentMetrics.recordStage(PaymentStage.VALIDATION, start);
+            if (null != rejection) {
+                return rejection;
+            }
+            return sendMessageToQueue(paymentRequest, LocalDate.now());
+        }
+    }
+
+    @Override
+    public CompletableFuture<ResponseEntity<?>> validatePaymentAsync(@Valid PaymentRequest paymentRequest, BindingResult bindingResult) {
+        try (CloseableThreadContext.Instance ignored = CloseableThreadContext.put(PaymentConstant.MDC_TOKEN_KEY, paymentRequest.getTokenKey())) {
+            long start = System.nanoTime();
+            ResponseEntity<?> rejection = checkPayment(paymentRequest, bindingResult);
+            paymentMetrics.recordStage(PaymentStage.VALIDATION, start);
+            if (null != rejection) {
+                return CompletableFuture.completedFuture(rejection);
+            }
+            return sendMessageToQueueAsync(paymentRequest, LocalDate.now());
+        }
+    }
+
+    /**
+     * Returns the error response for a request that fails validation, checksum verification or a business rule,
+     * or null when it passes.
+     */
+    ResponseEntity<?> checkPayment(PaymentRequest paymentRequest, BindingResult bindingResult) {
         if (bindingResult.hasErrors()) {
-            logger.warn("Validation errors found for payment request: {}", paymentRequest);
+            logger.warn("Validation errors found for payment request: {}", MaskedPaymentRequest.of(paymentRequest));
             return handleValidationErrors(bindingResult);
         }
 
-        if (isRealAmountGreaterThanDebitAmount(paymentRequest)) {
+        // Before any Redis, RabbitMQ or MySQL work, so forged payments cost only a MAC
+        if (!checksumVerifier.verify(paymentRequest)) {
+            logger.warn("checkSum mismatch for payment request: {}", MaskedPaymentRequest.of(paymentRequest));
+            return createErrorResponse(paymentRequest.getTokenKey(), ErrorCodeEnum.CHECKSUM_ERROR, PaymentConstant.ERROR_CHECKSUM);
+        }
+
+        if (!PaymentUtils.isPayDateValid(paymentRequest)) {
+            logger.warn("Invalid payDate for payment request. TokenKey: {}, PayDate: {}",
+                    paymentRequest.getTokenKey(),
+                    paymentRequest.getPayDate());
+            return createErrorResponse(paymentRequest.getTokenKey(), ErrorCodeEnum.VALIDATION_ERROR, PaymentConstant.ERROR_PAY_DATE);
+        }
+
+        if (PaymentUtils.isRealAmountGreaterThanDebitAmount(paymentRequest)) {
             logger.warn("Real amount is greater than debit amount. TokenKey: {}, RealAmount: {}, DebitAmount: {}",
                     paymentRequest.getTokenKey(),
                     paymentRequest.getRealAmount(),
@@ -58,73 +123,168 @@ public class PaymentService implements IPaymentService {
             return createErrorResponse(paymentRequest.getTokenKey(), ErrorCodeEnum.VALIDATION_ERROR, PaymentConstant.ERROR_REAL_AMOUNT_GREATER_THAN_DEBIT);
         }
 
-        if (isPromotionCodeRequired(paymentRequest)) {
+        if (PaymentUtils.isPromotionCodeRequired(paymentRequest)) {
             logger.warn("Invalid promotion code for payment request. TokenKey: {}, PromotionCode: {}",
                     paymentRequest.getTokenKey(),
                     paymentRequest.getPromotionCode());
             return createErrorResponse(paymentRequest.getTokenKey(), ErrorCodeEnum.VALIDATION_ERROR, PaymentConstant.ERROR_PROMOTION_CODE);
         }
-
-        String tokenKey = paymentRequest.getTokenKey();
-        String todayKey = String.format("token:%s:%s", tokenKey, LocalDate.now().format(DateTimeFormatter.ISO_DATE));
-        if (redisTemplate.hasKey(todayKey)) {
-            logger.warn("TokenKey {} already exists for today", tokenKey);
-            return createErrorResponse(tokenKey, ErrorCodeEnum.TOKEN_EXISTS_ERROR, PaymentConstant.ERROR_TOKEN_EXISTS);
-        }
-
-
-        return sendMessageToQueue(paymentRequest, todayKey);
+        return null;
     }
 
     private ResponseEntity<?> handleValidationErrors(BindingResult bindingResult) {
-        Map<String, String> errors = new HashMap<>();
-        List<FieldError> fieldErrors = bindingResult.getFieldErrors();
-        for (FieldError error : fieldErrors) {
-            errors.put(error.getField(), error.getDefaultMessage());
+        // Formatted only if the line is written, straight from the field errors. A lone Supplier argument
+        // would bind to warn(String, Object) and be logged as the lambda itself
+        if (logger.isWarnEnabled()) {
+            logger.warn("Validation Error: {}", fieldErrors(bindingResult));
         }
-        logger.warn("Validation Error: {}", errors);
         return createErrorResponse(null, ErrorCodeEnum.VALIDATION_ERROR, PaymentConstant.ERROR_VALIDATION);
     }
 
-    private boolean isRealAmountGreaterThanDebitAmount(PaymentRequest paymentRequest) {
-        return null != paymentRequest.getRealAmount() && null != paymentRequest.getDebitAmount()
-                && paymentRequest.getRealAmount().compareTo(paymentRequest.getDebitAmount()) > 0;
+    private static String fieldErrors(BindingResult bindingResult) {
+        StringBuilder buffer = new StringBuilder(64).append('{');
+        for (FieldError error : bindingResult.getFieldErrors()) {
+            if (buffer.length() > 1) {
+                buffer.append(", ");
+            }
+            buffer.append(error.getField()).append('=').append(error.getDefaultMessage());
+        }
+        return buffer.append('}').toString();
     }
 
-    private boolean isPromotionCodeRequired(PaymentRequest paymentRequest) {
-        return null != paymentRequest.getPromotionCode()
-                && !paymentRequest.getPromotionCode().trim().isEmpty()
-                && null != paymentRequest.getDebitAmount()
-                && null != paymentRequest.getRealAmount()
-                && 0 == paymentRequest.getDebitAmount().compareTo(paymentRequest.getRealAmount());
-    }
+    private ResponseEntity<?> sendMessageToQueue(PaymentRequest paymentRequest, LocalDate day) {
+        // Reserve the tokenKey for the day in Redis (one round trip)
+        ResponseEntity<?> rejection = reserveTokenKey(paymentRequest.getTokenKey(), day);
+        if (null != rejection) {
+            return rejection;
+        }
 
-    private ResponseEntity<?> sendMessageToQueue(PaymentRequest paymentRequest, String todayKey) {
         try {
-            String jsonMessage = objectMapper.writeValueAsString(paymentRequest);
+            long start = System.nanoTime();
+            Message message = paymentMessageCodecs.encode(paymentRequest);
+            paymentMetrics.recordStage(PaymentStage.ENCODE, start);
 
             // Send the message to the RabbitMQ queue
-            rabbitTemplate.convertAndSend(PaymentConstant.QUEUE_NAME, jsonMessage);
-            logger.info("PaymentRequest sent to RabbitMQ: {}", jsonMessage);
-
-            // Save the todayKey in Redis with a 1-day expiration
-            redisTemplate.opsForValue().set(todayKey, "exists", 1, TimeUnit.DAYS);
-            logger.info("TokenKey {} saved in Redis for today", paymentRequest.getTokenKey());
-
-            // Return a successful response with details from paymentRequest
-            return new ResponseEntity<>(
-                    new PaymentResponse(paymentRequest.getTokenKey(), ErrorCodeEnum.SUCCESS.getCode(), ErrorCodeEnum.SUCCESS.getMessage(), LocalDateTime.now()),
-                    HttpStatus.OK
-            );
-        } catch (JsonProcessingException e) {
-            logger.error("Failed to send message to RabbitMQ: {}", e.getMessage(), e);
+            start = System.nanoTime();
+            paymentPublisher.publish(paymentRequest, message);
+            paymentMetrics.recordStage(PaymentStage.PUBLISH, start);
+            if (logSampler.sample()) {
+                logger.info("PaymentRequest sent to RabbitMQ: {}", MaskedPaymentRequest.of(paymentRequest));
+            }
+        } catch (IOException e) {
+            logger.error("Failed to serialize payment request: {}", e.getMessage(), e);
+            releaseTokenKey(paymentRequest.getTokenKey(), day);
             return createErrorResponse(null, ErrorCodeEnum.SYSTEM_ERROR, PaymentConstant.ERROR_SYSTEM);
+        } catch (RuntimeException e) {
+            logger.error("Failed to send message to RabbitMQ, releasing tokenKey {}: {}", paymentRequest.getTokenKey(), e.getMessage(), e);
+            releaseTokenKey(paymentRequest.getTokenKey(), day);
+            return createErrorResponse(paymentRequest.getTokenKey(), ErrorCodeEnum.SYSTEM_ERROR, PaymentConstant.ERROR_PUBLISH);
         }
+
+        return createSuccessResponse(paymentRequest);
+    }
+
+    private CompletableFuture<ResponseEntity<?>> sendMessageToQueueAsync(PaymentRequest paymentRequest, LocalDate day) {
+        ResponseEntity<?> rejection = reserveTokenKey(paymentRequest.getTokenKey(), day);
+        if (null != rejection) {
+            return CompletableFuture.completedFuture(rejection);
+        }
+
+        Message message;
+        try {
+            long start = System.nanoTime();
+            message = paymentMessageCodecs.encode(paymentRequest);
+            paymentMetrics.recordStage(PaymentStage.ENCODE, start);
+        } catch (IOException e) {
+            logger.error("Failed to serialize payment request: {}", e.getMessage(), e);
+            releaseTokenKey(paymentRequest.getTokenKey(), day);
+            return CompletableFuture.completedFuture(createErrorResponse(null, ErrorCodeEnum.SYSTEM_ERROR, PaymentConstant.ERROR_SYSTEM));
+        }
+
+        // Handled on the callback executor rather than the AMQP connection thread that completes the confirm,
+        // since releasing the key calls Redis; the tokenKey is put back in the ThreadContext for its log lines
+        long publishStart = System.nanoTime();
+        return paymentPublisher.publishConfirmed(paymentRequest, message).handleAsync((confirmed, error) -> {
+            try (CloseableThreadContext.Instance ignored = CloseableThreadContext.put(PaymentConstant.MDC_TOKEN_KEY, paymentRequest.getTokenKey())) {
+                return confirmResponse(paymentRequest, day, publishStart, error);
+            }
+        }, callbackExecutor);
+    }
+
+    private ResponseEntity<?> confirmResponse(PaymentRequest paymentRequest, LocalDate day, long publishStart, Throwable error) {
+        paymentMetrics.recordStage(PaymentStage.PUBLISH, publishStart);
+        if (null == error) {
+            if (logSampler.sample()) {
+                logger.info("PaymentRequest confirmed by RabbitMQ for tokenKey {}: {}",
+                        paymentRequest.getTokenKey(), MaskedPaymentRequest.of(paymentRequest));
+            }
+            return createSuccessResponse(paymentRequest);
+        }
+        Throwable cause = error instanceof CompletionException && null != error.getCause() ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            // The broker may still accept the message, so the reservation is kept to block a duplicate retry
+            logger.error("Timed out waiting for RabbitMQ confirm for tokenKey {}", paymentRequest.getTokenKey());
+        } else {
+            logger.error("RabbitMQ rejected message, releasing tokenKey {}: {}", paymentRequest.getTokenKey(), cause.getMessage(), cause);
+            releaseTokenKey(paymentRequest.getTokenKey(), day);
+        }
+        return createErrorResponse(paymentRequest.getTokenKey(), ErrorCodeEnum.SYSTEM_ERROR, PaymentConstant.ERROR_PUBLISH);
+    }
+
+    /**
+     * Returns the error response when the tokenKey is already reserved for the day or cannot be reserved,
+     * or null once it is reserved.
+     */
+    private ResponseEntity<?> reserveTokenKey(String tokenKey, LocalDate day) {
+        long start = System.nanoTime();
+        boolean reserved;
+        try {
+            reserved = tokenDedupStore.reserve(tokenKey, day);
+        } catch (TransientDataAccessResourceException e) {
+            // No Redis bulkhead permit in time: the node is overloaded, so the client should retry later
+            logger.warn("Failed to reserve tokenKey {}: {}", tokenKey, e.getMessage());
+            return createOverloadedResponse(tokenKey);
+        } catch (RuntimeException e) {
+            logger.error("Failed to reserve tokenKey {}: {}", tokenKey, e.getMessage(), e);
+            return createErrorResponse(tokenKey, ErrorCodeEnum.SYSTEM_ERROR, PaymentConstant.ERROR_SYSTEM);
+        }
+        paymentMetrics.recordStage(PaymentStage.REDIS_RESERVE, start);
+        if (!reserved) {
+            logger.warn("TokenKey {} already exists for today", tokenKey);
+            return createErrorResponse(tokenKey, ErrorCodeEnum.TOKEN_EXISTS_ERROR, PaymentConstant.ERROR_TOKEN_EXISTS);
+        }
+        return null;
+    }
+
+    void releaseTokenKey(String tokenKey, LocalDate day) {
+        try {
+            tokenDedupStore.release(tokenKey, day);
+        } catch (RuntimeException e) {
+            // The reservation still expires with the day; the client sees SYSTEM_ERROR either way
+            logger.error("Failed to release tokenKey reservation {} for {}: {}", tokenKey, day, e.getMessage(), e);
+        }
+    }
+
+    private ResponseEntity<PaymentResponse> createSuccessResponse(PaymentRequest paymentRequest) {
+        paymentMetrics.producerOutcome(ErrorCodeEnum.SUCCESS);
+        // Return a successful response with details from paymentRequest
+        return new ResponseEntity<>(
+                new PaymentResponse(paymentRequest.getTokenKey(), ErrorCodeEnum.SUCCESS.getCode(), ErrorCodeEnum.SUCCESS.getMessage(), LocalDateTime.now()),
+                HttpStatus.OK
+        );
     }
 
     private ResponseEntity<PaymentResponse> createErrorResponse(String tokenKey, ErrorCodeEnum errorCode, String customMessage) {
+        paymentMetrics.producerOutcome(errorCode);
         PaymentResponse errorResponse = new PaymentResponse(tokenKey, errorCode.getCode(), customMessage, LocalDateTime.now());
         return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
     }
+
+    // The 503 that admission control answers at max-in-flight
+    private ResponseEntity<PaymentResponse> createOverloadedResponse(String tokenKey) {
+        paymentMetrics.producerOutcome(ErrorCodeEnum.REQUEST_REJECTED);
+        PaymentResponse errorResponse = new PaymentResponse(tokenKey, ErrorCodeEnum.REQUEST_REJECTED.getCode(), PaymentConstant.ERROR_OVERLOADED, LocalDateTime.now());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS).body(errorResponse);
+    }
 }
 
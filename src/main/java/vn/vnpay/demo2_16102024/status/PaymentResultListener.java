@@ -0,0 +1,106 @@
+package vn.vnpay.demo2_16102024.status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.config.RabbitConfig;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consumes the responses {@code PaymentConsumer} publishes to {@code paymentExchange}: the shared
+ * durable queue records each final status in Redis once, and this node's anonymous queue wakes the
+ * status requests waiting here. A status Redis cannot store goes round the retry queue until it is
+ * stored or runs out of attempts, and then waits in the parking queue.
+ */
+@Component
+public class PaymentResultListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentResultListener.class);
+
+    private final PaymentStatusStore paymentStatusStore;
+    private final PaymentJsonCodec paymentJsonCodec;
+    private final RabbitTemplate rabbitTemplate;
+    private final PaymentStatusProperties properties;
+
+    @Autowired
+    public PaymentResultListener(PaymentStatusStore paymentStatusStore, PaymentJsonCodec paymentJsonCodec,
+                                 RabbitTemplate rabbitTemplate, PaymentStatusProperties properties) {
+        this.paymentStatusStore = paymentStatusStore;
+        this.paymentJsonCodec = paymentJsonCodec;
+        this.rabbitTemplate = rabbitTemplate;
+        this.properties = properties;
+    }
+
+    @RabbitListener(queues = RabbitConfig.RESULT_QUEUE_NAME)
+    public void storeResult(Message message) {
+        PaymentResponse response = read(message);
+        if (null == response) {
+            return;
+        }
+        try {
+            paymentStatusStore.save(response);
+        } catch (DataAccessException e) {
+            long attempt = failedAttempts(message) + 1;
+            if (attempt < properties.getResultMaxAttempts()) {
+                // Requeueing would redeliver at once and spin while Redis or its bulkhead is down, so the
+                // rejection dead-letters it to the retry queue, which returns it after the retry delay
+                logger.warn("Could not store the status of tokenKey {} (attempt {}), retrying in {} ms: {}",
+                        response.getTokenKey(), attempt, properties.getResultRetryDelayMs(), e.getMessage());
+                throw new AmqpRejectAndDontRequeueException("Status of tokenKey " + response.getTokenKey() + " not stored", e);
+            }
+            logger.error("Could not store the status of tokenKey {} after {} attempts, parking it in {}: {}",
+                    response.getTokenKey(), attempt, RabbitConfig.RESULT_PARKING_QUEUE_NAME, e.getMessage());
+            rabbitTemplate.send("", RabbitConfig.RESULT_PARKING_QUEUE_NAME, message);
+        }
+    }
+
+    @RabbitListener(queues = "#{paymentResultBroadcastQueue.name}")
+    public void notifyWaiters(Message message) {
+        PaymentResponse response = read(message);
+        if (null != response) {
+            paymentStatusStore.onResult(response);
+        }
+    }
+
+    /**
+     * Times the broker dead-lettered this message from the result queue after a rejection.
+     */
+    static long failedAttempts(Message message) {
+        List<Map<String, ?>> deaths = message.getMessageProperties().getXDeathHeader();
+        if (null == deaths) {
+            return 0;
+        }
+        for (Map<String, ?> death : deaths) {
+            if (RabbitConfig.RESULT_QUEUE_NAME.equals(death.get("queue")) && "rejected".equals(death.get("reason"))
+                    && death.get("count") instanceof Number count) {
+                return count.longValue();
+            }
+        }
+        return 0;
+    }
+
+    private PaymentResponse read(Message message) {
+        try {
+            PaymentResponse response = paymentJsonCodec.readResponse(message.getBody());
+            if (null == response.getTokenKey()) {
+                // Responses to undecodable requests carry no tokenKey and cannot be looked up
+                return null;
+            }
+            return response;
+        } catch (IOException e) {
+            logger.error("Dropping unreadable payment response: {}", e.getMessage());
+            return null;
+        }
+    }
+}
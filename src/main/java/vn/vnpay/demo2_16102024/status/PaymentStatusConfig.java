@@ -0,0 +1,9 @@
+package vn.vnpay.demo2_16102024.status;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableConfigurationProperties(PaymentStatusProperties.class)
+public class PaymentStatusConfig {
+}
@@ -0,0 +1,34 @@
+package vn.vnpay.demo2_16102024.status;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "payment.status")
+public class PaymentStatusProperties {
+
+    /**
+     * How long a final status stays in Redis. Token keys are unique per day, so one day covers their lifetime.
+     */
+    private long ttlHours = 24;
+
+    /**
+     * Final statuses kept in memory on each node, least recently used evicted first.
+     */
+    private int cacheSize = 10_000;
+
+    /**
+     * Upper bound on the wait a client may ask for when long-polling a status.
+     */
+    private long maxWaitMs = 30_000;
+
+    /**
+     * Delay before a response whose status could not be stored in Redis is consumed again.
+     */
+    private long resultRetryDelayMs = 5_000;
+
+    /**
+     * Attempts to store a status before its response is moved to the parking queue.
+     */
+    private int resultMaxAttempts = 60;
+}
@@ -0,0 +1,205 @@
+package vn.vnpay.demo2_16102024.status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+import vn.vnpay.demo2_16102024.config.ConcurrencyConfig;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Final payment status per tokenKey. Statuses are written to a Redis hash with a TTL by whichever
+ * node consumes {@code paymentResultQueue}, and every node keeps the statuses it has seen in a small
+ * LRU cache and completes the status requests waiting on it. A duplicate-token response never
+ * replaces the status of the payment that reserved the token. Cached statuses expire with the Redis
+ * hash, so a tokenKey reused on a later day is not answered with the earlier payment's status.
+ */
+@Component
+public class PaymentStatusStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentStatusStore.class);
+
+    static final String KEY_PREFIX = "payment:status:";
+
+    // KEYS[1] status hash; ARGV respCode, status, payDate, ttl seconds, duplicate-token code, epoch millis.
+    // Returns 1 if stored.
+    static final RedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>("""
+            if ARGV[1] == ARGV[5] and redis.call('HEXISTS', KEYS[1], 'respCode') == 1 then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'respCode', ARGV[1], 'status', ARGV[2], 'payDate', ARGV[3], 'savedAt', ARGV[6])
+            redis.call('EXPIRE', KEYS[1], ARGV[4])
+            return 1
+            """, Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Bulkhead redisBulkhead;
+    private final PaymentStatusProperties properties;
+    private final LongSupplier clock;
+    private final Map<String, Cached> cache;
+    private final Map<String, List<DeferredResult<ResponseEntity<PaymentResponse>>>> waiters = new ConcurrentHashMap<>();
+
+    @Autowired
+    public PaymentStatusStore(RedisTemplate<String, String> redisTemplate,
+                              @Qualifier(ConcurrencyConfig.REDIS_BULKHEAD) Bulkhead redisBulkhead,
+                              PaymentStatusProperties properties) {
+        this(redisTemplate, redisBulkhead, properties, System::currentTimeMillis);
+    }
+
+    PaymentStatusStore(RedisTemplate<String, String> redisTemplate, Bulkhead redisBulkhead, PaymentStatusProperties properties,
+                       LongSupplier clock) {
+        this.redisTemplate = redisTemplate;
+        this.redisBulkhead = redisBulkhead;
+        this.properties = properties;
+        this.clock = clock;
+        int cacheSize = Math.max(1, properties.getCacheSize());
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Stores a final status in Redis.
+     */
+    public void save(PaymentResponse response) {
+        String tokenKey = response.getTokenKey();
+        long ttlSeconds = TimeUnit.HOURS.toSeconds(properties.getTtlHours());
+        Long stored = redisBulkhead.call(() -> redisTemplate.execute(SAVE_SCRIPT, List.of(KEY_PREFIX + tokenKey),
+                nullToEmpty(response.getRespCode()), nullToEmpty(response.getStatus()), nullToEmpty(response.getPayDate()),
+                String.valueOf(ttlSeconds), ErrorCodeEnum.TOKEN_EXISTS_ERROR.getCode(), String.valueOf(clock.getAsLong())));
+        if (null == stored || 0 == stored) {
+            logger.debug("Kept the existing status for tokenKey {}", tokenKey);
+        }
+    }
+
+    /**
+     * Records a final status seen on this node and completes the requests waiting for it.
+     */
+    public void onResult(PaymentResponse response) {
+        PaymentResponse current = remember(response, clock.getAsLong());
+        List<DeferredResult<ResponseEntity<PaymentResponse>>> waiting = waiters.remove(response.getTokenKey());
+        if (null != waiting) {
+            waiting.forEach(waiter -> waiter.setResult(ResponseEntity.ok(current)));
+        }
+    }
+
+    public Optional<PaymentResponse> find(String tokenKey) {
+        PaymentResponse cached;
+        synchronized (cache) {
+            cached = current(tokenKey);
+        }
+        if (null != cached) {
+            return Optional.of(cached);
+        }
+        Map<Object, Object> entries;
+        try {
+            entries = redisBulkhead.call(() -> redisTemplate.<Object, Object>opsForHash().entries(KEY_PREFIX + tokenKey));
+        } catch (DataAccessException e) {
+            logger.warn("Could not read the status of tokenKey {} from Redis: {}", tokenKey, e.getMessage());
+            return Optional.empty();
+        }
+        if (null == entries || entries.isEmpty()) {
+            return Optional.empty();
+        }
+        PaymentResponse response = new PaymentResponse();
+        response.setTokenKey(tokenKey);
+        response.setRespCode(emptyToNull((String) entries.get("respCode")));
+        response.setStatus(emptyToNull((String) entries.get("status")));
+        response.setPayDate(emptyToNull((String) entries.get("payDate")));
+        // Hashes saved before savedAt was written count from now, which at worst keeps them one TTL longer
+        String savedAt = (String) entries.get("savedAt");
+        return Optional.of(remember(response, null == savedAt ? clock.getAsLong() : Long.parseLong(savedAt)));
+    }
+
+    /**
+     * Returns the final status when it is known, otherwise waits up to {@code waitMs} for it to
+     * arrive and answers 202 with a pending status if it does not.
+     */
+    public DeferredResult<ResponseEntity<PaymentResponse>> await(String tokenKey, long waitMs) {
+        long timeoutMs = Math.max(0, Math.min(waitMs, properties.getMaxWaitMs()));
+        DeferredResult<ResponseEntity<PaymentResponse>> result = new DeferredResult<>(timeoutMs, () -> pending(tokenKey));
+        if (timeoutMs > 0) {
+            // Registered before the lookup so a result arriving in between is not missed
+            waiters.computeIfAbsent(tokenKey, k -> new CopyOnWriteArrayList<>()).add(result);
+            result.onCompletion(() -> waiters.computeIfPresent(tokenKey, (k, waiting) -> {
+                waiting.remove(result);
+                return waiting.isEmpty() ? null : waiting;
+            }));
+        }
+        Optional<PaymentResponse> found = find(tokenKey);
+        if (found.isPresent()) {
+            result.setResult(ResponseEntity.ok(found.get()));
+        } else if (0 == timeoutMs) {
+            result.setResult(pending(tokenKey));
+        }
+        return result;
+    }
+
+    int waiting(String tokenKey) {
+        List<DeferredResult<ResponseEntity<PaymentResponse>>> waiting = waiters.get(tokenKey);
+        return null == waiting ? 0 : waiting.size();
+    }
+
+    private PaymentResponse remember(PaymentResponse response, long savedAtMillis) {
+        synchronized (cache) {
+            PaymentResponse current = current(response.getTokenKey());
+            if (null != current && ErrorCodeEnum.TOKEN_EXISTS_ERROR.getCode().equals(response.getRespCode())) {
+                return current;
+            }
+            cache.put(response.getTokenKey(), new Cached(response, savedAtMillis + TimeUnit.HOURS.toMillis(properties.getTtlHours())));
+            return response;
+        }
+    }
+
+    // Called holding the cache lock
+    private PaymentResponse current(String tokenKey) {
+        Cached cached = cache.get(tokenKey);
+        if (null == cached) {
+            return null;
+        }
+        if (clock.getAsLong() >= cached.expiresAtMillis()) {
+            cache.remove(tokenKey);
+            return null;
+        }
+        return cached.response();
+    }
+
+    private static ResponseEntity<PaymentResponse> pending(String tokenKey) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(new PaymentResponse(tokenKey, null, PaymentConstant.STATUS_PENDING, null));
+    }
+
+    private record Cached(PaymentResponse response, long expiresAtMillis) {
+    }
+
+    private static String nullToEmpty(String value) {
+        return null == value ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return null == value || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,60 @@
+package vn.vnpay.demo2_16102024.utils;
+
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caps concurrent calls to a pooled client with a fair semaphore. With virtual threads the
+ * number of callers is no longer bounded by a thread pool, so this is what keeps them from
+ * queueing without limit on the Jedis or Hikari pool. Waiting on a semaphore parks a
+ * virtual thread without pinning its carrier.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final Semaphore permits;
+    private final long acquireTimeoutMs;
+
+    public Bulkhead(String name, int permits, long acquireTimeoutMs) {
+        this.name = name;
+        this.permits = new Semaphore(permits, true);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    public <T> T call(Supplier<T> action) {
+        acquire();
+        try {
+            return action.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    public void run(Runnable action) {
+        acquire();
+        try {
+            action.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    private void acquire() {
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new TransientDataAccessResourceException(
+                        "No " + name + " permit available within " + acquireTimeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransientDataAccessResourceException("Interrupted waiting for a " + name + " permit", e);
+        }
+    }
+}
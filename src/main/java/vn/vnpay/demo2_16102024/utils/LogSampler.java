@@ -0,0 +1,29 @@
+package vn.vnpay.demo2_16102024.utils;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which per-payment success lines are logged. Failures are not sampled. The decision uses
+ * ThreadLocalRandom, so concurrent callers do not contend on a shared counter.
+ */
+@Component
+public class LogSampler {
+
+    private final int rate;
+
+    @Autowired
+    public LogSampler(@Value("${payment.logging.success-sample-rate:100}") int rate) {
+        this.rate = Math.max(1, rate);
+    }
+
+    /**
+     * True for about one call in {@code payment.logging.success-sample-rate}.
+     */
+    public boolean sample() {
+        return 1 == rate || 0 == ThreadLocalRandom.current().nextInt(rate);
+    }
+}
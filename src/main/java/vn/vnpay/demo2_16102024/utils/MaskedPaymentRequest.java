@@ -0,0 +1,72 @@
+package vn.vnpay.demo2_16102024.utils;
+
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+
+/**
+ * Log parameter that renders a payment as one compact line, with mobile and accountNo partly
+ * masked and checkSum left out. Log4j writes it straight into the event's reusable buffer
+ * through {@link #formatTo(StringBuilder)}, so no intermediate String is built.
+ */
+public record MaskedPaymentRequest(PaymentRequest paymentRequest) implements StringBuilderFormattable {
+
+    public static MaskedPaymentRequest of(PaymentRequest paymentRequest) {
+        return new MaskedPaymentRequest(paymentRequest);
+    }
+
+    @Override
+    public void formatTo(StringBuilder buffer) {
+        if (null == paymentRequest) {
+            buffer.append("null");
+            return;
+        }
+        buffer.append("apiID=").append(paymentRequest.getApiID())
+                .append(" user=").append(paymentRequest.getUserName())
+                .append(" mobile=");
+        mask(buffer, paymentRequest.getMobile(), 3, 3);
+        buffer.append(" bank=").append(paymentRequest.getBankCode())
+                .append(" account=");
+        mask(buffer, paymentRequest.getAccountNo(), 0, 4);
+        buffer.append(" payDate=").append(paymentRequest.getPayDate())
+                .append(" debit=").append(paymentRequest.getDebitAmount())
+                .append(" real=").append(paymentRequest.getRealAmount())
+                .append(" order=").append(paymentRequest.getOrderCode())
+                .append(" trace=").append(paymentRequest.getTraceTransfer());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(160);
+        formatTo(buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * {@code value} masked as in the log line, for responses that must not show it in full.
+     */
+    public static String mask(String value, int head, int tail) {
+        if (null == value) {
+            return null;
+        }
+        StringBuilder buffer = new StringBuilder(value.length() + 4);
+        mask(buffer, value, head, tail);
+        return buffer.toString();
+    }
+
+    /**
+     * Keeps the first {@code head} and last {@code tail} characters; values too short to keep
+     * anything hidden are masked completely.
+     */
+    static void mask(StringBuilder buffer, String value, int head, int tail) {
+        if (null == value) {
+            buffer.append("null");
+            return;
+        }
+        int length = value.length();
+        if (length <= head + tail) {
+            buffer.append("*".repeat(length));
+            return;
+        }
+        buffer.append(value, 0, head).append("****").append(value, length - tail, length);
+    }
+}
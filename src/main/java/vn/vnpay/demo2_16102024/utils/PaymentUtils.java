@@ -1,16 +1,59 @@
 package vn.vnpay.demo2_16102024.utils;
 
+import java.time.DateTimeException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
 import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
 
 public class PaymentUtils {
 
+    // STRICT rejects dates such as 20240230 that the default SMART style would move to the end of the month
+    private static final DateTimeFormatter PAY_DATE_FORMATTER = new DateTimeFormatterBuilder()
+            .appendPattern(PaymentConstant.TIMESTAMP_FORMATTER)
+            .parseDefaulting(ChronoField.ERA, 1)
+            .toFormatter()
+            .withResolverStyle(ResolverStyle.STRICT);
+
     public static String formatPayDate(LocalDateTime payDate) {
         if (null == payDate) {
             return null;
         }
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern(PaymentConstant.TIMESTAMP_FORMATTER);
-        return payDate.format(formatter);
+        return payDate.format(PAY_DATE_FORMATTER);
+    }
+
+    public static LocalDateTime parsePayDate(String payDate) {
+        if (null == payDate) {
+            return null;
+        }
+        return LocalDateTime.parse(payDate, PAY_DATE_FORMATTER);
+    }
+
+    /**
+     * True when payDate is absent or a real calendar date and time; the consumer derives payDay from it.
+     */
+    public static boolean isPayDateValid(PaymentRequest paymentRequest) {
+        try {
+            parsePayDate(paymentRequest.getPayDate());
+            return true;
+        } catch (DateTimeException e) {
+            return false;
+        }
+    }
+
+    public static boolean isRealAmountGreaterThanDebitAmount(PaymentRequest paymentRequest) {
+        return null != paymentRequest.getRealAmount() && null != paymentRequest.getDebitAmount()
+                && paymentRequest.getRealAmount().compareTo(paymentRequest.getDebitAmount()) > 0;
+    }
+
+    public static boolean isPromotionCodeRequired(PaymentRequest paymentRequest) {
+        return null != paymentRequest.getPromotionCode()
+                && !paymentRequest.getPromotionCode().trim().isEmpty()
+                && null != paymentRequest.getDebitAmount()
+                && null != paymentRequest.getRealAmount()
+                && 0 == paymentRequest.getDebitAmount().compareTo(paymentRequest.getRealAmount());
     }
 }
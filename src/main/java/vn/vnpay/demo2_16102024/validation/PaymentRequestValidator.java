@@ -0,0 +1,123 @@
+package vn.vnpay.demo2_16102024.validation;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.Errors;
+import org.springframework.validation.Validator;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+
+/**
+ * Hand-compiled form of the Bean Validation constraints declared on {@link PaymentRequest}: the
+ * same fields, error codes and messages as Hibernate Validator reports through Spring, but checked
+ * with direct getter calls and character scans instead of reflective metadata and regular
+ * expressions. Unless {@code payment.validation.report-all-errors} is set, validation stops at the
+ * first failing field in declaration order, since callers only answer a generic validation error.
+ * <p>
+ * Keep this in step with the annotations on PaymentRequest; PaymentRequestValidatorTest compares
+ * the two on every field.
+ */
+@Component
+public class PaymentRequestValidator implements Validator {
+
+    static final String NOT_BLANK = "NotBlank";
+    static final String NOT_NULL = "NotNull";
+    static final String PATTERN = "Pattern";
+
+    private final boolean reportAllErrors;
+
+    @Autowired
+    public PaymentRequestValidator(@Value("${payment.validation.report-all-errors:false}") boolean reportAllErrors) {
+        this.reportAllErrors = reportAllErrors;
+    }
+
+    @Override
+    public boolean supports(Class<?> clazz) {
+        return PaymentRequest.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public void validate(Object target, Errors errors) {
+        PaymentRequest request = (PaymentRequest) target;
+        boolean valid = notBlank(request.getTokenKey(), "tokenKey", "tokenKey must not be empty", errors);
+        if (valid || reportAllErrors) {
+            valid &= notBlank(request.getApiID(), "apiID", "apiID must not be empty", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= digits(request.getMobile(), 10, "mobile", "mobile must be a 10-digit number", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= notBlank(request.getAccountNo(), "accountNo", "accountNo must not be empty", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= digits(request.getPayDate(), 14, "payDate", "payDate must be in format yyyyMMddHHmmss", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= notNull(request.getDebitAmount(), "debitAmount", "debitAmount must not be null", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= notBlank(request.getRespCode(), "respCode", "respCode must not be empty", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= notBlank(request.getRespDesc(), "respDesc", "respDesc must not be empty", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= notBlank(request.getTraceTransfer(), "traceTransfer", "traceTransfer must not be empty", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= notBlank(request.getOrderCode(), "orderCode", "orderCode must not be empty", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= notNull(request.getRealAmount(), "realAmount", "realAmount must not be null", errors);
+        }
+        if (valid || reportAllErrors) {
+            valid &= notBlank(request.getCheckSum(), "checkSum", "checkSum must not be empty", errors);
+        }
+        if (valid || reportAllErrors) {
+            notBlank(request.getUserName(), "userName", "userName must not be empty", errors);
+        }
+    }
+
+    /**
+     * {@code @NotBlank}: Hibernate Validator trims with {@link String#trim()}, so every character up
+     * to U+0020 counts as blank and other Unicode spaces do not.
+     */
+    private static boolean notBlank(String value, String field, String message, Errors errors) {
+        if (null != value) {
+            for (int i = 0; i < value.length(); i++) {
+                if (value.charAt(i) > ' ') {
+                    return true;
+                }
+            }
+        }
+        errors.rejectValue(field, NOT_BLANK, message);
+        return false;
+    }
+
+    private static boolean notNull(Object value, String field, String message, Errors errors) {
+        if (null != value) {
+            return true;
+        }
+        errors.rejectValue(field, NOT_NULL, message);
+        return false;
+    }
+
+    /**
+     * {@code @Pattern} of exactly {@code length} ASCII digits ({@code [0-9]} and {@code \d} without
+     * UNICODE_CHARACTER_CLASS); null is valid, as for every Bean Validation pattern.
+     */
+    private static boolean digits(String value, int length, String field, String message, Errors errors) {
+        if (null == value) {
+            return true;
+        }
+        boolean matches = value.length() == length;
+        for (int i = 0; matches && i < length; i++) {
+            char c = value.charAt(i);
+            matches = c >= '0' && c <= '9';
+        }
+        if (!matches) {
+            errors.rejectValue(field, PATTERN, message);
+        }
+        return matches;
+    }
+}
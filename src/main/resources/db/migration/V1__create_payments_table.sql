@@ -0,0 +1,25 @@
+-- Baseline: the payments table as it was created before the schema was versioned.
+-- Existing databases are baselined at this version (spring.flyway.baseline-on-migrate)
+-- and only receive the migrations that follow.
+CREATE TABLE IF NOT EXISTS payments (
+    id             BIGINT       NOT NULL AUTO_INCREMENT,
+    tokenKey       VARCHAR(64)  NOT NULL,
+    apiID          VARCHAR(64)  NOT NULL,
+    mobile         VARCHAR(10),
+    bankCode       VARCHAR(10),
+    accountNo      VARCHAR(32)  NOT NULL,
+    payDate        VARCHAR(14),
+    additionalData VARCHAR(255),
+    debitAmount    VARCHAR(20)  NOT NULL,
+    respCode       VARCHAR(10)  NOT NULL,
+    respDesc       VARCHAR(255) NOT NULL,
+    traceTransfer  VARCHAR(64)  NOT NULL,
+    messageType    VARCHAR(2),
+    checkSum       VARCHAR(128) NOT NULL,
+    orderCode      VARCHAR(64)  NOT NULL,
+    userName       VARCHAR(64)  NOT NULL,
+    realAmount     VARCHAR(20)  NOT NULL,
+    promotionCode  VARCHAR(64),
+    addValue       VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB DEFAULT CHARSET = utf8mb4;
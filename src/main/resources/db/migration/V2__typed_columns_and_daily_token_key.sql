@@ -0,0 +1,15 @@
+-- Typed payDate/amounts and a stored pay day, so that the daily tokenKey rule is
+-- enforced by a unique key instead of a DATE(payDate) = ? scan.
+-- payDate strings in yyyyMMddHHmmss form convert to DATETIME in place.
+-- Existing (tokenKey, day) duplicates must be removed before this runs.
+ALTER TABLE payments
+    MODIFY COLUMN payDate DATETIME NULL,
+    MODIFY COLUMN debitAmount BIGINT NOT NULL,
+    MODIFY COLUMN realAmount BIGINT NOT NULL,
+    ADD COLUMN payDay DATE NULL AFTER payDate;
+
+UPDATE payments SET payDay = COALESCE(DATE(payDate), CURRENT_DATE) WHERE payDay IS NULL;
+
+ALTER TABLE payments
+    MODIFY COLUMN payDay DATE NOT NULL,
+    ADD UNIQUE KEY uk_payments_token_day (tokenKey, payDay);
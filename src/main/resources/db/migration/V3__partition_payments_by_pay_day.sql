@@ -0,0 +1,16 @@
+-- Range-partition payments by payDay so old days can be dropped as whole partitions and
+-- per-day lookups only touch the partitions of the days they name.
+-- Every unique key of a partitioned table must contain the partitioning column, hence (id, payDay).
+-- Existing rows go to p_history; p_future catches everything from today on until
+-- PaymentPartitionMaintainer splits daily partitions off it.
+ALTER TABLE payments
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, payDay);
+
+SET @partition_payments = CONCAT(
+    'ALTER TABLE payments PARTITION BY RANGE COLUMNS (payDay) (',
+    'PARTITION p_history VALUES LESS THAN (''', DATE_FORMAT(CURRENT_DATE, '%Y-%m-%d'), '''), ',
+    'PARTITION p_future VALUES LESS THAN (MAXVALUE))');
+PREPARE partition_payments FROM @partition_payments;
+EXECUTE partition_payments;
+DEALLOCATE PREPARE partition_payments;
@@ -0,0 +1,8 @@
+-- Secondary indexes for the read API (PaymentQueryService). Each one ends in payDay and InnoDB
+-- appends the primary key (id, payDay), so a lookup by any filter is already ordered by
+-- (payDay, id) and keyset pages seek straight to the cursor instead of sorting or skipping rows.
+ALTER TABLE payments
+    ADD INDEX idx_payments_order_day (orderCode, payDay),
+    ADD INDEX idx_payments_user_day (userName, payDay),
+    ADD INDEX idx_payments_account_day (accountNo, payDay),
+    ADD INDEX idx_payments_day (payDay);
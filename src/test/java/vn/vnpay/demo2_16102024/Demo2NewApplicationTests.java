@@ -3,7 +3,7 @@ package vn.vnpay.demo2_16102024;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {"spring.flyway.enabled=false", "payment.partitions.enabled=false"})
 class Demo2NewApplicationTests {
 
     @Test
@@ -0,0 +1,120 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.server.PaymentService;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AdmissionControlledPaymentServiceTest {
+
+    private PaymentService paymentService;
+    private AdmissionProperties properties;
+    private AdmissionControlledPaymentService admissionControlledPaymentService;
+    private long nanoTime;
+
+    @BeforeEach
+    void setUp() {
+        paymentService = mock(PaymentService.class);
+        properties = new AdmissionProperties();
+        admissionControlledPaymentService = new AdmissionControlledPaymentService(paymentService,
+                new LocalRateLimiter(() -> nanoTime), properties, new PaymentMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void rejectsWith503OnceMaxInFlightIsReachedAndAdmitsAfterCompletion() {
+        properties.setMaxInFlight(2);
+        CompletableFuture<ResponseEntity<?>> pending = new CompletableFuture<>();
+        when(paymentService.validatePaymentAsync(any(), any())).thenReturn(pending);
+
+        admissionControlledPaymentService.validatePaymentAsync(request("u1"), bindingResult());
+        admissionControlledPaymentService.validatePaymentAsync(request("u2"), bindingResult());
+        ResponseEntity<?> rejected = admissionControlledPaymentService.validatePaymentAsync(request("u3"), bindingResult()).join();
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, rejected.getStatusCode());
+        assertEquals(ErrorCodeEnum.REQUEST_REJECTED.getCode(), ((PaymentResponse) rejected.getBody()).getRespCode());
+        assertEquals("1", rejected.getHeaders().getFirst("Retry-After"));
+
+        pending.complete(ResponseEntity.ok().build());
+        assertEquals(0, admissionControlledPaymentService.inFlight());
+        admissionControlledPaymentService.validatePaymentAsync(request("u4"), bindingResult());
+        verify(paymentService, times(3)).validatePaymentAsync(any(), any());
+    }
+
+    @Test
+    void rejectsWith429OverTheUserBurstAndRefillsAtTheRate() {
+        properties.getUser().setRate(2);
+        properties.getUser().setBurst(3);
+        when(paymentService.validatePayment(any(), any())).thenReturn(ResponseEntity.ok().build());
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(HttpStatus.OK, admissionControlledPaymentService.validatePayment(request("user"), bindingResult()).getStatusCode());
+        }
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, admissionControlledPaymentService.validatePayment(request("user"), bindingResult()).getStatusCode());
+        assertEquals(HttpStatus.OK, admissionControlledPaymentService.validatePayment(request("other"), bindingResult()).getStatusCode());
+
+        nanoTime += 500_000_000L;
+        assertEquals(HttpStatus.OK, admissionControlledPaymentService.validatePayment(request("user"), bindingResult()).getStatusCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, admissionControlledPaymentService.validatePayment(request("user"), bindingResult()).getStatusCode());
+    }
+
+    @Test
+    void aUserOverTheirLimitDoesNotDrainTheApiIdBucket() {
+        properties.getApiId().setRate(1);
+        properties.getApiId().setBurst(3);
+        properties.getUser().setRate(1);
+        properties.getUser().setBurst(1);
+        when(paymentService.validatePayment(any(), any())).thenReturn(ResponseEntity.ok().build());
+
+        assertEquals(HttpStatus.OK, admissionControlledPaymentService.validatePayment(request("greedy"), bindingResult()).getStatusCode());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(HttpStatus.TOO_MANY_REQUESTS, admissionControlledPaymentService.validatePayment(request("greedy"), bindingResult()).getStatusCode());
+        }
+
+        assertEquals(HttpStatus.OK, admissionControlledPaymentService.validatePayment(request("u1"), bindingResult()).getStatusCode());
+        assertEquals(HttpStatus.OK, admissionControlledPaymentService.validatePayment(request("u2"), bindingResult()).getStatusCode());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, admissionControlledPaymentService.validatePayment(request("u3"), bindingResult()).getStatusCode());
+    }
+
+    @Test
+    void limitsChangedThroughTheEndpointApplyImmediately() {
+        properties.getUser().setRate(1);
+        properties.getUser().setBurst(1);
+        when(paymentService.validatePayment(any(), any())).thenReturn(ResponseEntity.ok().build());
+        admissionControlledPaymentService.validatePayment(request("user"), bindingResult());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, admissionControlledPaymentService.validatePayment(request("user"), bindingResult()).getStatusCode());
+
+        new AdmissionEndpointWebExtension(properties, new AdmissionEndpoint(properties, admissionControlledPaymentService))
+                .update(null, null, null, null, 0d, null);
+
+        assertEquals(HttpStatus.OK, admissionControlledPaymentService.validatePayment(request("user"), bindingResult()).getStatusCode());
+    }
+
+    private static PaymentRequest request(String userName) {
+        PaymentRequest request = new PaymentRequest();
+        request.setTokenKey("token-" + userName);
+        request.setApiID("restPayment");
+        request.setUserName(userName);
+        return request;
+    }
+
+    private static BindingResult bindingResult() {
+        return new BeanPropertyBindingResult(new Object(), "paymentRequest");
+    }
+}
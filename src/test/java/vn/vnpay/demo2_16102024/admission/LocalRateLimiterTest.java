@@ -0,0 +1,54 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalRateLimiterTest {
+
+    private final AdmissionProperties.Limit limit = new AdmissionProperties.Limit(1, 2);
+
+    private LocalRateLimiter rateLimiter;
+    private long nanoTime;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new LocalRateLimiter(() -> nanoTime);
+    }
+
+    @Test
+    void aFloodOfNewKeysDoesNotResetADrainedBucket() {
+        assertTrue(rateLimiter.tryAcquire("user:victim", limit));
+        assertTrue(rateLimiter.tryAcquire("user:victim", limit));
+
+        for (int i = 0; i < 2 * LocalRateLimiter.MAX_KEYS; i++) {
+            rateLimiter.tryAcquire("user:flood" + i, limit);
+            if (i % 1000 == 0) {
+                nanoTime += 1_000_000L;
+            }
+        }
+
+        // 200 ms later the victim has refilled a fifth of a token, whatever the flood did
+        assertFalse(rateLimiter.tryAcquire("user:victim", limit));
+    }
+
+    @Test
+    void newKeysShareOneBucketAtTheCapUntilFullBucketsCanBeDropped() {
+        for (int i = 0; i < LocalRateLimiter.MAX_KEYS; i++) {
+            assertTrue(rateLimiter.tryAcquire("user:u" + i, limit));
+        }
+
+        assertTrue(rateLimiter.tryAcquire("user:new1", limit));
+        assertTrue(rateLimiter.tryAcquire("user:new2", limit));
+        assertFalse(rateLimiter.tryAcquire("user:new3", limit));
+
+        // One token taken from a bucket of 2 at 1/s: every bucket is full again after a second
+        nanoTime += LocalRateLimiter.SWEEP_INTERVAL_NANOS;
+        assertTrue(rateLimiter.tryAcquire("user:new3", limit));
+        assertTrue(rateLimiter.tryAcquire("user:new3", limit));
+        assertFalse(rateLimiter.tryAcquire("user:new3", limit));
+        assertTrue(rateLimiter.tryAcquire("user:new4", limit));
+    }
+}
@@ -0,0 +1,86 @@
+package vn.vnpay.demo2_16102024.admission;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedisRateLimiterTest {
+
+    private final AdmissionProperties.Limit limit = new AdmissionProperties.Limit(10, 20);
+
+    private RedisTemplate<String, String> redisTemplate;
+    private RedisRateLimiter rateLimiter;
+    private long nanoTime;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        rateLimiter = new RedisRateLimiter(redisTemplate, new Bulkhead("redis", 10, 1000), 5, () -> nanoTime);
+    }
+
+    @Test
+    void servesALeaseLocallyWithOneRoundTrip() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenReturn(5L);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(rateLimiter.tryAcquire("user:u1", limit));
+        }
+
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), eq(List.of("ratelimit:user:u1")), eq("10.0"), eq("20"), eq("5"));
+    }
+
+    @Test
+    void rejectsLocallyAfterAnEmptyGrantUntilATokenCanHaveRefilled() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenReturn(0L, 1L);
+
+        assertFalse(rateLimiter.tryAcquire("user:u1", limit));
+        assertFalse(rateLimiter.tryAcquire("user:u1", limit));
+        nanoTime += 100_000_000L;
+        assertTrue(rateLimiter.tryAcquire("user:u1", limit));
+
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any(), any(), any());
+    }
+
+    @Test
+    void aFloodOfNewKeysDoesNotDropARejectionWindowOrALease() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenReturn(0L, 5L);
+        assertFalse(rateLimiter.tryAcquire("user:victim", limit));
+        assertTrue(rateLimiter.tryAcquire("user:holder", limit));
+
+        for (int i = 0; i < LocalRateLimiter.MAX_KEYS; i++) {
+            rateLimiter.tryAcquire("user:flood" + i, limit);
+        }
+
+        // Past the cap a new key takes one token per round trip instead of a lease
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("ratelimit:user:flood99999")), eq("10.0"), eq("20"), eq("1"));
+        // Neither the victim's rejection window nor the holder's lease was dropped
+        assertFalse(rateLimiter.tryAcquire("user:victim", limit));
+        assertTrue(rateLimiter.tryAcquire("user:holder", limit));
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), eq(List.of("ratelimit:user:victim")), any(), any(), any());
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), eq(List.of("ratelimit:user:holder")), any(), any(), any());
+    }
+
+    @Test
+    void admitsWhenRedisIsUnavailable() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        assertTrue(rateLimiter.tryAcquire("user:u1", limit));
+    }
+}
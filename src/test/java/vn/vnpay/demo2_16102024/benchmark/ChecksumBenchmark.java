@@ -0,0 +1,110 @@
+package vn.vnpay.demo2_16102024.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import vn.vnpay.demo2_16102024.checksum.ChecksumKeyStore;
+import vn.vnpay.demo2_16102024.checksum.ChecksumVerifier;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * checkSum verification as PaymentService runs it (cached key, pooled Mac and buffers) against
+ * the straightforward version that builds a Mac and the canonical String for every payment.
+ * The *VirtualThread variants run each verification on a new virtual thread, as the server does
+ * with virtual threads enabled; subtract virtualThreadBaseline for the cost of the thread itself.
+ * Run with -prof gc to see the allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumBenchmark {
+
+    private static final byte[] SECRET = "benchmark-secret-key".getBytes(StandardCharsets.UTF_8);
+
+    private Path keyFile;
+    private ChecksumVerifier verifier;
+    private PaymentRequest paymentRequest;
+
+    @Setup
+    public void setUp() throws Exception {
+        keyFile = Files.createTempFile("checksum-keys", ".properties");
+        Files.writeString(keyFile, "restPayment=" + Base64.getEncoder().encodeToString(SECRET));
+        verifier = new ChecksumVerifier(new ChecksumKeyStore(keyFile, "HmacSHA256", 60_000, 256));
+        paymentRequest = PaymentRequestFixtures.paymentRequest();
+        paymentRequest.setCheckSum(verifier.sign(paymentRequest));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(keyFile);
+    }
+
+    @Benchmark
+    public boolean verifyPooled() {
+        return verifier.verify(paymentRequest);
+    }
+
+    @Benchmark
+    public boolean verifyNaive() throws Exception {
+        return naive(paymentRequest);
+    }
+
+    @Benchmark
+    public boolean verifyPooledVirtualThread() throws Exception {
+        return onVirtualThread(() -> verifier.verify(paymentRequest));
+    }
+
+    @Benchmark
+    public boolean verifyNaiveVirtualThread() throws Exception {
+        return onVirtualThread(() -> naive(paymentRequest));
+    }
+
+    @Benchmark
+    public boolean virtualThreadBaseline() throws Exception {
+        return onVirtualThread(() -> true);
+    }
+
+    private static boolean onVirtualThread(Callable<Boolean> verification) throws Exception {
+        FutureTask<Boolean> task = new FutureTask<>(verification);
+        Thread.ofVirtual().start(task).join();
+        return task.get();
+    }
+
+    private static boolean naive(PaymentRequest r) throws Exception {
+        String canonical = Stream.of(r.getTokenKey(), r.getApiID(), r.getMobile(), r.getBankCode(), r.getAccountNo(), r.getPayDate(),
+                        r.getDebitAmount(), r.getRealAmount(), r.getRespCode(), r.getTraceTransfer(), r.getOrderCode(), r.getUserName(),
+                        r.getPromotionCode())
+                .map(value -> null == value ? "-" : value.toString().getBytes(StandardCharsets.UTF_8).length + ":" + value)
+                .collect(Collectors.joining("|"));
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+        byte[] digest = mac.doFinal(canonical.getBytes(StandardCharsets.UTF_8));
+        return MessageDigest.isEqual(digest, HexFormat.of().parseHex(r.getCheckSum()));
+    }
+}
@@ -0,0 +1,75 @@
+package vn.vnpay.demo2_16102024.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.consumer.PaymentConsumer;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+import vn.vnpay.demo2_16102024.utils.LogSampler;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PaymentConsumer.receiveMessage end to end, with in-memory stand-ins for MySQL and RabbitMQ,
+ * so the result is the consumer's own CPU cost per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConsumerPipelineBenchmark {
+
+    private PaymentConsumer paymentConsumer;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        PaymentJsonCodec paymentJsonCodec = new PaymentJsonCodec(Jackson2ObjectMapperBuilder.json().build());
+        paymentConsumer = new PaymentConsumer(new InMemoryJdbcTemplate(), new StringRedisTemplate(), new InMemoryRabbitTemplate(),
+                new Bulkhead("jdbc", 10, 1000), new PaymentMetrics(new SimpleMeterRegistry()), paymentJsonCodec,
+                new PaymentMessageCodecs(List.of(paymentJsonCodec), MessageProperties.CONTENT_TYPE_JSON), new LogSampler(100));
+        body = paymentJsonCodec.writeRequest(PaymentRequestFixtures.paymentRequest());
+    }
+
+    @Benchmark
+    public void receiveMessage() {
+        Message message = PaymentJsonCodec.toMessage(body);
+        message.getMessageProperties().setHeader(PaymentConstant.HEADER_ENQUEUED_AT, System.currentTimeMillis());
+        paymentConsumer.receiveMessage(message);
+    }
+
+    static class InMemoryJdbcTemplate extends JdbcTemplate {
+        @Override
+        public int update(String sql, Object... args) {
+            return 1;
+        }
+    }
+
+    static class InMemoryRabbitTemplate extends RabbitTemplate {
+        @Override
+        public void send(String exchange, String routingKey, Message message) {
+        }
+    }
+}
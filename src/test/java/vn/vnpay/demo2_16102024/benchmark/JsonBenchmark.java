@@ -0,0 +1,65 @@
+package vn.vnpay.demo2_16102024.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private ObjectMapper objectMapper;
+    private PaymentRequest paymentRequest;
+    private PaymentResponse paymentResponse;
+    private String paymentRequestJson;
+    private String paymentResponseJson;
+
+    @Setup
+    public void setUp() throws Exception {
+        // Same defaults as the ObjectMapper Spring Boot injects into PaymentService
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        paymentRequest = PaymentRequestFixtures.paymentRequest();
+        paymentResponse = new PaymentResponse(paymentRequest.getTokenKey(), "00", "Success", LocalDateTime.now());
+        paymentRequestJson = objectMapper.writeValueAsString(paymentRequest);
+        paymentResponseJson = objectMapper.writeValueAsString(paymentResponse);
+    }
+
+    @Benchmark
+    public String serializeRequest() throws Exception {
+        return objectMapper.writeValueAsString(paymentRequest);
+    }
+
+    @Benchmark
+    public PaymentRequest deserializeRequest() throws Exception {
+        return objectMapper.readValue(paymentRequestJson, PaymentRequest.class);
+    }
+
+    @Benchmark
+    public String serializeResponse() throws Exception {
+        return objectMapper.writeValueAsString(paymentResponse);
+    }
+
+    @Benchmark
+    public PaymentResponse deserializeResponse() throws Exception {
+        return objectMapper.readValue(paymentResponseJson, PaymentResponse.class);
+    }
+}
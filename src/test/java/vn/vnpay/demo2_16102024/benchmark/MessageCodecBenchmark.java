@@ -0,0 +1,61 @@
+package vn.vnpay.demo2_16102024.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import vn.vnpay.demo2_16102024.codec.BinaryPaymentMessageCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodec;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode cost of each paymentQueue codec. The encoded size of the fixture request is
+ * printed once per fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+    @Param({"json", "binary"})
+    public String codec;
+
+    private PaymentMessageCodec paymentMessageCodec;
+    private PaymentRequest paymentRequest;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws Exception {
+        paymentMessageCodec = "json".equals(codec)
+                ? new PaymentJsonCodec(Jackson2ObjectMapperBuilder.json().build())
+                : new BinaryPaymentMessageCodec();
+        paymentRequest = PaymentRequestFixtures.paymentRequest();
+        body = paymentMessageCodec.encode(paymentRequest);
+        System.out.printf("%n%s payment message: %d bytes%n", codec, body.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return paymentMessageCodec.encode(paymentRequest);
+    }
+
+    @Benchmark
+    public PaymentRequest decode() throws Exception {
+        return paymentMessageCodec.decode(body);
+    }
+}
@@ -0,0 +1,64 @@
+package vn.vnpay.demo2_16102024.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer encode plus consumer decode of one payment message: the old path through a JSON
+ * String and RabbitTemplate's SimpleMessageConverter against the byte[] path through
+ * PaymentJsonCodec. Run with {@code -prof gc} (on by default in the benchmark profile) to compare
+ * allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessagePathBenchmark {
+
+    private ObjectMapper objectMapper;
+    private SimpleMessageConverter messageConverter;
+    private PaymentJsonCodec paymentJsonCodec;
+    private PaymentRequest paymentRequest;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        messageConverter = new SimpleMessageConverter();
+        paymentJsonCodec = new PaymentJsonCodec(objectMapper);
+        paymentRequest = PaymentRequestFixtures.paymentRequest();
+    }
+
+    @Benchmark
+    public PaymentRequest stringPath() throws Exception {
+        String json = objectMapper.writeValueAsString(paymentRequest);
+        Message message = messageConverter.toMessage(json, new MessageProperties());
+        String received = new String(message.getBody(), message.getMessageProperties().getContentEncoding());
+        return objectMapper.readValue(received, PaymentRequest.class);
+    }
+
+    @Benchmark
+    public PaymentRequest bytePath() throws Exception {
+        Message message = PaymentJsonCodec.toMessage(paymentJsonCodec.writeRequest(paymentRequest));
+        return paymentJsonCodec.readRequest(message.getBody());
+    }
+}
@@ -0,0 +1,65 @@
+package vn.vnpay.demo2_16102024.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+import vn.vnpay.demo2_16102024.utils.PaymentUtils;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Business-rule checks done by PaymentService and the payDate formatting done for every PaymentResponse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentRulesBenchmark {
+
+    private PaymentRequest paymentRequest;
+    private LocalDateTime payDate;
+
+    @Setup
+    public void setUp() {
+        paymentRequest = PaymentRequestFixtures.paymentRequest();
+        paymentRequest.setPromotionCode("PROMO2024");
+        payDate = LocalDateTime.of(2024, 10, 16, 10, 10, 10);
+    }
+
+    @Benchmark
+    public boolean isRealAmountGreaterThanDebitAmount() {
+        return PaymentUtils.isRealAmountGreaterThanDebitAmount(paymentRequest);
+    }
+
+    @Benchmark
+    public boolean isPromotionCodeRequired() {
+        return PaymentUtils.isPromotionCodeRequired(paymentRequest);
+    }
+
+    @Benchmark
+    public String formatPayDate() {
+        return PaymentUtils.formatPayDate(payDate);
+    }
+
+    /**
+     * The previous formatPayDate, which built a DateTimeFormatter on every call; kept as the baseline.
+     */
+    @Benchmark
+    public String formatPayDateWithNewFormatter() {
+        return payDate.format(DateTimeFormatter.ofPattern(PaymentConstant.TIMESTAMP_FORMATTER));
+    }
+}
@@ -0,0 +1,107 @@
+package vn.vnpay.demo2_16102024.benchmark;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.ValidatorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+import vn.vnpay.demo2_16102024.validation.PaymentRequestValidator;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+/**
+ * Hibernate Validator, raw and behind Spring's adapter as the controller used it, against the
+ * compiled {@link PaymentRequestValidator} in fail-fast and all-errors modes.
+ */
+public class ValidationBenchmark {
+
+    private ValidatorFactory validatorFactory;
+    private Validator validator;
+    private SpringValidatorAdapter springValidator;
+    private PaymentRequestValidator failFastValidator;
+    private PaymentRequestValidator allErrorsValidator;
+    private PaymentRequest validRequest;
+    private PaymentRequest invalidRequest;
+
+    @Setup
+    public void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        validator = validatorFactory.getValidator();
+        springValidator = new SpringValidatorAdapter(validator);
+        failFastValidator = new PaymentRequestValidator(false);
+        allErrorsValidator = new PaymentRequestValidator(true);
+        validRequest = PaymentRequestFixtures.paymentRequest();
+        invalidRequest = PaymentRequestFixtures.paymentRequest();
+        invalidRequest.setMobile("01452256");
+        invalidRequest.setPayDate("2024-10-16");
+        invalidRequest.setCheckSum(" ");
+    }
+
+    @TearDown
+    public void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<PaymentRequest>> validateValidRequest() {
+        return validator.validate(validRequest);
+    }
+
+    @Benchmark
+    public Set<ConstraintViolation<PaymentRequest>> validateInvalidRequest() {
+        return validator.validate(invalidRequest);
+    }
+
+    @Benchmark
+    public BindingResult springAdapterValidRequest() {
+        return bind(springValidator, validRequest);
+    }
+
+    @Benchmark
+    public BindingResult springAdapterInvalidRequest() {
+        return bind(springValidator, invalidRequest);
+    }
+
+    @Benchmark
+    public BindingResult compiledValidRequest() {
+        return bind(failFastValidator, validRequest);
+    }
+
+    @Benchmark
+    public BindingResult compiledInvalidRequestFailFast() {
+        return bind(failFastValidator, invalidRequest);
+    }
+
+    @Benchmark
+    public BindingResult compiledInvalidRequestAllErrors() {
+        return bind(allErrorsValidator, invalidRequest);
+    }
+
+    private static BindingResult bind(org.springframework.validation.Validator validator, PaymentRequest request) {
+        BindingResult bindingResult = new BeanPropertyBindingResult(request, "paymentRequest");
+        validator.validate(request, bindingResult);
+        return bindingResult;
+    }
+}
@@ -0,0 +1,135 @@
+package vn.vnpay.demo2_16102024.checksum;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChecksumVerifierTest {
+
+    private static final String SECRET = "secret-key-for-tests";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void signsTheCanonicalFormAndVerifiesIt() throws Exception {
+        ChecksumVerifier verifier = verifier(keyFile("restPayment=" + base64(SECRET)), 60_000);
+        PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+        request.setUserName("nguyễn 𝄞\uD800");
+        request.setPromotionCode(null);
+
+        String expected = reference(SECRET, request);
+        assertEquals(expected, verifier.sign(request));
+
+        request.setCheckSum(expected);
+        assertTrue(verifier.verify(request));
+        request.setCheckSum(expected.toUpperCase(Locale.ROOT));
+        assertTrue(verifier.verify(request));
+    }
+
+    @Test
+    void rejectsTamperedPaymentsAndMalformedOrUnknownKeys() throws Exception {
+        ChecksumVerifier verifier = verifier(keyFile("restPayment=" + base64(SECRET)), 60_000);
+        PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+        request.setCheckSum(verifier.sign(request));
+
+        request.setRealAmount(request.getRealAmount() - 1);
+        assertFalse(verifier.verify(request));
+        request.setRealAmount(request.getRealAmount() + 1);
+        assertTrue(verifier.verify(request));
+
+        String checkSum = request.getCheckSum();
+        request.setCheckSum(checkSum.substring(0, 62) + "zz");
+        assertFalse(verifier.verify(request));
+        request.setCheckSum(checkSum.substring(0, 32));
+        assertFalse(verifier.verify(request));
+
+        request.setCheckSum(checkSum);
+        request.setApiID("otherApi");
+        assertFalse(verifier.verify(request));
+    }
+
+    @Test
+    void separatorsInsideValuesAndNullsCannotShiftFields() throws Exception {
+        ChecksumVerifier verifier = verifier(keyFile("restPayment=" + base64(SECRET)), 60_000);
+        PaymentRequest shifted = PaymentRequestFixtures.paymentRequest();
+        shifted.setUserName("x|y");
+        shifted.setPromotionCode(null);
+        PaymentRequest plain = PaymentRequestFixtures.paymentRequest();
+        plain.setUserName("x");
+        plain.setPromotionCode("y");
+        PaymentRequest empty = PaymentRequestFixtures.paymentRequest();
+        empty.setUserName("x|y");
+        empty.setPromotionCode("");
+
+        assertNotEquals(verifier.sign(plain), verifier.sign(shifted));
+        assertNotEquals(verifier.sign(empty), verifier.sign(shifted));
+        assertEquals(reference(SECRET, shifted), verifier.sign(shifted));
+
+        shifted.setCheckSum(verifier.sign(plain));
+        assertFalse(verifier.verify(shifted));
+    }
+
+    @Test
+    void picksUpAChangedKeyFile() throws Exception {
+        Path keyFile = keyFile("restPayment=" + base64(SECRET));
+        ChecksumVerifier verifier = verifier(keyFile, 0);
+        PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+        request.setCheckSum(reference("rotated-secret", request));
+        assertFalse(verifier.verify(request));
+
+        Files.writeString(keyFile, "restPayment=" + base64("rotated-secret"));
+        Files.setLastModifiedTime(keyFile, FileTime.fromMillis(Files.getLastModifiedTime(keyFile).toMillis() + 1000));
+
+        assertTrue(verifier.verify(request));
+    }
+
+    @Test
+    void acceptsEverythingWhenDisabled() {
+        assertTrue(new ChecksumVerifier(null).verify(PaymentRequestFixtures.paymentRequest()));
+    }
+
+    private static ChecksumVerifier verifier(Path keyFile, long refreshMs) throws Exception {
+        return new ChecksumVerifier(new ChecksumKeyStore(keyFile, "HmacSHA256", refreshMs, 4));
+    }
+
+    private Path keyFile(String content) throws Exception {
+        return Files.writeString(directory.resolve("checksum-keys.properties"), content);
+    }
+
+    private static String base64(String secret) {
+        return Base64.getEncoder().encodeToString(secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The documented canonical form, built the obvious way.
+     */
+    private static String reference(String secret, PaymentRequest request) throws Exception {
+        String canonical = Arrays.stream(new Object[]{request.getTokenKey(), request.getApiID(), request.getMobile(), request.getBankCode(),
+                        request.getAccountNo(), request.getPayDate(), request.getDebitAmount(), request.getRealAmount(), request.getRespCode(),
+                        request.getTraceTransfer(), request.getOrderCode(), request.getUserName(), request.getPromotionCode()})
+                .map(value -> null == value ? "-" : value.toString().getBytes(StandardCharsets.UTF_8).length + ":" + value)
+                .collect(Collectors.joining("|"));
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return HexFormat.of().formatHex(mac.doFinal(canonical.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,90 @@
+package vn.vnpay.demo2_16102024.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaymentMessageCodecsTest {
+
+    private final PaymentJsonCodec jsonCodec = new PaymentJsonCodec(new ObjectMapper());
+    private final BinaryPaymentMessageCodec binaryCodec = new BinaryPaymentMessageCodec();
+
+    @Test
+    void binaryRoundTripKeepsLeadingZerosDefaultsAndNulls() throws Exception {
+        PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+        request.setPromotionCode(null);
+        request.setBankCode(null);
+        request.setAdditionalData("ghi chú");
+        request.setDebitAmount(-5);
+
+        PaymentRequest decoded = binaryCodec.decode(binaryCodec.encode(request));
+
+        assertEquals(request, decoded);
+        assertEquals("0145225630", decoded.getMobile());
+        assertNull(decoded.getBankCode());
+        assertEquals(new PaymentRequest().getAddValue(), decoded.getAddValue());
+    }
+
+    @Test
+    void binaryRoundTripOfNonDefaultAndOversizedDigitValues() throws Exception {
+        PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+        request.setAddValue("{\"payMethod\":\"02\"}");
+        request.setMessageType("2");
+        request.setTraceTransfer("0000000000000000000012345");
+        request.setRealAmount(Integer.MAX_VALUE);
+        request.setDebitAmount(Integer.MIN_VALUE);
+
+        assertEquals(request, binaryCodec.decode(binaryCodec.encode(request)));
+    }
+
+    @Test
+    void binaryIsLessThanHalfTheJsonSize() throws Exception {
+        PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+
+        int json = jsonCodec.encode(request).length;
+        int binary = binaryCodec.encode(request).length;
+
+        assertTrue(binary * 2 < json, "binary " + binary + " bytes vs json " + json + " bytes");
+    }
+
+    @Test
+    void binaryRejectsUnknownVersionAndTruncatedBody() throws Exception {
+        byte[] body = binaryCodec.encode(PaymentRequestFixtures.paymentRequest());
+        byte[] future = body.clone();
+        future[0] = (byte) (BinaryPaymentMessageCodec.VERSION + 1);
+
+        assertThrows(IOException.class, () -> binaryCodec.decode(future));
+        assertThrows(IOException.class, () -> binaryCodec.decode(Arrays.copyOf(body, body.length - 3)));
+    }
+
+    @Test
+    void decodesByContentTypeAndEncodesWithProducerCodec() throws Exception {
+        PaymentMessageCodecs codecs = new PaymentMessageCodecs(List.of(jsonCodec, binaryCodec), BinaryPaymentMessageCodec.CONTENT_TYPE);
+        PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+
+        Message binary = codecs.encode(request);
+        Message json = PaymentJsonCodec.toMessage(jsonCodec.encode(request));
+        Message legacy = new Message(new ObjectMapper().writeValueAsString(request).getBytes(), new MessageProperties());
+        legacy.getMessageProperties().setContentType(MessageProperties.CONTENT_TYPE_TEXT_PLAIN);
+        Message unknown = PaymentMessageCodec.toMessage(new byte[0], "application/xml");
+
+        assertEquals(BinaryPaymentMessageCodec.CONTENT_TYPE, binary.getMessageProperties().getContentType());
+        assertEquals(request, codecs.decode(binary));
+        assertEquals(request, codecs.decode(json));
+        assertEquals(request, codecs.decode(legacy));
+        assertThrows(MessageConversionException.class, () -> codecs.decode(unknown));
+    }
+}
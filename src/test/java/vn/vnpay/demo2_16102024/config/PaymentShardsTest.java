@@ -0,0 +1,70 @@
+package vn.vnpay.demo2_16102024.config;
+
+import org.junit.jupiter.api.Test;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaymentShardsTest {
+
+    @Test
+    void spreadsTokenKeysEvenlyAndKeepsEachKeyOnOneShard() {
+        ShardingProperties properties = new ShardingProperties();
+        properties.setShards(8);
+        PaymentShards paymentShards = new PaymentShards(properties);
+        int payments = 80_000;
+
+        Map<String, Integer> perQueue = new HashMap<>();
+        for (int i = 0; i < payments; i++) {
+            PaymentRequest request = request(System.nanoTime() + "FT" + i, "0001100014211002");
+            String queue = paymentShards.queueFor(request);
+            assertEquals(queue, paymentShards.queueFor(request(request.getTokenKey(), "other")));
+            perQueue.merge(queue, 1, Integer::sum);
+        }
+
+        assertEquals(8, perQueue.size());
+        int mean = payments / 8;
+        perQueue.forEach((queue, count) ->
+                assertTrue(Math.abs(count - mean) < mean * 0.05, queue + " received " + count + ", mean " + mean));
+    }
+
+    @Test
+    void accountNoKeySendsAnAccountsPaymentsToOneShard() {
+        ShardingProperties properties = new ShardingProperties();
+        properties.setKey(ShardingProperties.ShardKey.ACCOUNT_NO);
+        PaymentShards paymentShards = new PaymentShards(properties);
+
+        String queue = paymentShards.queueFor(request("token-1", "0001100014211002"));
+
+        for (int i = 2; i < 100; i++) {
+            assertEquals(queue, paymentShards.queueFor(request("token-" + i, "0001100014211002")));
+        }
+    }
+
+    @Test
+    void nodesPreferDisjointShards() {
+        ShardingProperties properties = new ShardingProperties();
+        properties.setShards(6);
+        properties.setNodeCount(3);
+        properties.setNodeIndex(1);
+        PaymentShards paymentShards = new PaymentShards(properties);
+
+        assertEquals("paymentQueue.4", paymentShards.queueName(4));
+        assertTrue(paymentShards.isPreferred(1));
+        assertTrue(paymentShards.isPreferred(4));
+        assertFalse(paymentShards.isPreferred(0));
+        assertFalse(paymentShards.isPreferred(5));
+    }
+
+    private static PaymentRequest request(String tokenKey, String accountNo) {
+        PaymentRequest request = new PaymentRequest();
+        request.setTokenKey(tokenKey);
+        request.setAccountNo(accountNo);
+        return request;
+    }
+}
@@ -0,0 +1,154 @@
+package vn.vnpay.demo2_16102024.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import vn.vnpay.demo2_16102024.codec.BinaryPaymentMessageCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.config.BatchConsumerProperties;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+import vn.vnpay.demo2_16102024.utils.LogSampler;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class PaymentBatchConsumerTest {
+
+    private final PaymentJsonCodec paymentJsonCodec = new PaymentJsonCodec(new ObjectMapper());
+    private final PaymentMessageCodecs paymentMessageCodecs = new PaymentMessageCodecs(
+            List.of(paymentJsonCodec, new BinaryPaymentMessageCodec()), MessageProperties.CONTENT_TYPE_JSON);
+
+    private JdbcTemplate jdbcTemplate;
+    private RabbitTemplate rabbitTemplate;
+    private Channel channel;
+    private BatchConsumerProperties properties;
+    private PaymentBatchConsumer batchConsumer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        channel = mock(Channel.class);
+        properties = new BatchConsumerProperties();
+        Bulkhead jdbcBulkhead = new Bulkhead("jdbc", 10, 1000);
+        PaymentMetrics paymentMetrics = new PaymentMetrics(new SimpleMeterRegistry());
+        PaymentConsumer paymentConsumer = new PaymentConsumer(jdbcTemplate, mock(RedisTemplate.class), rabbitTemplate, jdbcBulkhead, paymentMetrics, paymentJsonCodec,
+                paymentMessageCodecs, new LogSampler(1));
+        TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+        batchConsumer = new PaymentBatchConsumer(paymentConsumer, jdbcTemplate, transactionTemplate, paymentMessageCodecs, properties, jdbcBulkhead, paymentMetrics);
+    }
+
+    @Test
+    void batchUsesOneLookupAndOneBatchInsertAndOneAck() throws Exception {
+        doAnswer(invocation -> {
+            ResultSet resultSet = mock(ResultSet.class);
+            when(resultSet.getString(1)).thenReturn("stored");
+            when(resultSet.getObject(2, LocalDate.class)).thenReturn(LocalDate.of(2024, 10, 16));
+            invocation.<RowCallbackHandler>getArgument(1).processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        List<Message> messages = List.of(message("a", 1), message("stored", 2), message("b", 3), message("a", 4));
+
+        batchConsumer.receiveBatch(messages, channel);
+
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        verify(jdbcTemplate, times(1)).batchUpdate(eq(PaymentConsumer.SQL_INSERT), argThat((List<Object[]> args) -> 2 == args.size()));
+        verify(rabbitTemplate, times(4)).send(anyString(), anyString(), any(Message.class));
+        verify(channel).basicAck(4, true);
+    }
+
+    @Test
+    void transientlyFailedBatchIsRequeuedWhenFallbackIsDisabled() throws Exception {
+        properties.setFallbackToSingle(false);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new QueryTimeoutException("lock wait timeout"));
+
+        batchConsumer.receiveBatch(List.of(message("a", 7), message("b", 8)), channel);
+
+        verify(channel).basicNack(8, true, true);
+        verify(channel, never()).basicAck(8, true);
+        verifyNoInteractions(rabbitTemplate);
+    }
+
+    @Test
+    void duplicateKeyBatchIsProcessedPerMessageRatherThanRequeuedWhenFallbackIsDisabled() throws Exception {
+        properties.setFallbackToSingle(false);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        batchConsumer.receiveBatch(List.of(message("a", 7), message("b", 8)), channel);
+
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        verify(channel).basicAck(8, true);
+        verify(rabbitTemplate, times(2)).send(anyString(), anyString(), any(Message.class));
+    }
+
+    @Test
+    void recordWithImpossiblePayDateIsAnsweredAndTheRestOfTheBatchIsInserted() throws Exception {
+        List<Message> messages = List.of(message("a", 1), message("bad-date", "20241399999999", 2), message("b", 3));
+
+        batchConsumer.receiveBatch(messages, channel);
+
+        verify(jdbcTemplate).batchUpdate(eq(PaymentConsumer.SQL_INSERT), argThat((List<Object[]> args) -> 2 == args.size()));
+        verify(rabbitTemplate).send(anyString(), anyString(), argThat((Message response) ->
+                new String(response.getBody(), StandardCharsets.UTF_8).contains("\"tokenKey\":\"bad-date\"")
+                        && new String(response.getBody(), StandardCharsets.UTF_8).contains("\"respCode\":\"01\"")));
+        verify(channel).basicAck(3, true);
+    }
+
+    @Test
+    void unexpectedFailureRejectsTheBatchInsteadOfLeavingItUnacked() throws Exception {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new CannotCreateTransactionException("no connection"));
+
+        batchConsumer.receiveBatch(List.of(message("a", 5), message("b", 6)), channel);
+
+        verify(channel).basicNack(6, true, false);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+        verify(rabbitTemplate, times(2)).send(anyString(), anyString(), any(Message.class));
+    }
+
+    private Message message(String tokenKey, long deliveryTag) throws Exception {
+        return message(tokenKey, "20241016101010", deliveryTag);
+    }
+
+    private Message message(String tokenKey, String payDate, long deliveryTag) throws Exception {
+        PaymentRequest request = new PaymentRequest();
+        request.setTokenKey(tokenKey);
+        request.setPayDate(payDate);
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setDeliveryTag(deliveryTag);
+        return new Message(paymentJsonCodec.writeRequest(request), messageProperties);
+    }
+}
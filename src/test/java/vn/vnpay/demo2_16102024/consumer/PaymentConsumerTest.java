@@ -0,0 +1,79 @@
+package vn.vnpay.demo2_16102024.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+import vn.vnpay.demo2_16102024.utils.LogSampler;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentConsumerTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private PaymentConsumer paymentConsumer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        PaymentJsonCodec paymentJsonCodec = new PaymentJsonCodec(new ObjectMapper());
+        paymentConsumer = new PaymentConsumer(jdbcTemplate, mock(RedisTemplate.class), mock(RabbitTemplate.class), new Bulkhead("jdbc", 10, 1000),
+                new PaymentMetrics(new SimpleMeterRegistry()), paymentJsonCodec,
+                new PaymentMessageCodecs(List.of(paymentJsonCodec), MessageProperties.CONTENT_TYPE_JSON), new LogSampler(1));
+    }
+
+    @Test
+    void insertsTypedPayDateAndPayDay() {
+        PaymentResponse response = paymentConsumer.processPayment(paymentRequest());
+
+        assertEquals(ErrorCodeEnum.SUCCESS.getCode(), response.getRespCode());
+        ArgumentCaptor<Object[]> captor = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate).update(eq(PaymentConsumer.SQL_INSERT), captor.capture());
+        Object[] arguments = captor.getValue();
+        assertEquals(LocalDateTime.of(2024, 10, 16, 10, 10, 10), arguments[5]);
+        assertEquals(LocalDate.of(2024, 10, 16), arguments[6]);
+    }
+
+    @Test
+    void uniqueKeyViolationMapsToTokenExists() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenThrow(new DuplicateKeyException("uk_payments_token_day"));
+
+        PaymentResponse response = paymentConsumer.processPayment(paymentRequest());
+
+        assertEquals(ErrorCodeEnum.TOKEN_EXISTS_ERROR.getCode(), response.getRespCode());
+        assertEquals("token-1", response.getTokenKey());
+    }
+
+    private static PaymentRequest paymentRequest() {
+        PaymentRequest request = new PaymentRequest();
+        request.setTokenKey("token-1");
+        request.setPayDate("20241016101010");
+        request.setDebitAmount(11200);
+        request.setRealAmount(10000);
+        return request;
+    }
+}
@@ -0,0 +1,78 @@
+package vn.vnpay.demo2_16102024.dedup;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisHashCommands;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HashBucketDedupStoreTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 10, 16);
+
+    private final Set<String> fields = new HashSet<>();
+    private final List<Long> expireAts = new ArrayList<>();
+
+    private RedisTemplate<String, String> redisTemplate;
+    private HashBucketDedupStore store;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> pipeline(invocation.getArgument(0)));
+        store = new HashBucketDedupStore(redisTemplate, new Bulkhead("redis", 10, 1000), 4, ZoneOffset.UTC);
+    }
+
+    @Test
+    void reservesEachTokenOncePerDayAndExpiresTouchedBucketsTogether() {
+        List<Boolean> reserved = store.reserveAll(List.of("t1", "t2", "t1"), DAY);
+
+        assertEquals(List.of(true, true, false), reserved);
+        assertEquals(Set.of(store.bucketKey("t1", DAY), store.bucketKey("t2", DAY)).size(), expireAts.size());
+        assertEquals(DAY.plusDays(2).atStartOfDay(ZoneOffset.UTC).toEpochSecond(), expireAts.get(0));
+        assertFalse(store.reserve("t2", DAY));
+        assertTrue(store.reserve("t2", DAY.plusDays(1)));
+    }
+
+    private List<Object> pipeline(RedisCallback<?> callback) {
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisHashCommands hashCommands = mock(RedisHashCommands.class);
+        RedisKeyCommands keyCommands = mock(RedisKeyCommands.class);
+        when(connection.hashCommands()).thenReturn(hashCommands);
+        when(connection.keyCommands()).thenReturn(keyCommands);
+        List<Object> replies = new ArrayList<>();
+        when(hashCommands.hSetNX(any(byte[].class), any(byte[].class), any(byte[].class))).thenAnswer(invocation -> {
+            String bucket = new String(invocation.<byte[]>getArgument(0), StandardCharsets.UTF_8);
+            String field = new String(invocation.<byte[]>getArgument(1), StandardCharsets.UTF_8);
+            replies.add(fields.add(bucket + "/" + field));
+            return null;
+        });
+        when(keyCommands.expireAt(any(byte[].class), anyLong())).thenAnswer(invocation -> {
+            expireAts.add(invocation.getArgument(1));
+            replies.add(true);
+            return null;
+        });
+        callback.doInRedis(connection);
+        return replies;
+    }
+}
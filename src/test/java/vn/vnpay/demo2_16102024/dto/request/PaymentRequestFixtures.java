@@ -0,0 +1,33 @@
+package vn.vnpay.demo2_16102024.dto.request;
+
+/**
+ * The sample payment shared by tests and benchmarks; callers set only the fields they care about.
+ */
+public final class PaymentRequestFixtures {
+
+    private PaymentRequestFixtures() {
+    }
+
+    /**
+     * A new, valid payment each call, so callers may change it freely.
+     */
+    public static PaymentRequest paymentRequest() {
+        PaymentRequest request = new PaymentRequest();
+        request.setTokenKey("1601353776839FT19310RH6P1");
+        request.setApiID("restPayment");
+        request.setMobile("0145225630");
+        request.setAccountNo("0001100014211002");
+        request.setPayDate("20241016101010");
+        request.setAdditionalData("");
+        request.setDebitAmount(11200);
+        request.setRespCode("00");
+        request.setRespDesc("SUCCESS");
+        request.setTraceTransfer("FT19310RH6P1");
+        request.setCheckSum("40e670720b754324af3d3a0ff49b52fb");
+        request.setOrderCode("FT19310RH6P1");
+        request.setUserName("cntest001");
+        request.setRealAmount(10000);
+        request.setPromotionCode("");
+        return request;
+    }
+}
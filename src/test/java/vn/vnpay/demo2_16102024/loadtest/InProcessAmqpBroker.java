@@ -0,0 +1,379 @@
+package vn.vnpay.demo2_16102024.loadtest;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.BlockedListener;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.impl.AMQImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionListener;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConnectionFactory backed by in-memory queues, so RabbitTemplate and the real listener containers
+ * run without a broker. Channels are proxies implementing what those two call: publish, qos,
+ * passive declare, consume, cancel, ack, nack and reject. Each queue pushes to its first consumer
+ * only, as a single-active-consumer queue does, on a thread of its own and with at most the
+ * consumer's prefetch unacknowledged. Publishes to a named exchange are counted and dropped.
+ */
+public class InProcessAmqpBroker implements ConnectionFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessAmqpBroker.class);
+
+    private final Map<String, BrokerQueue> queues = new ConcurrentHashMap<>();
+    private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong exchangeMessages = new AtomicLong();
+    private final AtomicInteger channelNumbers = new AtomicInteger();
+
+    public void declare(String queueName) {
+        queues.computeIfAbsent(queueName, BrokerQueue::new);
+    }
+
+    /**
+     * Messages published to a named exchange, such as the consumers' payment responses.
+     */
+    public long exchangeMessages() {
+        return exchangeMessages.get();
+    }
+
+    /**
+     * True when no queue holds a ready or unacknowledged message.
+     */
+    public boolean isDrained() {
+        for (BrokerQueue queue : queues.values()) {
+            if (!queue.ready.isEmpty() || queue.unacked.get() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Connection createConnection() {
+        InProcessConnection connection = new InProcessConnection();
+        connectionListeners.forEach(listener -> listener.onCreate(connection));
+        return connection;
+    }
+
+    @Override
+    public String getHost() {
+        return "in-process";
+    }
+
+    @Override
+    public int getPort() {
+        return 0;
+    }
+
+    @Override
+    public String getVirtualHost() {
+        return "/";
+    }
+
+    @Override
+    public String getUsername() {
+        return "in-process";
+    }
+
+    @Override
+    public void addConnectionListener(ConnectionListener listener) {
+        connectionListeners.add(listener);
+    }
+
+    @Override
+    public boolean removeConnectionListener(ConnectionListener listener) {
+        return connectionListeners.remove(listener);
+    }
+
+    @Override
+    public void clearConnectionListeners() {
+        connectionListeners.clear();
+    }
+
+    private BrokerQueue queue(String queueName) {
+        BrokerQueue queue = queues.get(queueName);
+        if (null == queue) {
+            throw new IllegalStateException("NOT_FOUND - no queue '" + queueName + "'");
+        }
+        return queue;
+    }
+
+    private record Delivery(AMQP.BasicProperties properties, byte[] body, boolean redelivered) {
+    }
+
+    private record Unacked(BrokerQueue queue, Subscription subscription, Delivery delivery) {
+    }
+
+    private static final class BrokerQueue {
+
+        private final String name;
+        private final BlockingDeque<Delivery> ready = new LinkedBlockingDeque<>();
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+        private final AtomicInteger unacked = new AtomicInteger();
+
+        BrokerQueue(String name) {
+            this.name = name;
+        }
+
+        boolean isActive(Subscription subscription) {
+            return !subscriptions.isEmpty() && subscriptions.get(0) == subscription;
+        }
+    }
+
+    /**
+     * One basicConsume: a thread that pushes ready messages while it holds the active spot and
+     * has prefetch credit left.
+     */
+    private final class Subscription implements Runnable {
+
+        private final InProcessChannel channel;
+        private final BrokerQueue queue;
+        private final String consumerTag;
+        private final Consumer consumer;
+        private final boolean autoAck;
+        private final Semaphore credit;
+        private volatile boolean cancelled;
+
+        Subscription(InProcessChannel channel, BrokerQueue queue, String consumerTag, Consumer consumer, boolean autoAck) {
+            this.channel = channel;
+            this.queue = queue;
+            this.consumerTag = consumerTag;
+            this.consumer = consumer;
+            this.autoAck = autoAck;
+            this.credit = new Semaphore(autoAck || channel.prefetch <= 0 ? Integer.MAX_VALUE : channel.prefetch);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!cancelled) {
+                    if (!queue.isActive(this) || !credit.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                        if (!queue.isActive(this)) {
+                            Thread.sleep(10);
+                        }
+                        continue;
+                    }
+                    Delivery delivery = queue.ready.poll(10, TimeUnit.MILLISECONDS);
+                    if (null == delivery) {
+                        credit.release();
+                        continue;
+                    }
+                    long deliveryTag = channel.deliveryTags.incrementAndGet();
+                    if (autoAck) {
+                        credit.release();
+                    } else {
+                        queue.unacked.incrementAndGet();
+                        channel.unacked.put(deliveryTag, new Unacked(queue, this, delivery));
+                    }
+                    consumer.handleDelivery(consumerTag, new Envelope(deliveryTag, delivery.redelivered(), "", queue.name),
+                            delivery.properties(), delivery.body());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Delivery to {} on {} failed: {}", consumerTag, queue.name, e.getMessage(), e);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            queue.subscriptions.remove(this);
+        }
+    }
+
+    private final class InProcessConnection implements Connection {
+
+        private volatile boolean open = true;
+
+        @Override
+        public Channel createChannel(boolean transactional) {
+            InProcessChannel channel = new InProcessChannel(channelNumbers.incrementAndGet());
+            return (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[]{Channel.class}, channel::invoke);
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public int getLocalPort() {
+            return 0;
+        }
+
+        @Override
+        public void addBlockedListener(BlockedListener listener) {
+        }
+
+        @Override
+        public boolean removeBlockedListener(BlockedListener listener) {
+            return false;
+        }
+    }
+
+    private final class InProcessChannel {
+
+        private final int number;
+        private final AtomicLong deliveryTags = new AtomicLong();
+        private final NavigableMap<Long, Unacked> unacked = new ConcurrentSkipListMap<>();
+        private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+        private volatile int prefetch;
+        private volatile boolean open = true;
+
+        InProcessChannel(int number) {
+            this.number = number;
+        }
+
+        Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            try {
+                return dispatch(proxy, method, null == args ? new Object[0] : args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Object dispatch(Object proxy, Method method, Object[] args) throws Exception {
+            switch (method.getName()) {
+                case "basicPublish":
+                    // (exchange, routingKey[, mandatory[, immediate]], properties, body)
+                    publish((String) args[0], (String) args[1], (AMQP.BasicProperties) args[args.length - 2], (byte[]) args[args.length - 1]);
+                    return null;
+                case "basicQos":
+                    // (prefetchCount[, global]) or (prefetchSize, prefetchCount, global)
+                    prefetch = (Integer) args[args.length == 3 ? 1 : 0];
+                    return null;
+                case "queueDeclarePassive":
+                    BrokerQueue declared = queue((String) args[0]);
+                    return new AMQImpl.Queue.DeclareOk(declared.name, declared.ready.size(), declared.subscriptions.size());
+                case "basicConsume":
+                    return consume(args);
+                case "basicCancel":
+                    cancel((String) args[0]);
+                    return null;
+                case "basicAck":
+                    settle((Long) args[0], (Boolean) args[1], false);
+                    return null;
+                case "basicNack":
+                    settle((Long) args[0], (Boolean) args[1], (Boolean) args[2]);
+                    return null;
+                case "basicReject":
+                    settle((Long) args[0], false, (Boolean) args[1]);
+                    return null;
+                case "close":
+                case "abort":
+                    close();
+                    return null;
+                case "isOpen":
+                    return open;
+                case "getChannelNumber":
+                    return number;
+                case "getCloseReason":
+                case "getConnection":
+                    return null;
+                case "addShutdownListener":
+                case "removeShutdownListener":
+                case "addReturnListener":
+                case "addConfirmListener":
+                    return null;
+                case "getNextPublishSeqNo":
+                    return 0L;
+                case "toString":
+                    return "InProcessChannel#" + number;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    throw new UnsupportedOperationException("In-process broker does not support Channel." + method.getName());
+            }
+        }
+
+        private void publish(String exchange, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+            if (null != exchange && !exchange.isEmpty()) {
+                exchangeMessages.incrementAndGet();
+                return;
+            }
+            queue(routingKey).ready.add(new Delivery(properties, body, false));
+        }
+
+        // (queue, autoAck, consumerTag, noLocal, exclusive, arguments, callback) and the shorter overloads
+        private String consume(Object[] args) {
+            BrokerQueue queue = queue((String) args[0]);
+            boolean autoAck = args.length > 2 && args[1] instanceof Boolean ack && ack;
+            String consumerTag = args.length > 3 && args[2] instanceof String tag && !tag.isEmpty()
+                    ? tag : "amq.ctag-" + number + "-" + subscriptions.size();
+            Consumer consumer = (Consumer) args[args.length - 1];
+            Subscription subscription = new Subscription(this, queue, consumerTag, consumer, autoAck);
+            subscriptions.add(subscription);
+            queue.subscriptions.add(subscription);
+            consumer.handleConsumeOk(consumerTag);
+            Thread.ofPlatform().daemon().name("in-process-" + queue.name + "-" + consumerTag).start(subscription);
+            return consumerTag;
+        }
+
+        private void cancel(String consumerTag) {
+            for (Subscription subscription : subscriptions) {
+                if (subscription.consumerTag.equals(consumerTag)) {
+                    subscription.cancel();
+                    subscriptions.remove(subscription);
+                    subscription.consumer.handleCancelOk(consumerTag);
+                }
+            }
+        }
+
+        private void settle(long deliveryTag, boolean multiple, boolean requeue) {
+            List<Unacked> settled = new ArrayList<>();
+            if (multiple) {
+                NavigableMap<Long, Unacked> upTo = unacked.headMap(deliveryTag, true);
+                settled.addAll(upTo.values());
+                upTo.clear();
+            } else {
+                Unacked one = unacked.remove(deliveryTag);
+                if (null != one) {
+                    settled.add(one);
+                }
+            }
+            for (Unacked entry : settled) {
+                if (requeue) {
+                    entry.queue().ready.addFirst(new Delivery(entry.delivery().properties(), entry.delivery().body(), true));
+                }
+                entry.queue().unacked.decrementAndGet();
+                entry.subscription().credit.release();
+            }
+        }
+
+        private void close() {
+            open = false;
+            for (Subscription subscription : subscriptions) {
+                subscription.cancel();
+            }
+            subscriptions.clear();
+            settle(Long.MAX_VALUE, true, true);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package vn.vnpay.demo2_16102024.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import vn.vnpay.demo2_16102024.config.RabbitConfig;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.consumer.PaymentConsumer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * RabbitTemplate that never opens a connection. Payments published to a queue are acked at once
+ * and handed to {@link PaymentConsumer} on one thread per queue, which keeps the per-shard order
+ * a single active consumer gives; payment responses sent to the exchange are counted and dropped.
+ * Records enqueue-to-insert lag from the {@link PaymentConstant#HEADER_ENQUEUED_AT} header once
+ * the consumer has handled a message.
+ */
+public class InProcessRabbitTemplate extends RabbitTemplate {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessRabbitTemplate.class);
+
+    private final Supplier<PaymentConsumer> paymentConsumer;
+    private final Map<String, ExecutorService> queues = new ConcurrentHashMap<>();
+    private final Histogram lagMillis = new ConcurrentHistogram(3);
+    private final AtomicLong responses = new AtomicLong();
+
+    public InProcessRabbitTemplate(Supplier<PaymentConsumer> paymentConsumer) {
+        this.paymentConsumer = paymentConsumer;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // No ConnectionFactory to check
+    }
+
+    @Override
+    public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+        if (RabbitConfig.EXCHANGE_NAME.equals(exchange)) {
+            responses.incrementAndGet();
+        } else {
+            String queueName = null == exchange || exchange.isEmpty() ? routingKey : exchange + "/" + routingKey;
+            queues.computeIfAbsent(queueName, this::newQueue).execute(() -> deliver(message));
+        }
+        if (null != correlationData) {
+            correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+        }
+    }
+
+    private void deliver(Message message) {
+        try {
+            paymentConsumer.get().receiveMessage(message);
+        } catch (RuntimeException e) {
+            logger.error("Payment consumer failed: {}", e.getMessage(), e);
+        }
+        Object enqueuedAt = message.getMessageProperties().getHeader(PaymentConstant.HEADER_ENQUEUED_AT);
+        if (enqueuedAt instanceof Number millis) {
+            lagMillis.recordValue(Math.max(0, System.currentTimeMillis() - millis.longValue()));
+        }
+    }
+
+    private ExecutorService newQueue(String queueName) {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "in-process-" + queueName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Waits until every queue has delivered what was published so far, or {@code timeoutMs} passes.
+     */
+    public boolean drain(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (ExecutorService queue : queues.values()) {
+            queue.shutdown();
+            if (!queue.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Histogram lagMillis() {
+        return lagMillis;
+    }
+
+    public long responses() {
+        return responses.get();
+    }
+}
@@ -0,0 +1,295 @@
+package vn.vnpay.demo2_16102024.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import vn.vnpay.demo2_16102024.Demo2NewApplication;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Starts the application against in-process stand-ins for Redis, RabbitMQ and MySQL and drives
+ * {@code POST /api/payment/process} at a fixed rate with a share of repeated tokenKeys. Load is
+ * open-loop: requests are sent on schedule whether or not earlier ones have answered, and latency
+ * is measured from the scheduled send time, so a stalled server shows up in the percentiles
+ * instead of slowing the load down. With loadtest.connections set, load is closed-loop instead: that
+ * many clients each keep one request outstanding, sending the next as soon as the last answers, to
+ * hold that many connections open; latency is then measured from the actual send. Writes a JSON
+ * summary for regression tracking.
+ * <p>
+ * System properties: loadtest.rps (200), loadtest.connections (0, open-loop), loadtest.duration-seconds (30),
+ * loadtest.warmup-seconds (5), loadtest.duplicate-ratio (0.05), loadtest.users (1000),
+ * loadtest.result (target/loadtest-result.json). Application properties such as
+ * --spring.threads.virtual.enabled=true are passed as arguments.
+ */
+public final class LoadTestRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    private static final DateTimeFormatter PAY_DATE = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final Histogram latencyMicros = new ConcurrentHistogram(3);
+    private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<CompletableFuture<?>> inFlight = new ConcurrentLinkedQueue<>();
+    private final Random random = new Random(20241016);
+
+    private final int rps = Integer.getInteger("loadtest.rps", 200);
+    private final int connections = Integer.getInteger("loadtest.connections", 0);
+    private final int durationSeconds = Integer.getInteger("loadtest.duration-seconds", 30);
+    private final int warmupSeconds = Integer.getInteger("loadtest.warmup-seconds", 5);
+    private final double duplicateRatio = Double.parseDouble(System.getProperty("loadtest.duplicate-ratio", "0.05"));
+    private final int users = Integer.getInteger("loadtest.users", 1000);
+    private final Path result = Path.of(System.getProperty("loadtest.result", "target/loadtest-result.json"));
+
+    private boolean virtualThreads;
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadTestRunner().run(args);
+        System.exit(0);
+    }
+
+    private void run(String[] args) throws Exception {
+        // A devtools restart would run main again in a new class loader, with a second Redis stand-in
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        try (RespServer redis = RespServer.start(0);
+             ConfigurableApplicationContext context = new SpringApplicationBuilder(Demo2NewApplication.class)
+                     .profiles("loadtest")
+                     .run(arguments(args, "--server.port=0", "--spring.data.redis.port=" + redis.port()));
+             ExecutorService clientExecutor = Executors.newVirtualThreadPerTaskExecutor()) {
+            URI uri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/payment/process");
+            HttpClient client = HttpClient.newBuilder().executor(clientExecutor).version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5)).build();
+            InProcessRabbitTemplate broker = context.getBean(InProcessRabbitTemplate.class);
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            virtualThreads = context.getEnvironment().getProperty("spring.threads.virtual.enabled", Boolean.class, false);
+
+            logger.info("Warming up for {} s with {}", warmupSeconds, load());
+            drive(client, uri, warmupSeconds, new String[1024]);
+            awaitInFlight();
+            latencyMicros.reset();
+            outcomes.clear();
+            broker.lagMillis().reset();
+            long rowsBefore = count(jdbcTemplate);
+            long responsesBefore = broker.responses();
+
+            logger.info("Measuring for {} s with {} and {} duplicate tokenKeys", durationSeconds, load(), duplicateRatio);
+            long start = System.nanoTime();
+            long sent = drive(client, uri, durationSeconds, new String[1024]);
+            awaitInFlight();
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            boolean drained = broker.drain(60_000);
+            long inserted = count(jdbcTemplate) - rowsBefore;
+
+            ObjectNode report = report(sent, elapsedSeconds, inserted, broker.responses() - responsesBefore, drained, broker.lagMillis());
+            Files.createDirectories(result.toAbsolutePath().getParent());
+            objectMapper.writeValue(result.toFile(), report);
+            System.out.println(objectMapper.writeValueAsString(report));
+            logger.info("Load test report written to {}", result.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Command-line arguments outrank application.properties, unlike SpringApplicationBuilder.properties.
+     */
+    private static String[] arguments(String[] args, String... overrides) {
+        String[] all = Arrays.copyOf(overrides, overrides.length + args.length);
+        System.arraycopy(args, 0, all, overrides.length, args.length);
+        return all;
+    }
+
+    private String load() {
+        return connections > 0 ? connections + " connections" : rps + " rps";
+    }
+
+    private long drive(HttpClient client, URI uri, int seconds, String[] recent) throws InterruptedException {
+        return connections > 0 ? driveConnections(client, uri, seconds, recent) : driveRate(client, uri, seconds, recent);
+    }
+
+    /**
+     * Sends {@code rps} requests per second for {@code seconds}, remembering recent tokenKeys in
+     * {@code recent} to draw the duplicates from.
+     */
+    private long driveRate(HttpClient client, URI uri, int seconds, String[] recent) {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rps);
+        long total = (long) seconds * rps;
+        long start = System.nanoTime();
+        int remembered = 0;
+        for (long i = 0; i < total; i++) {
+            long scheduled = start + i * periodNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String tokenKey;
+            if (remembered > 0 && random.nextDouble() < duplicateRatio) {
+                tokenKey = recent[random.nextInt(Math.min(remembered, recent.length))];
+            } else {
+                tokenKey = "LT" + start + "-" + i;
+                recent[remembered++ % recent.length] = tokenKey;
+            }
+            inFlight.add(client.sendAsync(request(uri, tokenKey, "user" + random.nextInt(users)), HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, error) -> record(scheduled, response, error)));
+        }
+        return total;
+    }
+
+    /**
+     * Runs {@code connections} virtual-thread clients for {@code seconds}, each sending its next
+     * request when the previous one answers. Duplicates are drawn from the tokenKeys in {@code recent}.
+     */
+    private long driveConnections(HttpClient client, URI uri, int seconds, String[] recent) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong sequence = new AtomicLong();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < connections; c++) {
+                clients.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() - deadline < 0) {
+                        long i = sequence.getAndIncrement();
+                        String tokenKey = "LT" + start + "-" + i;
+                        if (i > recent.length && random.nextDouble() < duplicateRatio) {
+                            tokenKey = recent[random.nextInt(recent.length)];
+                        } else {
+                            recent[(int) (i % recent.length)] = tokenKey;
+                        }
+                        long sent = System.nanoTime();
+                        try {
+                            record(sent, client.send(request(uri, tokenKey, "user" + random.nextInt(users)), HttpResponse.BodyHandlers.ofString()), null);
+                        } catch (IOException e) {
+                            record(sent, null, e);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                    }
+                });
+            }
+        }
+        return sequence.get();
+    }
+
+    private static HttpRequest request(URI uri, String tokenKey, String userName) {
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString(body(tokenKey, userName)))
+                .build();
+    }
+
+    private void record(long scheduled, HttpResponse<String> response, Throwable error) {
+        latencyMicros.recordValue(Math.max(0, (System.nanoTime() - scheduled) / 1000));
+        String outcome;
+        if (null != error) {
+            outcome = "error " + error.getClass().getSimpleName();
+        } else {
+            outcome = response.statusCode() + " " + respCode(response.body());
+        }
+        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+    }
+
+    private String respCode(String body) {
+        try {
+            JsonNode respCode = objectMapper.readTree(body).get("respCode");
+            return null == respCode ? "-" : respCode.asText();
+        } catch (IOException e) {
+            return "-";
+        }
+    }
+
+    private void awaitInFlight() {
+        CompletableFuture<?> future;
+        while (null != (future = inFlight.poll())) {
+            try {
+                future.get(60, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                // Already counted as an error outcome
+            }
+        }
+    }
+
+    private ObjectNode report(long sent, double elapsedSeconds, long inserted, long consumerResponses, boolean drained, Histogram lagMillis) {
+        ObjectNode report = objectMapper.createObjectNode();
+        if (connections > 0) {
+            report.put("connections", connections);
+        } else {
+            report.put("targetRps", rps);
+        }
+        report.put("virtualThreads", virtualThreads);
+        report.put("durationSeconds", durationSeconds);
+        report.put("duplicateRatio", duplicateRatio);
+        report.put("sent", sent);
+        report.put("achievedRps", Math.round(sent / elapsedSeconds * 10) / 10.0);
+        Map<String, Long> outcomeCounts = new LinkedHashMap<>();
+        outcomes.entrySet().stream().sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> outcomeCounts.put(entry.getKey(), entry.getValue().sum()));
+        report.set("outcomes", objectMapper.valueToTree(outcomeCounts));
+        report.set("latencyMs", percentiles(latencyMicros, 1000.0));
+        report.put("inserted", inserted);
+        report.put("consumerResponses", consumerResponses);
+        report.put("insertsPerSecond", Math.round(inserted / elapsedSeconds * 10) / 10.0);
+        report.put("consumerDrained", drained);
+        report.set("enqueueToInsertLagMs", percentiles(lagMillis, 1.0));
+        return report;
+    }
+
+    private ObjectNode percentiles(Histogram histogram, double scale) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("count", histogram.getTotalCount());
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            node.put("p" + (percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile)),
+                    histogram.getValueAtPercentile(percentile) / scale);
+        }
+        node.put("max", histogram.getMaxValue() / scale);
+        return node;
+    }
+
+    private static long count(JdbcTemplate jdbcTemplate) {
+        Long rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payments", Long.class);
+        return null == rows ? 0 : rows;
+    }
+
+    private static String body(String tokenKey, String userName) {
+        return """
+                {"tokenKey":"%s","apiID":"restPayment","mobile":"0145225630","bankCode":"970445","accountNo":"0001100014211002",\
+                "payDate":"%s","additionalData":"","debitAmount":11200,"respCode":"00","respDesc":"SUCCESS",\
+                "traceTransfer":"FT19310RH6P1","messageType":"1","checkSum":"40e670720b754324af3d3a0ff49b52fb",\
+                "orderCode":"FT19310RH6P1","userName":"%s","realAmount":10000,"promotionCode":""}"""
+                .formatted(tokenKey, LocalDateTime.now().format(PAY_DATE), userName);
+    }
+}
@@ -0,0 +1,40 @@
+package vn.vnpay.demo2_16102024.loadtest;
+
+import org.springframework.amqp.rabbit.config.AbstractRabbitListenerContainerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import vn.vnpay.demo2_16102024.consumer.PaymentConsumer;
+
+/**
+ * Replaces RabbitMQ for the load test. Redis and MySQL are pointed at their stand-ins by
+ * application-loadtest.properties.
+ */
+@Configuration
+@Profile("loadtest")
+public class LoadTestStandIns {
+
+    @Bean
+    public InProcessRabbitTemplate rabbitTemplate(ObjectProvider<PaymentConsumer> paymentConsumer) {
+        return new InProcessRabbitTemplate(paymentConsumer::getObject);
+    }
+
+    /**
+     * Keeps every listener container stopped, including the shard containers whose endpoints ask
+     * to start, so nothing tries to reach a broker. The customizer runs after the endpoint settings.
+     */
+    @Bean
+    public static BeanPostProcessor stoppedListenerContainers() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof AbstractRabbitListenerContainerFactory<?> factory) {
+                    factory.setContainerCustomizer(container -> container.setAutoStartup(false));
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,273 @@
+package vn.vnpay.demo2_16102024.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process stand-in for Redis that speaks enough RESP2 for the payment hot path: SET with NX/EX,
+ * GET, DEL/UNLINK, EXISTS, HSET/HSETNX/HGETALL, EXPIRE/EXPIREAT and the connection handshake.
+ * Expiry is checked lazily on access. Other commands are answered with an error so that a
+ * missing command shows up in the load-test log instead of being silently ignored.
+ */
+public class RespServer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RespServer.class);
+
+    private final Map<String, Entry> data = new ConcurrentHashMap<>();
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "resp-stand-in");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private RespServer(ServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+    }
+
+    /**
+     * Starts listening on {@code port} on the loopback interface; 0 picks a free port.
+     */
+    public static RespServer start(int port) throws IOException {
+        RespServer server = new RespServer(new ServerSocket(port, 128, InetAddress.getLoopbackAddress()));
+        server.connections.execute(server::accept);
+        logger.info("Redis stand-in listening on port {}", server.port());
+        return server;
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Redis stand-in failed to accept a connection: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket; InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (true) {
+                List<String> command = readCommand(in);
+                execute(command, out);
+                // Pipelined commands are answered together once the client stops sending
+                if (0 == in.available()) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException e) {
+            // Client closed the connection
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                logger.debug("Redis stand-in connection closed: {}", e.getMessage());
+            }
+        }
+    }
+
+    void execute(List<String> command, OutputStream out) throws IOException {
+        String name = command.get(0).toUpperCase();
+        switch (name) {
+            case "PING" -> simple(out, "PONG");
+            case "CLIENT", "SELECT", "AUTH", "HELLO" -> simple(out, "OK");
+            case "SET" -> set(command, out);
+            case "GET" -> {
+                Entry entry = live(command.get(1));
+                bulk(out, null == entry || !(entry.value instanceof String value) ? null : value);
+            }
+            case "DEL", "UNLINK" -> {
+                long removed = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    removed += null != live(command.get(i)) && null != data.remove(command.get(i)) ? 1 : 0;
+                }
+                integer(out, removed);
+            }
+            case "EXISTS" -> integer(out, null != live(command.get(1)) ? 1 : 0);
+            case "HSET", "HSETNX" -> hashSet(command, "HSETNX".equals(name), out);
+            case "HGETALL" -> {
+                Entry entry = live(command.get(1));
+                Map<?, ?> hash = null == entry || !(entry.value instanceof Map<?, ?> map) ? Map.of() : map;
+                out.write(("*" + 2 * hash.size() + "\r\n").getBytes(StandardCharsets.UTF_8));
+                for (Map.Entry<?, ?> field : hash.entrySet()) {
+                    bulk(out, (String) field.getKey());
+                    bulk(out, (String) field.getValue());
+                }
+            }
+            case "EXPIRE", "EXPIREAT" -> {
+                Entry entry = live(command.get(1));
+                if (null != entry) {
+                    long seconds = Long.parseLong(command.get(2));
+                    entry.expiresAt = "EXPIRE".equals(name) ? System.currentTimeMillis() + seconds * 1000 : seconds * 1000;
+                }
+                integer(out, null != entry ? 1 : 0);
+            }
+            default -> error(out, "ERR unknown command '" + command.get(0) + "' in the Redis stand-in");
+        }
+    }
+
+    private void set(List<String> command, OutputStream out) throws IOException {
+        String key = command.get(1);
+        boolean nx = false;
+        long expiresAt = 0;
+        for (int i = 3; i < command.size(); i++) {
+            String option = command.get(i).toUpperCase();
+            if ("NX".equals(option)) {
+                nx = true;
+            } else if ("EX".equals(option)) {
+                expiresAt = System.currentTimeMillis() + Long.parseLong(command.get(++i)) * 1000;
+            } else if ("PX".equals(option)) {
+                expiresAt = System.currentTimeMillis() + Long.parseLong(command.get(++i));
+            }
+        }
+        Entry entry = new Entry(command.get(2), expiresAt);
+        if (!nx) {
+            data.put(key, entry);
+            simple(out, "OK");
+            return;
+        }
+        boolean[] stored = {false};
+        data.compute(key, (k, current) -> {
+            if (null != current && !current.expired()) {
+                return current;
+            }
+            stored[0] = true;
+            return entry;
+        });
+        if (stored[0]) {
+            simple(out, "OK");
+        } else {
+            bulk(out, null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void hashSet(List<String> command, boolean onlyIfAbsent, OutputStream out) throws IOException {
+        long[] added = {0};
+        data.compute(command.get(1), (key, current) -> {
+            Entry entry = null == current || current.expired() ? new Entry(new ConcurrentHashMap<String, String>(), 0) : current;
+            Map<String, String> hash = (Map<String, String>) entry.value;
+            for (int i = 2; i + 1 < command.size(); i += 2) {
+                boolean absent = !hash.containsKey(command.get(i));
+                if (absent || !onlyIfAbsent) {
+                    hash.put(command.get(i), command.get(i + 1));
+                }
+                added[0] += absent ? 1 : 0;
+            }
+            return entry;
+        });
+        integer(out, added[0]);
+    }
+
+    private Entry live(String key) {
+        Entry entry = data.get(key);
+        if (null != entry && entry.expired()) {
+            data.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header.isEmpty() || '*' != header.charAt(0)) {
+            // Inline command, as sent by telnet or redis-cli without RESP
+            return List.of(header.trim().split("\\s+"));
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<String> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            command.add(new String(in.readNBytes(length), StandardCharsets.UTF_8));
+            readLine(in);
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (-1 == c) {
+                throw new EOFException();
+            }
+            if ('\r' != c) {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void simple(OutputStream out, String value) throws IOException {
+        out.write(('+' + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void error(OutputStream out, String message) throws IOException {
+        out.write(('-' + message + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void integer(OutputStream out, long value) throws IOException {
+        out.write((":" + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void bulk(OutputStream out, String value) throws IOException {
+        if (null == value) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(('$' + String.valueOf(bytes.length) + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(bytes);
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private volatile long expiresAt;
+
+        private Entry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean expired() {
+            return 0 != expiresAt && System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
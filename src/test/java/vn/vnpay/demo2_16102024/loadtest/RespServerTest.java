@@ -0,0 +1,39 @@
+package vn.vnpay.demo2_16102024.loadtest;
+
+import org.junit.jupiter.api.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.SetParams;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RespServerTest {
+
+    @Test
+    void answersTheCommandsTheDedupStoresUse() throws Exception {
+        try (RespServer server = RespServer.start(0); Jedis jedis = new Jedis("localhost", server.port())) {
+            assertEquals("PONG", jedis.ping());
+            assertEquals("OK", jedis.set("token:t1", "1", SetParams.setParams().nx().ex(60)));
+            assertNull(jedis.set("token:t1", "1", SetParams.setParams().nx().ex(60)));
+            assertEquals("1", jedis.get("token:t1"));
+            assertEquals(1, jedis.del("token:t1"));
+            assertNull(jedis.get("token:t1"));
+
+            assertEquals(1, jedis.hsetnx("dedup:2024-10-16:0", "t1", "1"));
+            assertEquals(0, jedis.hsetnx("dedup:2024-10-16:0", "t1", "1"));
+            assertEquals(1, jedis.expireAt("dedup:2024-10-16:0", 4_102_444_800L));
+            assertEquals(1, server.size());
+        }
+    }
+
+    @Test
+    void expiresKeysAfterTheirTtl() throws Exception {
+        try (RespServer server = RespServer.start(0); Jedis jedis = new Jedis("localhost", server.port())) {
+            jedis.set("token:t2", "1", SetParams.setParams().nx().px(20));
+            Thread.sleep(50);
+
+            assertNull(jedis.get("token:t2"));
+            assertEquals("OK", jedis.set("token:t2", "1", SetParams.setParams().nx().px(20)));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package vn.vnpay.demo2_16102024.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.config.BatchConsumerProperties;
+import vn.vnpay.demo2_16102024.config.PaymentShards;
+import vn.vnpay.demo2_16102024.config.RabbitConfig;
+import vn.vnpay.demo2_16102024.config.ShardingProperties;
+import vn.vnpay.demo2_16102024.consumer.PaymentConsumer;
+import vn.vnpay.demo2_16102024.consumer.PaymentShardListeners;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.producer.PaymentPublisher;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+import vn.vnpay.demo2_16102024.utils.LogSampler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumer drain rate per shard count. For each count, the payments are published through
+ * PaymentPublisher to an {@link InProcessAmqpBroker} first. Then the shard listener containers
+ * are started, built by PaymentShardListeners from RabbitConfig's shard container factory. The
+ * runner times how long they take to insert every payment into H2 and ack it. Each shard queue has
+ * one consumer, as with single-active-consumer queues on one node.
+ * Needs the test classpath of the loadtest profile, which adds H2.
+ * <p>
+ * System properties: loadtest.messages (20000), loadtest.shard-counts (1,2,4,8), loadtest.repeats (3),
+ * loadtest.result (target/shard-drain-result.json).
+ */
+public final class ShardDrainRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardDrainRunner.class);
+
+    private static final DateTimeFormatter PAY_DATE = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final PaymentJsonCodec paymentJsonCodec = new PaymentJsonCodec(Jackson2ObjectMapperBuilder.json().build());
+    private final PaymentMessageCodecs paymentMessageCodecs = new PaymentMessageCodecs(List.of(paymentJsonCodec), MessageProperties.CONTENT_TYPE_JSON);
+
+    private final int messages = Integer.getInteger("loadtest.messages", 20000);
+    private final int[] shardCounts = Arrays.stream(System.getProperty("loadtest.shard-counts", "1,2,4,8").split(","))
+            .mapToInt(count -> Integer.parseInt(count.trim())).toArray();
+    private final int repeats = Integer.getInteger("loadtest.repeats", 3);
+    private final Path result = Path.of(System.getProperty("loadtest.result", "target/shard-drain-result.json"));
+
+    private ShardDrainRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new ShardDrainRunner().run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        try (HikariDataSource dataSource = new HikariDataSource()) {
+            // The Hikari pool and JDBC bulkhead sizes of application.properties
+            dataSource.setJdbcUrl("jdbc:h2:mem:shards;MODE=MySQL;DB_CLOSE_DELAY=-1");
+            dataSource.setUsername("sa");
+            dataSource.setMaximumPoolSize(10);
+            new ResourceDatabasePopulator(new ClassPathResource("loadtest/schema.sql")).execute(dataSource);
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+            ArrayNode report = objectMapper.createArrayNode();
+            for (boolean virtualThreads : new boolean[]{false, true}) {
+                // A pass over every shard count warms up the JIT and is not reported
+                for (int shards : shardCounts) {
+                    drain(jdbcTemplate, shards, virtualThreads);
+                }
+                for (int shards : shardCounts) {
+                    ObjectNode row = report.addObject();
+                    row.put("virtualThreads", virtualThreads);
+                    row.put("shards", shards);
+                    row.put("messages", messages);
+                    ArrayNode rates = row.putArray("messagesPerSecond");
+                    for (int i = 0; i < repeats; i++) {
+                        rates.add(Math.round(drain(jdbcTemplate, shards, virtualThreads)));
+                    }
+                    logger.info("{} shards, virtual threads {}: {} messages/s", shards, virtualThreads, rates);
+                }
+            }
+            Files.createDirectories(result.toAbsolutePath().getParent());
+            objectMapper.writeValue(result.toFile(), report);
+            System.out.println(objectMapper.writeValueAsString(report));
+        }
+    }
+
+    /**
+     * Publishes {@link #messages} payments across {@code shards} queues, then starts the shard
+     * containers and returns how many payments per second they inserted and acked.
+     */
+    private double drain(JdbcTemplate jdbcTemplate, int shards, boolean virtualThreads) throws Exception {
+        jdbcTemplate.update("DELETE FROM payments");
+        ShardingProperties shardingProperties = new ShardingProperties();
+        shardingProperties.setShards(shards);
+        PaymentShards paymentShards = new PaymentShards(shardingProperties);
+        InProcessAmqpBroker broker = new InProcessAmqpBroker();
+        paymentShards.queueNames().forEach(broker::declare);
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(broker);
+
+        PaymentPublisher paymentPublisher = new PaymentPublisher(rabbitTemplate, paymentShards, 5000);
+        String payDate = LocalDateTime.now().format(PAY_DATE);
+        for (int i = 0; i < messages; i++) {
+            PaymentRequest request = paymentRequest("SD" + System.nanoTime() + "-" + i, payDate);
+            paymentPublisher.publish(request, paymentMessageCodecs.encode(request));
+        }
+
+        PaymentConsumer paymentConsumer = new PaymentConsumer(jdbcTemplate, new StringRedisTemplate(), rabbitTemplate,
+                new Bulkhead("jdbc", 10, 1000), new PaymentMetrics(new SimpleMeterRegistry()), paymentJsonCodec,
+                paymentMessageCodecs, new LogSampler(Integer.MAX_VALUE));
+        SimpleRabbitListenerContainerFactoryConfigurer configurer = new SimpleRabbitListenerContainerFactoryConfigurer(new RabbitProperties());
+        if (virtualThreads) {
+            // As Boot configures the listener containers with spring.threads.virtual.enabled=true
+            configurer.setTaskExecutor(new VirtualThreadTaskExecutor("rabbit-simple-"));
+        }
+        SimpleRabbitListenerContainerFactory shardContainerFactory = new RabbitConfig().shardContainerFactory(configurer, broker, shardingProperties);
+        RabbitListenerEndpointRegistry endpointRegistry = new RabbitListenerEndpointRegistry();
+        RabbitListenerEndpointRegistrar registrar = new RabbitListenerEndpointRegistrar();
+        registrar.setEndpointRegistry(endpointRegistry);
+        new PaymentShardListeners(paymentConsumer, null, paymentShards, shardingProperties, new BatchConsumerProperties(),
+                shardContainerFactory, shardContainerFactory, endpointRegistry).configureRabbitListeners(registrar);
+        registrar.afterPropertiesSet();
+
+        long start = System.nanoTime();
+        endpointRegistry.start();
+        try {
+            long deadline = start + TimeUnit.MINUTES.toNanos(5);
+            while (broker.exchangeMessages() < messages || !broker.isDrained()) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IllegalStateException("Shards did not drain: " + broker.exchangeMessages() + " of " + messages + " handled");
+                }
+                TimeUnit.MILLISECONDS.sleep(1);
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            Long inserted = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payments", Long.class);
+            if (null == inserted || inserted != messages) {
+                throw new IllegalStateException("Inserted " + inserted + " of " + messages + " payments");
+            }
+            return messages / elapsedSeconds;
+        } finally {
+            endpointRegistry.stop();
+            endpointRegistry.destroy();
+        }
+    }
+
+    private static PaymentRequest paymentRequest(String tokenKey, String payDate) {
+        PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+        request.setTokenKey(tokenKey);
+        request.setPayDate(payDate);
+        request.setBankCode("970445");
+        request.setMessageType("1");
+        return request;
+    }
+}
@@ -0,0 +1,90 @@
+package vn.vnpay.demo2_16102024.outbox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodec;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PaymentOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysUncommittedRecordsAfterRestart() throws IOException {
+        PaymentOutbox outbox = new PaymentOutbox(directory, 4096);
+        for (int i = 0; i < 3; i++) {
+            outbox.append("paymentQueue.0", message("payment-" + i));
+        }
+        List<PaymentOutbox.OutboxRecord> records = outbox.read(outbox.checkpoint(), 10);
+        assertEquals(3, records.size());
+        assertEquals("paymentQueue.0", records.get(0).queueName());
+        assertEquals(MessageProperties.CONTENT_TYPE_JSON, records.get(0).message().getMessageProperties().getContentType());
+        outbox.commit(records.get(0).next());
+        outbox.close();
+
+        PaymentOutbox reopened = new PaymentOutbox(directory, 4096);
+        reopened.append("paymentQueue.1", message("payment-3"));
+
+        assertEquals(List.of("payment-1", "payment-2", "payment-3"), bodies(reopened.read(reopened.checkpoint(), 10)));
+    }
+
+    @Test
+    void rotatesSegmentsAndDeletesDrainedOnes() throws IOException {
+        PaymentOutbox outbox = new PaymentOutbox(directory, 128);
+        for (int i = 0; i < 10; i++) {
+            outbox.append("paymentQueue.0", message("payment-" + i));
+        }
+
+        List<PaymentOutbox.OutboxRecord> records = outbox.read(outbox.checkpoint(), 100);
+        assertEquals(10, records.size());
+        assertEquals("payment-9", bodies(records).get(9));
+
+        outbox.commit(records.get(9).next());
+        assertEquals(1, segmentCount());
+        assertEquals(0, outbox.read(outbox.checkpoint(), 100).size());
+    }
+
+    @Test
+    void stopsAtARecordTornByACrash() throws IOException {
+        PaymentOutbox outbox = new PaymentOutbox(directory, 4096);
+        outbox.append("paymentQueue.0", message("payment-0"));
+        outbox.append("paymentQueue.0", message("payment-1"));
+        int secondBody = outbox.read(outbox.checkpoint(), 1).get(0).next().offset() + 50;
+        outbox.close();
+        try (Stream<Path> files = Files.list(directory); RandomAccessFile segment = new RandomAccessFile(
+                files.filter(file -> file.toString().endsWith(PaymentOutbox.SEGMENT_SUFFIX)).findFirst().orElseThrow().toFile(), "rw")) {
+            segment.seek(secondBody);
+            segment.write('x');
+        }
+
+        PaymentOutbox reopened = new PaymentOutbox(directory, 4096);
+
+        assertEquals(List.of("payment-0"), bodies(reopened.read(reopened.checkpoint(), 10)));
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(PaymentOutbox.SEGMENT_SUFFIX)).count();
+        }
+    }
+
+    private static Message message(String body) {
+        return PaymentMessageCodec.toMessage(body.getBytes(StandardCharsets.UTF_8), MessageProperties.CONTENT_TYPE_JSON);
+    }
+
+    private static List<String> bodies(List<PaymentOutbox.OutboxRecord> records) {
+        return records.stream().map(record -> new String(record.message().getBody(), StandardCharsets.UTF_8)).toList();
+    }
+}
@@ -0,0 +1,97 @@
+package vn.vnpay.demo2_16102024.partition;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class PaymentPartitionMaintainerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 10, 16);
+
+    @Test
+    void splitsUpcomingDaysOffTheFuturePartitionAndDropsExpiredOnesOnlyWhenAllowed() {
+        List<PaymentPartitionMaintainer.Partition> partitions = List.of(
+                new PaymentPartitionMaintainer.Partition("p_history", LocalDate.of(2024, 10, 13)),
+                new PaymentPartitionMaintainer.Partition("p20241013", LocalDate.of(2024, 10, 14)),
+                new PaymentPartitionMaintainer.Partition("p20241014", LocalDate.of(2024, 10, 15)),
+                new PaymentPartitionMaintainer.Partition("p_future", null));
+        String reorganize = "ALTER TABLE payments REORGANIZE PARTITION p_future INTO ("
+                + "PARTITION p20241015 VALUES LESS THAN ('2024-10-16'), "
+                + "PARTITION p20241016 VALUES LESS THAN ('2024-10-17'), "
+                + "PARTITION p20241017 VALUES LESS THAN ('2024-10-18'), "
+                + "PARTITION p20241018 VALUES LESS THAN ('2024-10-19'), "
+                + "PARTITION p_future VALUES LESS THAN (MAXVALUE))";
+
+        assertEquals(List.of(reorganize), maintainer(false, false).plan(partitions, Map.of(), TODAY));
+        assertEquals(List.of("ALTER TABLE payments DROP PARTITION p_history", reorganize),
+                maintainer(false, true).plan(partitions, Map.of(), TODAY));
+    }
+
+    @Test
+    void archivesExpiredPartitionsBeforeDroppingThem() {
+        PartitionProperties defaults = new PartitionProperties();
+        assertTrue(defaults.isArchive());
+        assertFalse(defaults.isDropExpired());
+
+        List<String> statements = maintainer(true, false).plan(List.of(
+                new PaymentPartitionMaintainer.Partition("p20241012", LocalDate.of(2024, 10, 13)),
+                new PaymentPartitionMaintainer.Partition("p20241019", LocalDate.of(2024, 10, 20)),
+                new PaymentPartitionMaintainer.Partition("p_future", null)), Map.of(), TODAY);
+
+        assertEquals(List.of(
+                "CREATE TABLE payments_archive_p20241012 LIKE payments",
+                "ALTER TABLE payments_archive_p20241012 REMOVE PARTITIONING",
+                "ALTER TABLE payments EXCHANGE PARTITION p20241012 WITH TABLE payments_archive_p20241012",
+                "ALTER TABLE payments DROP PARTITION p20241012"), statements);
+    }
+
+    @Test
+    void resumesAnInterruptedArchiveWithoutRepeatingDoneSteps() {
+        PaymentPartitionMaintainer maintainer = maintainer(true, false);
+        List<PaymentPartitionMaintainer.Partition> partitions = List.of(
+                new PaymentPartitionMaintainer.Partition("p20241009", LocalDate.of(2024, 10, 10)),
+                new PaymentPartitionMaintainer.Partition("p20241010", LocalDate.of(2024, 10, 11)),
+                new PaymentPartitionMaintainer.Partition("p20241011", LocalDate.of(2024, 10, 12)),
+                new PaymentPartitionMaintainer.Partition("p20241012", LocalDate.of(2024, 10, 13)),
+                new PaymentPartitionMaintainer.Partition("p20241019", LocalDate.of(2024, 10, 20)),
+                new PaymentPartitionMaintainer.Partition("p_future", null));
+
+        List<String> statements = maintainer.plan(partitions, Map.of(
+                "p20241009", PaymentPartitionMaintainer.ArchiveState.PARTITIONED,
+                "p20241010", PaymentPartitionMaintainer.ArchiveState.EMPTY,
+                "p20241011", PaymentPartitionMaintainer.ArchiveState.ARCHIVED,
+                "p20241012", PaymentPartitionMaintainer.ArchiveState.CONFLICT), TODAY);
+
+        assertEquals(List.of(
+                "ALTER TABLE payments_archive_p20241009 REMOVE PARTITIONING",
+                "ALTER TABLE payments EXCHANGE PARTITION p20241009 WITH TABLE payments_archive_p20241009",
+                "ALTER TABLE payments DROP PARTITION p20241009",
+                "ALTER TABLE payments EXCHANGE PARTITION p20241010 WITH TABLE payments_archive_p20241010",
+                "ALTER TABLE payments DROP PARTITION p20241010",
+                "ALTER TABLE payments DROP PARTITION p20241011"), statements);
+    }
+
+    @Test
+    void parsesRangeColumnsBounds() {
+        assertEquals(LocalDate.of(2024, 10, 17), PaymentPartitionMaintainer.lessThan("'2024-10-17'"));
+        assertNull(PaymentPartitionMaintainer.lessThan("MAXVALUE"));
+    }
+
+    private static PaymentPartitionMaintainer maintainer(boolean archive, boolean dropExpired) {
+        PartitionProperties properties = new PartitionProperties();
+        properties.setPrecreateDays(2);
+        properties.setRetentionDays(3);
+        properties.setArchive(archive);
+        properties.setDropExpired(dropExpired);
+        return new PaymentPartitionMaintainer(mock(JdbcTemplate.class), properties);
+    }
+}
@@ -0,0 +1,77 @@
+package vn.vnpay.demo2_16102024.query;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import vn.vnpay.demo2_16102024.dto.response.PaymentPage;
+import vn.vnpay.demo2_16102024.dto.response.PaymentRecord;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PaymentQueryServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 10, 16);
+
+    @Test
+    void seeksPastTheCursorInIndexOrder() {
+        PaymentQueryService.Query query = PaymentQueryService.query(
+                new PaymentSearch(" ", "cntest001", null, DAY, DAY.plusDays(1)), new PaymentCursor(DAY, 42), 51);
+
+        assertEquals(PaymentQueryService.SQL_SELECT + " WHERE userName = ? AND payDay >= ? AND payDay <= ?"
+                + " AND (payDay > ? OR (payDay = ? AND id > ?)) ORDER BY payDay, id LIMIT ?", query.sql());
+        assertEquals(List.of("cntest001", DAY, DAY.plusDays(1), DAY, DAY, 42L, 51), query.args());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void returnsACursorOnlyWhenAnotherPageExists() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        List<PaymentRecord> rows = new ArrayList<>();
+        for (long id = 1; id <= 3; id++) {
+            rows.add(record(id));
+        }
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenReturn(rows, rows.subList(0, 2));
+        PaymentQueryService service = new PaymentQueryService(jdbcTemplate, null, new Bulkhead("jdbc", 1, 1000),
+                new ObjectMapper(), new PaymentQueryProperties());
+        PaymentSearch search = new PaymentSearch("GD20241016", null, null, null, null);
+
+        PaymentPage page = service.search(search, null, 2);
+        assertEquals(2, page.getItems().size());
+        assertEquals("2024-10-16_2", page.getNext());
+        assertEquals(new PaymentCursor(DAY, 2), PaymentCursor.parse(page.getNext()));
+
+        assertNull(service.search(search, PaymentCursor.parse(page.getNext()), 2).getNext());
+    }
+
+    @Test
+    void rejectsUnfilteredSearchesAndBadCursors() {
+        assertThrows(IllegalArgumentException.class, () -> new PaymentSearch(null, "", " ", null, null));
+        assertThrows(IllegalArgumentException.class, () -> new PaymentSearch(null, null, null, DAY, DAY.minusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> PaymentCursor.parse("yesterday"));
+    }
+
+    @Test
+    void streamsRowByRowUnlessCursorFetchIsEnabled() {
+        assertEquals(Integer.MIN_VALUE, PaymentQueryService.fetchSize("jdbc:mysql://localhost:3306/demo2", 500));
+        assertEquals(500, PaymentQueryService.fetchSize("jdbc:mysql://replica:3306/demo2?useCursorFetch=true", 500));
+    }
+
+    private static PaymentRecord record(long id) {
+        PaymentRecord record = new PaymentRecord();
+        record.setId(id);
+        record.setPayDay(DAY.toString());
+        return record;
+    }
+}
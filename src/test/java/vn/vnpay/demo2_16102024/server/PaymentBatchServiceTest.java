@@ -0,0 +1,153 @@
+package vn.vnpay.demo2_16102024.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import vn.vnpay.demo2_16102024.admission.AdmissionControlledPaymentService;
+import vn.vnpay.demo2_16102024.admission.AdmissionProperties;
+import vn.vnpay.demo2_16102024.admission.LocalRateLimiter;
+import vn.vnpay.demo2_16102024.checksum.ChecksumVerifier;
+import vn.vnpay.demo2_16102024.codec.BinaryPaymentMessageCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.config.PaymentShards;
+import vn.vnpay.demo2_16102024.config.ShardingProperties;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dedup.KeyPerTokenDedupStore;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.producer.PaymentPublisher;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+import vn.vnpay.demo2_16102024.utils.LogSampler;
+import vn.vnpay.demo2_16102024.validation.PaymentRequestValidator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentBatchServiceTest {
+
+    private static final String VALID = """
+            {"tokenKey":"%s","apiID":"restPayment","mobile":"0912345678","accountNo":"0001100014211002",\
+            "payDate":"20241016101010","debitAmount":11200,"realAmount":10000,"respCode":"00","respDesc":"SUCCESS",\
+            "traceTransfer":"FT19070014526","orderCode":"GD20241016","checkSum":"40e670720b754324af3d3a0ff49b52fb","userName":"cntest001"}""";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Set<String> reserved = new HashSet<>();
+
+    private final AdmissionProperties admissionProperties = new AdmissionProperties();
+
+    private RabbitTemplate rabbitTemplate;
+    private PaymentBatchService batchService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.executePipelined(any(RedisCallback.class))).thenAnswer(invocation -> pipeline(invocation.getArgument(0)));
+        rabbitTemplate = mock(RabbitTemplate.class);
+        doAnswer(invocation -> invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(true, null)))
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        PaymentMetrics metrics = new PaymentMetrics(new SimpleMeterRegistry());
+        PaymentPublisher publisher = new PaymentPublisher(rabbitTemplate, new PaymentShards(new ShardingProperties()), 5000);
+        PaymentMessageCodecs codecs = new PaymentMessageCodecs(
+                List.of(new PaymentJsonCodec(objectMapper), new BinaryPaymentMessageCodec()), MessageProperties.CONTENT_TYPE_JSON);
+        KeyPerTokenDedupStore dedupStore = new KeyPerTokenDedupStore(redisTemplate, new Bulkhead("redis", 10, 1000));
+        PaymentService paymentService = new PaymentService(publisher, dedupStore, codecs, metrics, new LogSampler(1), new ChecksumVerifier(null),
+                Runnable::run);
+        AdmissionControlledPaymentService admission = new AdmissionControlledPaymentService(paymentService, new LocalRateLimiter(),
+                admissionProperties, metrics);
+        batchService = new PaymentBatchService(paymentService, admission, publisher, dedupStore, codecs, metrics,
+                new PaymentRequestValidator(false), objectMapper, 2);
+    }
+
+    @Test
+    void answersEachNdjsonRecordInOrder() throws Exception {
+        String body = VALID.formatted("t1") + "\n" + VALID.formatted("t1") + "\n"
+                + "{\"tokenKey\":\"t3\"}\n" + VALID.formatted("t4") + "\n";
+
+        List<PaymentResponse> results = process(body);
+
+        assertEquals(List.of("00", "02", "01", "00"), results.stream().map(PaymentResponse::getRespCode).toList());
+        assertEquals("t4", results.get(3).getTokenKey());
+        verify(rabbitTemplate, times(2)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void stopsAtMalformedJsonAfterAnsweringTheRecordsBeforeIt() throws Exception {
+        String body = "[" + VALID.formatted("a1") + ", {\"tokenKey\":\"a2\",\"debitAmount\":\"many\"}, {\"tokenKey\": ]";
+
+        List<PaymentResponse> results = process(body);
+
+        assertEquals(List.of("00", "01", "01"), results.stream().map(PaymentResponse::getRespCode).toList());
+        assertEquals(ErrorCodeEnum.VALIDATION_ERROR.getCode(), results.get(2).getRespCode());
+        verify(rabbitTemplate, times(1)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void recordsGoThroughThePerUserRateLimitAndTheInFlightCap() throws Exception {
+        admissionProperties.setUser(new AdmissionProperties.Limit(0.001, 3));
+        String body = VALID.formatted("r1") + "\n" + VALID.formatted("r2") + "\n"
+                + VALID.formatted("r3") + "\n" + VALID.formatted("r4") + "\n";
+
+        List<PaymentResponse> results = process(body);
+
+        assertEquals(List.of("00", "00", "00", "03"), results.stream().map(PaymentResponse::getRespCode).toList());
+        assertEquals(PaymentConstant.ERROR_RATE_LIMITED, results.get(3).getStatus());
+
+        admissionProperties.setUser(new AdmissionProperties.Limit(0, 0));
+        admissionProperties.setMaxInFlight(1);
+        results = process(VALID.formatted("r5") + "\n" + VALID.formatted("r6") + "\n");
+
+        assertEquals(List.of("03", "03"), results.stream().map(PaymentResponse::getRespCode).toList());
+        assertEquals(PaymentConstant.ERROR_OVERLOADED, results.get(0).getStatus());
+        verify(rabbitTemplate, times(3)).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    private List<PaymentResponse> process(String body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchService.process(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), out);
+        List<PaymentResponse> results = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            results.add(objectMapper.readValue(line, PaymentResponse.class));
+        }
+        return results;
+    }
+
+    private List<Object> pipeline(RedisCallback<?> callback) {
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisStringCommands stringCommands = mock(RedisStringCommands.class);
+        when(connection.stringCommands()).thenReturn(stringCommands);
+        List<Object> replies = new ArrayList<>();
+        when(stringCommands.set(any(byte[].class), any(byte[].class), any(), any())).thenAnswer(invocation -> {
+            replies.add(reserved.add(new String(invocation.<byte[]>getArgument(0), StandardCharsets.UTF_8)));
+            return null;
+        });
+        callback.doInRedis(connection);
+        return replies;
+    }
+}
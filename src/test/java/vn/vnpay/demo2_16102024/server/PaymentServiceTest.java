@@ -0,0 +1,282 @@
+package vn.vnpay.demo2_16102024.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.logging.log4j.ThreadContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BeanPropertyBindingResult;
+import vn.vnpay.demo2_16102024.checksum.ChecksumKeyStore;
+import vn.vnpay.demo2_16102024.checksum.ChecksumVerifier;
+import vn.vnpay.demo2_16102024.codec.BinaryPaymentMessageCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.codec.PaymentMessageCodecs;
+import vn.vnpay.demo2_16102024.config.PaymentShards;
+import vn.vnpay.demo2_16102024.config.ShardingProperties;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.constant.PaymentConstant;
+import vn.vnpay.demo2_16102024.dedup.KeyPerTokenDedupStore;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.producer.PaymentPublisher;
+import vn.vnpay.demo2_16102024.metrics.PaymentMetrics;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+import vn.vnpay.demo2_16102024.utils.LogSampler;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentServiceTest {
+
+    private final Map<String, String> redisStore = new ConcurrentHashMap<>();
+
+    private RedisTemplate<String, String> redisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private RabbitTemplate rabbitTemplate;
+    private PaymentService paymentService;
+    private ExecutorService callbackExecutor;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        callbackExecutor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("payment-callback-test").factory());
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class)))
+                .thenAnswer(invocation -> null == redisStore.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)));
+        when(redisTemplate.delete(anyString()))
+                .thenAnswer(invocation -> null != redisStore.remove(invocation.<String>getArgument(0)));
+        paymentService = new PaymentService(new PaymentPublisher(rabbitTemplate, new PaymentShards(new ShardingProperties()), 5000),
+                new KeyPerTokenDedupStore(redisTemplate, new Bulkhead("redis", 10, 1000)), codecs(),
+                new PaymentMetrics(new SimpleMeterRegistry()), new LogSampler(1), new ChecksumVerifier(null), callbackExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        callbackExecutor.shutdownNow();
+    }
+
+    @Test
+    void concurrentDuplicatesAcceptExactlyOne() throws Exception {
+        int requests = 4000;
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ResponseEntity<?>>> futures = new ArrayList<>(requests);
+        try {
+            for (int i = 0; i < requests; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    PaymentRequest request = paymentRequest("duplicated-token");
+                    return paymentService.validatePayment(request, new BeanPropertyBindingResult(request, "paymentRequest"));
+                }));
+            }
+            start.countDown();
+
+            int accepted = 0;
+            int duplicated = 0;
+            for (Future<ResponseEntity<?>> future : futures) {
+                PaymentResponse response = (PaymentResponse) future.get(30, TimeUnit.SECONDS).getBody();
+                if (ErrorCodeEnum.SUCCESS.getCode().equals(response.getRespCode())) {
+                    accepted++;
+                } else if (ErrorCodeEnum.TOKEN_EXISTS_ERROR.getCode().equals(response.getRespCode())) {
+                    duplicated++;
+                }
+            }
+            assertEquals(1, accepted);
+            assertEquals(requests - 1, duplicated);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(rabbitTemplate, times(1)).send(anyString(), any(Message.class));
+        // A single SET NX EX per request; the old hasKey + set path issued two commands
+        verify(valueOperations, times(requests)).setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        verify(redisTemplate, never()).hasKey(anyString());
+    }
+
+    @Test
+    void publishFailureReleasesReservation() {
+        doThrow(new AmqpException("broker unavailable")).when(rabbitTemplate)
+                .send(anyString(), any(Message.class));
+        PaymentRequest request = paymentRequest("failed-token");
+
+        ResponseEntity<?> response = paymentService.validatePayment(request, new BeanPropertyBindingResult(request, "paymentRequest"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(ErrorCodeEnum.SYSTEM_ERROR.getCode(), ((PaymentResponse) response.getBody()).getRespCode());
+        verify(redisTemplate).delete(todayKey("failed-token"));
+        assertFalse(redisStore.containsKey(todayKey("failed-token")));
+    }
+
+    @Test
+    void aRedisFailureWhileReservingMapsToSystemErrorWithoutPublishing() {
+        when(valueOperations.setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class)))
+                .thenThrow(new RedisConnectionFailureException("redis down"));
+        PaymentRequest request = paymentRequest("unreserved-token");
+
+        ResponseEntity<?> response = paymentService.validatePayment(request, new BeanPropertyBindingResult(request, "paymentRequest"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(ErrorCodeEnum.SYSTEM_ERROR.getCode(), ((PaymentResponse) response.getBody()).getRespCode());
+        verify(rabbitTemplate, never()).send(anyString(), any(Message.class));
+    }
+
+    @Test
+    void aRedisBulkheadTimeoutWhileReservingMapsTo503Overloaded() throws Exception {
+        PaymentService saturated = new PaymentService(new PaymentPublisher(rabbitTemplate, new PaymentShards(new ShardingProperties()), 5000),
+                new KeyPerTokenDedupStore(redisTemplate, new Bulkhead("redis", 0, 1)), codecs(),
+                new PaymentMetrics(new SimpleMeterRegistry()), new LogSampler(1), new ChecksumVerifier(null), callbackExecutor);
+        PaymentRequest request = paymentRequest("unreserved-token");
+
+        ResponseEntity<?> response = saturated.validatePaymentAsync(request, new BeanPropertyBindingResult(request, "paymentRequest"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        PaymentResponse body = (PaymentResponse) response.getBody();
+        assertEquals(ErrorCodeEnum.REQUEST_REJECTED.getCode(), body.getRespCode());
+        assertEquals(PaymentConstant.ERROR_OVERLOADED, body.getStatus());
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    @Test
+    void asyncCompletesOnBrokerAck() throws Exception {
+        confirmWith(new CorrelationData.Confirm(true, null));
+        PaymentRequest request = paymentRequest("acked-token");
+
+        ResponseEntity<?> response = paymentService.validatePaymentAsync(request, new BeanPropertyBindingResult(request, "paymentRequest"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(ErrorCodeEnum.SUCCESS.getCode(), ((PaymentResponse) response.getBody()).getRespCode());
+    }
+
+    @Test
+    void asyncNackMapsToSystemErrorAndReleasesReservation() throws Exception {
+        confirmWith(new CorrelationData.Confirm(false, "queue full"));
+        PaymentRequest request = paymentRequest("nacked-token");
+
+        ResponseEntity<?> response = paymentService.validatePaymentAsync(request, new BeanPropertyBindingResult(request, "paymentRequest"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(ErrorCodeEnum.SYSTEM_ERROR.getCode(), ((PaymentResponse) response.getBody()).getRespCode());
+        assertFalse(redisStore.containsKey(todayKey("nacked-token")));
+    }
+
+    @Test
+    void confirmIsHandledOnTheCallbackExecutorWithTheTokenKeyInTheThreadContext() throws Exception {
+        confirmWith(new CorrelationData.Confirm(false, "queue full"));
+        AtomicReference<String> releasedOn = new AtomicReference<>();
+        AtomicReference<String> releasedFor = new AtomicReference<>();
+        when(redisTemplate.delete(anyString())).thenAnswer(invocation -> {
+            releasedOn.set(Thread.currentThread().getName());
+            releasedFor.set(ThreadContext.get(PaymentConstant.MDC_TOKEN_KEY));
+            return null != redisStore.remove(invocation.<String>getArgument(0));
+        });
+        PaymentRequest request = paymentRequest("callback-token");
+
+        paymentService.validatePaymentAsync(request, new BeanPropertyBindingResult(request, "paymentRequest"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("payment-callback-test", releasedOn.get());
+        assertEquals("callback-token", releasedFor.get());
+        assertNull(callbackExecutor.submit(() -> ThreadContext.get(PaymentConstant.MDC_TOKEN_KEY)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejectsAForgedCheckSumBeforeTouchingRedisOrRabbit(@TempDir Path directory) throws Exception {
+        Path keyFile = Files.writeString(directory.resolve("keys.properties"), "restPayment=c2VjcmV0LWtleS1mb3ItdGVzdHM=");
+        ChecksumVerifier verifier = new ChecksumVerifier(new ChecksumKeyStore(keyFile, "HmacSHA256", 60_000, 4));
+        PaymentService verifying = new PaymentService(new PaymentPublisher(rabbitTemplate, new PaymentShards(new ShardingProperties()), 5000),
+                new KeyPerTokenDedupStore(redisTemplate, new Bulkhead("redis", 10, 1000)), codecs(),
+                new PaymentMetrics(new SimpleMeterRegistry()), new LogSampler(1), verifier, callbackExecutor);
+        PaymentRequest request = paymentRequest("forged-token");
+
+        ResponseEntity<?> response = verifying.validatePayment(request, new BeanPropertyBindingResult(request, "paymentRequest"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(ErrorCodeEnum.CHECKSUM_ERROR.getCode(), ((PaymentResponse) response.getBody()).getRespCode());
+        verify(valueOperations, never()).setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        verify(rabbitTemplate, never()).send(anyString(), any(Message.class));
+
+        request.setCheckSum(verifier.sign(request));
+        response = verifying.validatePayment(request, new BeanPropertyBindingResult(request, "paymentRequest"));
+        assertEquals(ErrorCodeEnum.SUCCESS.getCode(), ((PaymentResponse) response.getBody()).getRespCode());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"20241399999999", "20240230101010", "20241016246000"})
+    void rejectsPayDatesThatAreNotRealDatesBeforeReserving(String payDate) {
+        PaymentRequest request = paymentRequest("bad-date-token");
+        request.setPayDate(payDate);
+
+        ResponseEntity<?> response = paymentService.validatePayment(request, new BeanPropertyBindingResult(request, "paymentRequest"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(ErrorCodeEnum.VALIDATION_ERROR.getCode(), ((PaymentResponse) response.getBody()).getRespCode());
+        verify(valueOperations, never()).setIfAbsent(anyString(), anyString(), anyLong(), any(TimeUnit.class));
+        verify(rabbitTemplate, never()).send(anyString(), any(Message.class));
+    }
+
+    private void confirmWith(CorrelationData.Confirm confirm) {
+        doAnswer(invocation -> invocation.<CorrelationData>getArgument(3).getFuture().complete(confirm))
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    private static PaymentMessageCodecs codecs() {
+        return new PaymentMessageCodecs(List.of(new PaymentJsonCodec(new ObjectMapper()), new BinaryPaymentMessageCodec()),
+                MessageProperties.CONTENT_TYPE_JSON);
+    }
+
+    private static String todayKey(String tokenKey) {
+        return "token:" + tokenKey + ":" + LocalDate.now();
+    }
+
+    private static PaymentRequest paymentRequest(String tokenKey) {
+        PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+        request.setTokenKey(tokenKey);
+        return request;
+    }
+}
@@ -0,0 +1,80 @@
+package vn.vnpay.demo2_16102024.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.dao.TransientDataAccessResourceException;
+import vn.vnpay.demo2_16102024.codec.PaymentJsonCodec;
+import vn.vnpay.demo2_16102024.config.RabbitConfig;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class PaymentResultListenerTest {
+
+    private final PaymentJsonCodec codec = new PaymentJsonCodec(new ObjectMapper());
+    private final PaymentStatusProperties properties = new PaymentStatusProperties();
+
+    private PaymentStatusStore store;
+    private RabbitTemplate rabbitTemplate;
+    private PaymentResultListener listener;
+
+    @BeforeEach
+    void setUp() {
+        store = mock(PaymentStatusStore.class);
+        rabbitTemplate = mock(RabbitTemplate.class);
+        doThrow(new TransientDataAccessResourceException("No redis permit available within 1000 ms"))
+                .when(store).save(any(PaymentResponse.class));
+        listener = new PaymentResultListener(store, codec, rabbitTemplate, properties);
+    }
+
+    @Test
+    void statusThatCannotBeStoredIsDeadLetteredToTheRetryQueueAndBackAfterTheDelay() throws Exception {
+        assertThrows(AmqpRejectAndDontRequeueException.class, () -> listener.storeResult(result()));
+        verify(store).save(any(PaymentResponse.class));
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class));
+
+        // Rejected without requeue, the broker moves it to the retry queue, which returns it when its TTL expires
+        Map<String, Object> resultArguments = new RabbitConfig().paymentResultQueue().getArguments();
+        assertEquals("", resultArguments.get("x-dead-letter-exchange"));
+        assertEquals(RabbitConfig.RESULT_RETRY_QUEUE_NAME, resultArguments.get("x-dead-letter-routing-key"));
+        Queue retryQueue = new RabbitConfig().paymentResultRetryQueue(properties);
+        assertEquals(RabbitConfig.RESULT_RETRY_QUEUE_NAME, retryQueue.getName());
+        assertEquals((int) properties.getResultRetryDelayMs(), retryQueue.getArguments().get("x-message-ttl"));
+        assertEquals("", retryQueue.getArguments().get("x-dead-letter-exchange"));
+        assertEquals(RabbitConfig.RESULT_QUEUE_NAME, retryQueue.getArguments().get("x-dead-letter-routing-key"));
+    }
+
+    @Test
+    void statusStillNotStoredOnTheLastAttemptIsParked() throws Exception {
+        Message message = result();
+        message.getMessageProperties().setHeader("x-death", List.of(
+                Map.of("queue", RabbitConfig.RESULT_RETRY_QUEUE_NAME, "reason", "expired", "count", 59L),
+                Map.of("queue", RabbitConfig.RESULT_QUEUE_NAME, "reason", "rejected", "count", 59L)));
+
+        listener.storeResult(message);
+
+        verify(rabbitTemplate).send("", RabbitConfig.RESULT_PARKING_QUEUE_NAME, message);
+    }
+
+    private Message result() throws Exception {
+        return PaymentJsonCodec.toMessage(codec.writeResponse(
+                new PaymentResponse("tk1", ErrorCodeEnum.SUCCESS.getCode(), "ok", LocalDateTime.now())));
+    }
+}
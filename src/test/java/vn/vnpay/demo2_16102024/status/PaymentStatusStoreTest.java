@@ -0,0 +1,107 @@
+package vn.vnpay.demo2_16102024.status;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+import vn.vnpay.demo2_16102024.constant.ErrorCodeEnum;
+import vn.vnpay.demo2_16102024.dto.response.PaymentResponse;
+import vn.vnpay.demo2_16102024.utils.Bulkhead;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PaymentStatusStoreTest {
+
+    private HashOperations<String, Object, Object> hashOperations;
+    private PaymentStatusStore store;
+    private long now = 1_700_000_000_000L;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        hashOperations = mock(HashOperations.class);
+        when(redisTemplate.opsForHash()).thenReturn((HashOperations) hashOperations);
+        when(hashOperations.entries(anyString())).thenReturn(Map.of());
+        store = new PaymentStatusStore(redisTemplate, new Bulkhead("redis", 10, 1000), new PaymentStatusProperties(), () -> now);
+    }
+
+    @Test
+    void answersPendingWithoutWaiting() {
+        DeferredResult<ResponseEntity<PaymentResponse>> result = store.await("tk1", 0);
+
+        assertEquals(HttpStatus.ACCEPTED, response(result).getStatusCode());
+        assertEquals(0, store.waiting("tk1"));
+    }
+
+    @Test
+    void completesWaitingRequestWhenTheResultArrives() {
+        DeferredResult<ResponseEntity<PaymentResponse>> result = store.await("tk1", 5000);
+        assertFalse(result.hasResult());
+        assertEquals(1, store.waiting("tk1"));
+
+        store.onResult(new PaymentResponse("tk1", ErrorCodeEnum.SUCCESS.getCode(), "ok", LocalDateTime.now()));
+
+        assertEquals(HttpStatus.OK, response(result).getStatusCode());
+        assertEquals(ErrorCodeEnum.SUCCESS.getCode(), response(result).getBody().getRespCode());
+    }
+
+    @Test
+    void duplicateTokenResponseDoesNotReplaceTheFinalStatus() {
+        store.onResult(new PaymentResponse("tk1", ErrorCodeEnum.SUCCESS.getCode(), "ok", LocalDateTime.now()));
+        store.onResult(new PaymentResponse("tk1", ErrorCodeEnum.TOKEN_EXISTS_ERROR.getCode(), "dup", LocalDateTime.now()));
+
+        assertEquals(ErrorCodeEnum.SUCCESS.getCode(), store.find("tk1").orElseThrow().getRespCode());
+    }
+
+    @Test
+    void readsTheStatusFromRedisWhenNotCached() {
+        when(hashOperations.entries("payment:status:tk2"))
+                .thenReturn(Map.of("respCode", "00", "status", "ok", "payDate", ""));
+
+        PaymentResponse response = response(store.await("tk2", 0)).getBody();
+
+        assertEquals("00", response.getRespCode());
+        assertEquals(null, response.getPayDate());
+    }
+
+    @Test
+    void cachedStatusExpiresWithTheRedisHash() {
+        store.onResult(new PaymentResponse("tk1", ErrorCodeEnum.SUCCESS.getCode(), "ok", LocalDateTime.now()));
+        now += TimeUnit.HOURS.toMillis(24) - 1;
+        assertTrue(store.find("tk1").isPresent());
+
+        // The tokenKey may be reused by tomorrow's payment, which has no status yet
+        now += 1;
+        assertTrue(store.find("tk1").isEmpty());
+    }
+
+    @Test
+    void statusReadFromRedisExpiresWhenTheHashDoes() {
+        when(hashOperations.entries("payment:status:tk2"))
+                .thenReturn(Map.of("respCode", "00", "status", "ok", "payDate", "", "savedAt", String.valueOf(now - TimeUnit.HOURS.toMillis(23))));
+        assertTrue(store.find("tk2").isPresent());
+        when(hashOperations.entries("payment:status:tk2")).thenReturn(Map.of());
+
+        now += TimeUnit.HOURS.toMillis(1);
+
+        assertTrue(store.find("tk2").isEmpty());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ResponseEntity<PaymentResponse> response(DeferredResult<ResponseEntity<PaymentResponse>> result) {
+        return (ResponseEntity<PaymentResponse>) result.getResult();
+    }
+}
@@ -0,0 +1,43 @@
+package vn.vnpay.demo2_16102024.utils;
+
+import org.junit.jupiter.api.Test;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MaskedPaymentRequestTest {
+
+    @Test
+    void masksMobileAndAccountAndOmitsCheckSum() {
+        PaymentRequest request = new PaymentRequest();
+        request.setTokenKey("token-1");
+        request.setApiID("restPayment");
+        request.setUserName("cntest001");
+        request.setMobile("0912345678");
+        request.setAccountNo("0001100014211002");
+        request.setPayDate("20241016101010");
+        request.setDebitAmount(11200);
+        request.setRealAmount(10000);
+        request.setOrderCode("FT19310RH6P1");
+        request.setTraceTransfer("FT19310RH6P1");
+        request.setCheckSum("40e670720b754324af3d3a0ff49b52fb");
+
+        String line = MaskedPaymentRequest.of(request).toString();
+
+        assertEquals("apiID=restPayment user=cntest001 mobile=091****678 bank=970445 account=****1002 payDate=20241016101010"
+                + " debit=11200 real=10000 order=FT19310RH6P1 trace=FT19310RH6P1", line);
+        assertFalse(request.toString().contains("0912345678"));
+        assertFalse(request.toString().contains("0001100014211002"));
+        assertFalse(request.toString().contains("40e670720b754324af3d3a0ff49b52fb"));
+    }
+
+    @Test
+    void masksShortValuesCompletely() {
+        StringBuilder buffer = new StringBuilder();
+
+        MaskedPaymentRequest.mask(buffer, "1234", 0, 4);
+
+        assertEquals("****", buffer.toString());
+    }
+}
@@ -0,0 +1,131 @@
+package vn.vnpay.demo2_16102024.validation;
+
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.validation.Validator;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequest;
+import vn.vnpay.demo2_16102024.dto.request.PaymentRequestFixtures;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Differential tests: the compiled validator must report what Hibernate Validator reports for the
+ * annotations on PaymentRequest.
+ */
+class PaymentRequestValidatorTest {
+
+    private static final ValidatorFactory FACTORY = Validation.buildDefaultValidatorFactory();
+
+    private static final List<String> STRINGS = Arrays.asList(null, "", " ", "\t\n", "\u0000", "\u00a0", "\u2003", "x", " x ",
+            "0123456789", "012345678", "01234567890", "0123456789\n", "\uff10\uff11\uff12\uff13\uff14\uff15\uff16\uff17\uff18\uff19",
+            "\u0660\u0661\u0662\u0663\u0664\u0665\u0666\u0667\u0668\u0669", "2024101610101a", "20241016101010", "+84912345678");
+    private static final List<Integer> INTEGERS = Arrays.asList(null, 0, 10000);
+
+    // Declaration order, which is the order fail-fast validation checks the fields in
+    private static final Map<String, BiConsumer<PaymentRequest, Object>> FIELDS = new LinkedHashMap<>();
+
+    static {
+        FIELDS.put("tokenKey", (request, value) -> request.setTokenKey((String) value));
+        FIELDS.put("apiID", (request, value) -> request.setApiID((String) value));
+        FIELDS.put("mobile", (request, value) -> request.setMobile((String) value));
+        FIELDS.put("accountNo", (request, value) -> request.setAccountNo((String) value));
+        FIELDS.put("payDate", (request, value) -> request.setPayDate((String) value));
+        FIELDS.put("debitAmount", (request, value) -> request.setDebitAmount((Integer) value));
+        FIELDS.put("respCode", (request, value) -> request.setRespCode((String) value));
+        FIELDS.put("respDesc", (request, value) -> request.setRespDesc((String) value));
+        FIELDS.put("traceTransfer", (request, value) -> request.setTraceTransfer((String) value));
+        FIELDS.put("orderCode", (request, value) -> request.setOrderCode((String) value));
+        FIELDS.put("realAmount", (request, value) -> request.setRealAmount((Integer) value));
+        FIELDS.put("checkSum", (request, value) -> request.setCheckSum((String) value));
+        FIELDS.put("userName", (request, value) -> request.setUserName((String) value));
+    }
+
+    private final Validator hibernate = new SpringValidatorAdapter(FACTORY.getValidator());
+    private final Validator allErrors = new PaymentRequestValidator(true);
+    private final Validator failFast = new PaymentRequestValidator(false);
+
+    @AfterAll
+    static void closeFactory() {
+        FACTORY.close();
+    }
+
+    @Test
+    void matchesHibernateValidatorForEveryValueOfEveryField() {
+        for (Map.Entry<String, BiConsumer<PaymentRequest, Object>> field : FIELDS.entrySet()) {
+            for (Object value : valuesFor(field.getKey())) {
+                PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+                field.getValue().accept(request, value);
+                assertSameErrors(request, field.getKey() + "=" + value);
+            }
+        }
+    }
+
+    @Test
+    void matchesHibernateValidatorForRandomCombinations() {
+        Random random = new Random(20241016);
+        for (int i = 0; i < 2000; i++) {
+            PaymentRequest request = PaymentRequestFixtures.paymentRequest();
+            for (Map.Entry<String, BiConsumer<PaymentRequest, Object>> field : FIELDS.entrySet()) {
+                if (random.nextInt(4) == 0) {
+                    List<?> values = valuesFor(field.getKey());
+                    field.getValue().accept(request, values.get(random.nextInt(values.size())));
+                }
+            }
+            assertSameErrors(request, request.toString());
+        }
+    }
+
+    @Test
+    void acceptsAValidRequest() {
+        assertEquals(Set.of(), errors(allErrors, PaymentRequestFixtures.paymentRequest()));
+        assertEquals(Set.of(), errors(hibernate, PaymentRequestFixtures.paymentRequest()));
+    }
+
+    private void assertSameErrors(PaymentRequest request, String description) {
+        Set<String> expected = errors(hibernate, request);
+        assertEquals(expected, errors(allErrors, request), description);
+
+        Set<String> first = errors(failFast, request);
+        assertEquals(expected.isEmpty(), first.isEmpty(), description);
+        if (!expected.isEmpty()) {
+            String firstField = FIELDS.keySet().stream()
+                    .filter(field -> expected.stream().anyMatch(error -> error.startsWith(field + "|")))
+                    .findFirst().orElseThrow();
+            assertEquals(1, first.size(), description);
+            assertTrue(first.iterator().next().startsWith(firstField + "|"), description);
+            assertTrue(expected.containsAll(first), description);
+        }
+    }
+
+    private static Set<String> errors(Validator validator, PaymentRequest request) {
+        BindingResult bindingResult = new BeanPropertyBindingResult(request, "paymentRequest");
+        validator.validate(request, bindingResult);
+        return bindingResult.getFieldErrors().stream()
+                .map(PaymentRequestValidatorTest::describe)
+                .collect(Collectors.toSet());
+    }
+
+    private static String describe(FieldError error) {
+        return error.getField() + "|" + error.getCode() + "|" + error.getDefaultMessage();
+    }
+
+    private static List<?> valuesFor(String field) {
+        return field.endsWith("Amount") ? INTEGERS : STRINGS;
+    }
+}
@@ -0,0 +1,35 @@
+-- payments as it stands after the Flyway migrations (V1-V4), in a form H2's MySQL mode accepts.
+-- Partitioning (V3) is left out; the keys and indexes are the same.
+-- id comes from a sequence: H2 hands out the same AUTO_INCREMENT value to concurrent inserts when
+-- id is only part of the primary key, which the consumers would report as duplicate tokenKeys.
+CREATE SEQUENCE IF NOT EXISTS payments_id_seq;
+
+CREATE TABLE IF NOT EXISTS payments (
+    id             BIGINT       NOT NULL DEFAULT NEXT VALUE FOR payments_id_seq,
+    tokenKey       VARCHAR(64)  NOT NULL,
+    apiID          VARCHAR(64)  NOT NULL,
+    mobile         VARCHAR(10),
+    bankCode       VARCHAR(10),
+    accountNo      VARCHAR(32)  NOT NULL,
+    payDate        DATETIME     NULL,
+    payDay         DATE         NOT NULL,
+    additionalData VARCHAR(255),
+    debitAmount    BIGINT       NOT NULL,
+    respCode       VARCHAR(10)  NOT NULL,
+    respDesc       VARCHAR(255) NOT NULL,
+    traceTransfer  VARCHAR(64)  NOT NULL,
+    messageType    VARCHAR(2),
+    checkSum       VARCHAR(128) NOT NULL,
+    orderCode      VARCHAR(64)  NOT NULL,
+    userName       VARCHAR(64)  NOT NULL,
+    realAmount     BIGINT       NOT NULL,
+    promotionCode  VARCHAR(64),
+    addValue       VARCHAR(255),
+    PRIMARY KEY (id, payDay),
+    CONSTRAINT uk_payments_token_day UNIQUE (tokenKey, payDay)
+);
+
+CREATE INDEX IF NOT EXISTS idx_payments_order_day ON payments (orderCode, payDay);
+CREATE INDEX IF NOT EXISTS idx_payments_user_day ON payments (userName, payDay);
+CREATE INDEX IF NOT EXISTS idx_payments_account_day ON payments (accountNo, payDay);
+CREATE INDEX IF NOT EXISTS idx_payments_day ON payments (payDay);